@@ -0,0 +1,32 @@
+#!/bin/sh
+# Starts Chess.java from a `mvn package` build. Uses the trimmed runtime
+# from `mvn package -Pjlink` when there is one, and the AppCDS archive the
+# build trained, so the game's classes are mapped from the archive rather
+# than loaded from the jar. Extra JVM options go in JAVA_OPTS.
+target="$(cd "$(dirname "$0")" && pwd)/target"
+
+jar=
+for candidate in "$target"/chess-game-*-jar-with-dependencies.jar; do
+    [ -f "$candidate" ] && jar="$candidate"
+done
+if [ -z "$jar" ]; then
+    echo "No game jar in $target; run mvn package first" >&2
+    exit 1
+fi
+
+if [ -x "$target/runtime/bin/java" ]; then
+    java="$target/runtime/bin/java"
+elif [ -n "$JAVA_HOME" ]; then
+    java="$JAVA_HOME/bin/java"
+else
+    java=java
+fi
+
+# The archive is only valid for the JVM that created it; any other JVM
+# warns and starts without it.
+if [ -f "$target/chess-game.jsa" ]; then
+    set -- "-XX:SharedArchiveFile=$target/chess-game.jsa" --add-modules jdk.incubator.vector -cp "$jar" com.chessgame.ChessGameGUI "$@"
+else
+    set -- --add-modules jdk.incubator.vector -cp "$jar" com.chessgame.ChessGameGUI "$@"
+fi
+exec "$java" $JAVA_OPTS "$@"
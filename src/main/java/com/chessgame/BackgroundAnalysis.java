@@ -0,0 +1,290 @@
+package com.chessgame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Keeps a second engine searching the current game position with
+// "go infinite" and MultiPV so hints and evaluations are available at any
+// moment. The search restarts whenever the position changes.
+//
+// The reader thread parses every info line into preallocated per-line slots
+// and only marks them dirty. publish(), called once per display frame,
+// turns the dirty slots into immutable Lines and hands them to subscribers,
+// so however fast the engine reports, each line reaches subscribers at most
+// once per frame. Parsing an info line allocates nothing; the String and
+// queue node UciEngine's reader makes for each line are all that remain.
+public class BackgroundAnalysis {
+    public static final int DEFAULT_LINES = 3;
+    public static final int MAX_LINES = 10;
+
+    public interface Subscriber {
+        void analysisUpdated(List<String> position, Line[] lines);
+    }
+
+    public static class Line {
+        private final int depth;
+        private final int score;
+        private final long nodes;
+        private final List<String> pv;
+
+        Line(int depth, int score, long nodes, List<String> pv) {
+            this.depth = depth;
+            this.score = score;
+            this.nodes = nodes;
+            this.pv = pv;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        // Centipawns from white's point of view; mates use the same scale as
+        // GameAnalyzer.
+        public int getScore() {
+            return score;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public List<String> getPv() {
+            return pv;
+        }
+    }
+
+    private final UciEngine engine;
+    private final Thread reader;
+    private final InfoLineParser parser = new InfoLineParser();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private int lineCount;
+    private int engineLineCount;
+    private List<String> currentMoves;
+    private List<String> pendingMoves;
+    private boolean searching;
+    private boolean whiteToMove = true;
+    private volatile boolean closed;
+
+    // Latest report per line, written by the reader thread.
+    private final int[] slotDepth = new int[MAX_LINES];
+    private final int[] slotScore = new int[MAX_LINES];
+    private final long[] slotNodes = new long[MAX_LINES];
+    private final int[][] slotPv = new int[MAX_LINES][InfoLineParser.MAX_PV];
+    private final int[] slotPvLength = new int[MAX_LINES];
+    private final boolean[] dirty = new boolean[MAX_LINES];
+    private boolean positionChanged;
+
+    private volatile List<String> publishedMoves = Collections.emptyList();
+    private volatile Line[] published = new Line[0];
+
+    public BackgroundAnalysis(int lineCount) throws IOException {
+        this.lineCount = Math.max(1, Math.min(MAX_LINES, lineCount));
+        engine = new UciEngine(UciEngine.extractStockfish());
+        reader = new Thread(this::readLoop, "background-analysis");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public void addSubscriber(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void removeSubscriber(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    // Restarts the search on the position after the given moves. Returns at
+    // once; a running search is stopped and the new one starts when the
+    // engine acknowledges with bestmove.
+    public synchronized void setPosition(List<String> moves) {
+        if (closed || moves.equals(pendingMoves != null ? pendingMoves : currentMoves)) {
+            return;
+        }
+        restart(new ArrayList<>(moves));
+    }
+
+    public synchronized int getLineCount() {
+        return lineCount;
+    }
+
+    // Changing the number of lines restarts the current search, since
+    // engines only accept options while idle.
+    public synchronized void setLineCount(int count) {
+        count = Math.max(1, Math.min(MAX_LINES, count));
+        if (closed || count == lineCount) {
+            return;
+        }
+        lineCount = count;
+        if (pendingMoves != null || currentMoves != null) {
+            restart(pendingMoves != null ? pendingMoves : currentMoves);
+        }
+    }
+
+    private void restart(List<String> moves) {
+        pendingMoves = moves;
+        if (searching) {
+            engine.send("stop");
+        } else {
+            startPending();
+        }
+    }
+
+    private void startPending() {
+        currentMoves = pendingMoves;
+        pendingMoves = null;
+        whiteToMove = currentMoves.size() % 2 == 0;
+        Arrays.fill(slotPvLength, 0);
+        Arrays.fill(dirty, false);
+        positionChanged = true;
+        if (engineLineCount != lineCount) {
+            engine.setOption("MultiPV", lineCount);
+            engineLineCount = lineCount;
+        }
+        engine.send(currentMoves.isEmpty() ? "position startpos"
+                : "position startpos moves " + String.join(" ", currentMoves));
+        engine.send("go infinite");
+        searching = true;
+    }
+
+    private void readLoop() {
+        try {
+            String line;
+            while ((line = engine.readLine()) != null) {
+                if (line.startsWith("bestmove")) {
+                    synchronized (this) {
+                        searching = false;
+                        if (pendingMoves != null && !closed) {
+                            startPending();
+                        }
+                    }
+                } else if (line.startsWith("info")) {
+                    infoReceived(line);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Background analysis stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void infoReceived(String line) {
+        // Lines still arriving from a search that is being stopped are stale,
+        // and aspiration window bounds would only make the display flicker.
+        if (pendingMoves != null || !parser.parse(line) || parser.isBound() || parser.getPvLength() == 0) {
+            return;
+        }
+        int slot = parser.getMultipv() - 1;
+        if (slot < 0 || slot >= lineCount) {
+            return;
+        }
+        slotDepth[slot] = parser.getDepth();
+        slotScore[slot] = whiteToMove ? parser.getScore() : -parser.getScore();
+        slotNodes[slot] = parser.getNodes();
+        slotPvLength[slot] = parser.getPvLength();
+        for (int i = 0; i < parser.getPvLength(); i++) {
+            slotPv[slot][i] = parser.getPvMove(i);
+        }
+        dirty[slot] = true;
+    }
+
+    // Delivers whatever changed since the previous call to the subscribers,
+    // on the calling thread; call it once per frame. Returns whether anything
+    // was delivered.
+    public boolean publish() {
+        List<String> moves;
+        Line[] lines;
+        synchronized (this) {
+            if (!positionChanged && !anyDirty()) {
+                return false;
+            }
+            Line[] previous = positionChanged ? new Line[0] : published;
+            lines = Arrays.copyOf(previous, lineCount);
+            for (int slot = 0; slot < lineCount; slot++) {
+                if (dirty[slot]) {
+                    lines[slot] = toLine(slot);
+                    dirty[slot] = false;
+                }
+            }
+            positionChanged = false;
+            moves = currentMoves != null ? currentMoves : Collections.emptyList();
+            publishedMoves = moves;
+            published = lines;
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.analysisUpdated(moves, lines);
+        }
+        return true;
+    }
+
+    private boolean anyDirty() {
+        for (int slot = 0; slot < lineCount; slot++) {
+            if (dirty[slot]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Line toLine(int slot) {
+        String[] pv = new String[slotPvLength[slot]];
+        for (int i = 0; i < pv.length; i++) {
+            pv[i] = SearchBoard.moveToUci(slotPv[slot][i]);
+        }
+        return new Line(slotDepth[slot], slotScore[slot], slotNodes[slot], Collections.unmodifiableList(Arrays.asList(pv)));
+    }
+
+    // Lines as of the last publish(), best first; entries may be null until
+    // the engine reports them.
+    public Line[] getLines() {
+        return published;
+    }
+
+    public List<String> getPosition() {
+        return publishedMoves;
+    }
+
+    // The engine's current first choice for the given position, read from
+    // the latest report rather than the last published frame, or null if
+    // the engine is busy elsewhere or has not reported yet.
+    public synchronized String getBestMove(List<String> moves) {
+        if (pendingMoves != null || !moves.equals(currentMoves) || slotPvLength[0] == 0) {
+            return null;
+        }
+        return SearchBoard.moveToUci(slotPv[0][0]);
+    }
+
+    // The principal variation in SAN, played out from the analysed position.
+    public static String formatPv(List<String> position, List<String> pv, int maxMoves) {
+        SearchBoard board = new SearchBoard();
+        for (String move : position) {
+            board.makeMove(board.parseUciMove(move));
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < Math.min(maxMoves, pv.size()); i++) {
+            int move = board.parseUciMove(pv.get(i));
+            if (move == 0) {
+                break;
+            }
+            boolean white = board.getSideToMove() == SearchBoard.WHITE;
+            if (white || i == 0) {
+                text.append(board.getFullmoveNumber()).append(white ? ". " : "... ");
+            }
+            text.append(board.toSan(move)).append(' ');
+            board.makeMove(move);
+        }
+        return text.toString().trim();
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            pendingMoves = null;
+        }
+        engine.close();
+    }
+}
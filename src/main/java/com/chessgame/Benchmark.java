@@ -0,0 +1,851 @@
+package com.chessgame;
+
+import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+// Micro-benchmarks for the in-process engine code, run from the command line:
+//   java -cp chess-game.jar com.chessgame.Benchmark eval [seconds]
+//   java -cp chess-game.jar com.chessgame.Benchmark pawnhash [depth]
+//   java --add-modules jdk.incubator.vector -cp chess-game.jar com.chessgame.Benchmark nnue [seconds]
+//   java -cp chess-game.jar com.chessgame.Benchmark see [seconds]
+//   java -cp chess-game.jar com.chessgame.Benchmark search [depth]
+//   java -cp chess-game.jar com.chessgame.Benchmark perft [depth]
+//   java -cp chess-game.jar com.chessgame.Benchmark infoparse [seconds]
+//   java -cp chess-game.jar com.chessgame.Benchmark mate
+//   java -cp chess-game.jar com.chessgame.Benchmark history [seconds]
+//   java -cp chess-game.jar com.chessgame.Benchmark broadcast [subscribers] [moves]
+//   java -cp chess-game.jar com.chessgame.Benchmark journal [plies]
+//   java -cp chess-game.jar com.chessgame.Benchmark startup [launches] [archive.jsa]
+public class Benchmark {
+    static final String[] POSITIONS = {
+        SearchBoard.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "2r3k1/pp3ppp/4p3/3pP3/3P4/P4N2/1P3PPP/2R3K1 b - - 0 24",
+        "8/5pk1/6p1/8/3K4/8/5PPP/8 w - - 0 40"
+    };
+
+    // Forced mates and the number of moves they take.
+    static final String[] MATE_POSITIONS = {
+        "r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 0 1", "2",
+        "r1b2k1r/ppp1bppp/8/1B1Q4/5q2/2P5/PPP2PPP/R3R1K1 w - - 0 1", "2",
+        "6k1/pp4p1/2p5/2bp4/8/P5Pb/1P3rrP/2BRRN1K b - - 0 1", "2",
+        "Q2q3r/3Qbkp1/R2pp3/2p3p1/2P5/2N1P3/3P1P1P/2B1KB1R w K - 0 1", "3",
+        "7R/8/2P1k3/7Q/8/2P1PP2/P3KP2/8 w - - 0 1", "3",
+        "8/1R4p1/8/k4p2/2BK4/4p1r1/1P4n1/8 w - - 0 1", "3"
+    };
+    private static final int MATE_RUNS = 9;
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "eval";
+        switch (mode) {
+            case "eval":
+                benchmarkEvaluation(args.length > 1 ? Integer.parseInt(args[1]) : 5);
+                break;
+            case "pawnhash":
+                benchmarkPawnHash(args.length > 1 ? Integer.parseInt(args[1]) : 4);
+                break;
+            case "nnue":
+                benchmarkNnue(args.length > 1 ? Integer.parseInt(args[1]) : 5);
+                break;
+            case "see":
+                benchmarkSee(args.length > 1 ? Integer.parseInt(args[1]) : 5);
+                break;
+            case "search":
+                benchmarkSearch(args.length > 1 ? Integer.parseInt(args[1]) : 7);
+                break;
+            case "perft":
+                benchmarkPerft(args.length > 1 ? Integer.parseInt(args[1]) : 4);
+                break;
+            case "infoparse":
+                benchmarkInfoParse(args.length > 1 ? Integer.parseInt(args[1]) : 5);
+                break;
+            case "mate":
+                benchmarkMate();
+                break;
+            case "history":
+                benchmarkHistory(args.length > 1 ? Integer.parseInt(args[1]) : 5);
+                break;
+            case "broadcast":
+                benchmarkBroadcast(args.length > 1 ? Integer.parseInt(args[1]) : 10_000,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 200);
+                break;
+            case "journal":
+                benchmarkJournal(args.length > 1 ? Integer.parseInt(args[1]) : 300);
+                break;
+            case "startup":
+                benchmarkStartup(args.length > 1 ? Integer.parseInt(args[1]) : 10, args.length > 2 ? args[2] : null);
+                break;
+            case "broadcast-spectators":
+                runSpectators(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+                break;
+            case "startup-frame":
+                startupFrame();
+                break;
+            default:
+                System.err.println("Unknown benchmark: " + mode);
+        }
+    }
+
+    private static void benchmarkEvaluation(int seconds) {
+        benchmarkEvaluation("eval", new Evaluator(), seconds);
+    }
+
+    // Evaluates every child of every position, so each iteration exercises
+    // the incremental make/unmake bookkeeping as well as the evaluator.
+    private static void benchmarkEvaluation(String label, Evaluator evaluator, int seconds) {
+        SearchBoard[] boards = new SearchBoard[POSITIONS.length];
+        int[][] moves = new int[POSITIONS.length][];
+        for (int i = 0; i < POSITIONS.length; i++) {
+            boards[i] = new SearchBoard(POSITIONS[i]);
+            int[] buffer = new int[256];
+            moves[i] = Arrays.copyOf(buffer, boards[i].generateLegalMoves(buffer));
+        }
+
+        long checksum = 0;
+        long evaluations = 0;
+        long warmupEnd = System.nanoTime() + 2_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            checksum += evaluateChildren(evaluator, boards, moves);
+        }
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            checksum += evaluateChildren(evaluator, boards, moves);
+            for (int[] positionMoves : moves) {
+                evaluations += positionMoves.length;
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %,.0f evaluations/s (%,d in %.1fs, checksum %d)%n",
+                label, evaluations / elapsedSeconds, evaluations, elapsedSeconds, checksum);
+
+        for (int i = 0; i < POSITIONS.length; i++) {
+            SearchBoard fresh = new SearchBoard(boards[i].toFen());
+            if (evaluator.evaluate(fresh) != evaluator.evaluate(boards[i]) || fresh.getKey() != boards[i].getKey()) {
+                System.err.println("Incremental state drifted for " + POSITIONS[i]);
+            }
+        }
+    }
+
+    // The scalar kernel is the reference: both kernels must agree exactly on
+    // every child position before their speed is compared with the PST
+    // evaluator.
+    private static void benchmarkNnue(int seconds) {
+        NnueNetwork network;
+        try {
+            network = NnueNetwork.loadResource(NnueNetwork.DEFAULT_RESOURCE);
+        } catch (IOException e) {
+            System.err.println("Failed to load network: " + e.getMessage());
+            return;
+        }
+        NnueKernel best = NnueKernel.best();
+        NnueEvaluator scalar = new NnueEvaluator(network, new ScalarNnueKernel());
+        NnueEvaluator vector = new NnueEvaluator(network, best);
+        if (best instanceof ScalarNnueKernel) {
+            System.out.println("jdk.incubator.vector not available, only the scalar kernel will run");
+        }
+
+        int mismatches = 0;
+        long totalDifference = 0;
+        int compared = 0;
+        Evaluator pst = new Evaluator();
+        int[] moves = new int[256];
+        for (String fen : POSITIONS) {
+            SearchBoard scalarBoard = new SearchBoard(fen);
+            SearchBoard vectorBoard = new SearchBoard(fen);
+            scalar.attach(scalarBoard);
+            vector.attach(vectorBoard);
+            int count = scalarBoard.generateLegalMoves(moves);
+            for (int i = 0; i < count; i++) {
+                scalarBoard.makeMove(moves[i]);
+                vectorBoard.makeMove(moves[i]);
+                int expected = scalar.evaluate(scalarBoard);
+                if (vector.evaluate(vectorBoard) != expected || new NnueEvaluator(network, new ScalarNnueKernel())
+                        .evaluate(new SearchBoard(scalarBoard.toFen())) != expected) {
+                    mismatches++;
+                }
+                totalDifference += Math.abs(expected - pst.evaluate(scalarBoard));
+                compared++;
+                scalarBoard.unmakeMove(moves[i]);
+                vectorBoard.unmakeMove(moves[i]);
+            }
+        }
+        System.out.printf("nnue: %d/%d positions disagree across kernels/refresh, mean |nnue - pst| = %d cp%n",
+                mismatches, compared, totalDifference / compared);
+
+        benchmarkEvaluation("pst", pst, seconds);
+        benchmarkEvaluation("nnue-scalar", scalar, seconds);
+        if (!(best instanceof ScalarNnueKernel)) {
+            benchmarkEvaluation("nnue-" + best.getClass().getSimpleName(), vector, seconds);
+        }
+    }
+
+    private static long evaluateChildren(Evaluator evaluator, SearchBoard[] boards, int[][] moves) {
+        long sum = 0;
+        for (int i = 0; i < boards.length; i++) {
+            SearchBoard board = boards[i];
+            for (int move : moves[i]) {
+                board.makeMove(move);
+                sum += evaluator.evaluate(board);
+                board.unmakeMove(move);
+            }
+        }
+        return sum;
+    }
+
+    // Evaluates every node of a fixed-depth tree, the way a search would,
+    // with pawn tables of several sizes to show where the hit rate levels off.
+    private static void benchmarkPawnHash(int depth) {
+        for (int entries : new int[]{64, 1024, PawnHashTable.DEFAULT_ENTRIES, 1 << 18}) {
+            Evaluator evaluator = new Evaluator(new PawnHashTable(entries));
+            long start = System.nanoTime();
+            long evaluations = 0;
+            for (String fen : POSITIONS) {
+                evaluations += evaluateTree(new SearchBoard(fen), evaluator, depth, new int[depth + 1][256]);
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%,.0f evaluations/s  %s%n", evaluations / elapsedSeconds, evaluator.getPawnTable());
+        }
+    }
+
+    private static long evaluateTree(SearchBoard board, Evaluator evaluator, int depth, int[][] buffers) {
+        evaluator.evaluate(board);
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth];
+        int count = board.generateMoves(moves, false);
+        long evaluations = 1;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            if (!board.leftKingInCheck()) {
+                evaluations += evaluateTree(board, evaluator, depth - 1, buffers);
+            }
+            board.unmakeMove(moves[i]);
+        }
+        return evaluations;
+    }
+
+    // Static exchange evaluations of every capture in every position; most
+    // need a few rounds of least-valuable-attacker lookups.
+    private static void benchmarkSee(int seconds) {
+        SearchBoard[] boards = new SearchBoard[POSITIONS.length];
+        int[][] captures = new int[POSITIONS.length][];
+        int losing = 0;
+        for (int i = 0; i < POSITIONS.length; i++) {
+            boards[i] = new SearchBoard(POSITIONS[i]);
+            int[] buffer = new int[256];
+            captures[i] = Arrays.copyOf(buffer, boards[i].generateMoves(buffer, true));
+            for (int move : captures[i]) {
+                if (boards[i].see(move) < 0) {
+                    losing++;
+                }
+            }
+        }
+
+        long checksum = 0;
+        long evaluations = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < boards.length; i++) {
+                for (int move : captures[i]) {
+                    checksum += boards[i].see(move);
+                }
+                evaluations += captures[i].length;
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("see: %,.0f exchanges/s (%d captures, %d losing, checksum %d)%n",
+                evaluations / elapsedSeconds, countAll(captures), losing, checksum);
+    }
+
+    private static int countAll(int[][] moves) {
+        int count = 0;
+        for (int[] positionMoves : moves) {
+            count += positionMoves.length;
+        }
+        return Math.max(1, count);
+    }
+
+    private static void benchmarkSearch(int depth) {
+        Search search = new Search(new Evaluator());
+        long totalNodes = 0;
+        long start = System.nanoTime();
+        for (String fen : POSITIONS) {
+            search.getTable().clear();
+            SearchBoard board = new SearchBoard(fen);
+            Search.Result result = search.search(board, depth, 0);
+            totalNodes += result.getNodes();
+            System.out.printf("depth %d score %5d nodes %,11d best %s  %s%n", result.getDepth(), result.getScore(),
+                    result.getNodes(), SearchBoard.moveToUci(result.getMove()), fen);
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("search: %,.0f nodes/s (%,d nodes in %.1fs)%n", totalNodes / elapsedSeconds, totalNodes, elapsedSeconds);
+    }
+
+    // The proof-number solver against alpha-beta searched just deep enough
+    // to see the same mate.
+    // Both searchers are warmed up first and start every timed run with an
+    // empty table; the time shown is the median of MATE_RUNS runs.
+    private static void benchmarkMate() {
+        MateTable mateTable = new MateTable(1 << 20);
+        MateSolver solver = new MateSolver(mateTable);
+        Search search = new Search(new Evaluator());
+        long warmupEnd = System.nanoTime() + 2_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            for (int i = 0; i < MATE_POSITIONS.length; i += 2) {
+                int mateIn = Integer.parseInt(MATE_POSITIONS[i + 1]);
+                mateTable.clear();
+                solver.solve(new SearchBoard(MATE_POSITIONS[i]), mateIn, 0);
+                search.getTable().clear();
+                search.search(new SearchBoard(MATE_POSITIONS[i]), 2 * mateIn - 1, 0);
+            }
+        }
+
+        for (int i = 0; i < MATE_POSITIONS.length; i += 2) {
+            String fen = MATE_POSITIONS[i];
+            int mateIn = Integer.parseInt(MATE_POSITIONS[i + 1]);
+            double[] solverMillis = new double[MATE_RUNS];
+            double[] searchMillis = new double[MATE_RUNS];
+            MateSolver.Result solved = null;
+            Search.Result searched = null;
+            for (int run = 0; run < MATE_RUNS; run++) {
+                mateTable.clear();
+                long start = System.nanoTime();
+                solved = solver.solve(new SearchBoard(fen), mateIn, 0);
+                solverMillis[run] = (System.nanoTime() - start) / 1e6;
+
+                search.getTable().clear();
+                start = System.nanoTime();
+                searched = search.search(new SearchBoard(fen), 2 * mateIn - 1, 0);
+                searchMillis[run] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(solverMillis);
+            Arrays.sort(searchMillis);
+            boolean searchFound = searched.getScore() >= Search.MATE - 2 * mateIn;
+
+            System.out.printf("mate in %d: solver %s %,9d nodes %8.2f ms | alpha-beta %s %,11d nodes %8.2f ms  %s%n", mateIn,
+                    solved.getStatus() == MateSolver.PROVEN ? "proved" : "FAILED", solved.getNodes(), solverMillis[MATE_RUNS / 2],
+                    searchFound ? "found" : "MISSED", searched.getNodes(), searchMillis[MATE_RUNS / 2], fen);
+        }
+    }
+
+    // Random jumps through a 300-move game, as when scrubbing the move list.
+    private static void benchmarkHistory(int seconds) {
+        Random random = new Random(42);
+        List<String> game = new ArrayList<>();
+        SearchBoard board = new SearchBoard();
+        int[] moves = new int[256];
+        while (game.size() < 600) {
+            int count = board.generateLegalMoves(moves);
+            if (count == 0) {
+                // Mated or stalemated early; play a different game.
+                board = new SearchBoard();
+                game.clear();
+                continue;
+            }
+            int move = moves[random.nextInt(count)];
+            game.add(SearchBoard.moveToUci(move));
+            board.makeMove(move);
+        }
+
+        HistoryCursor cursor = new HistoryCursor();
+        long start = System.nanoTime();
+        cursor.setMoves(game);
+        System.out.printf("history: %d plies loaded in %.2f ms%n", cursor.getLength(), (System.nanoTime() - start) / 1e6);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int[] targets = new int[4096];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = random.nextInt(cursor.getLength() + 1);
+        }
+        long checksum = 0;
+        long warmupEnd = System.nanoTime() + 2_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            for (int target : targets) {
+                cursor.seek(target);
+            }
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        long seeks = 0;
+        long worst = 0;
+        start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (int target : targets) {
+                long seekStart = System.nanoTime();
+                cursor.seek(target);
+                worst = Math.max(worst, System.nanoTime() - seekStart);
+                checksum += cursor.getBoard().getKey();
+            }
+            seeks += targets.length;
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocatedBefore;
+        System.out.printf("history: %.1f us/seek average, %.1f us worst, %.2f bytes allocated/seek (checksum %d)%n",
+                elapsedSeconds * 1e6 / seeks, worst / 1e3, (double) allocated / seeks, checksum);
+    }
+
+    // Publishes a game move by move to local spectators and measures how
+    // long each move takes to reach all of them. The spectators run in a
+    // child JVM, which keeps both ends of 10k sockets under the usual
+    // per-process file limit.
+    private static void benchmarkBroadcast(int subscribers, int plies) {
+        Random random = new Random(42);
+        List<String> game = new ArrayList<>();
+        List<BoardSnapshot> snapshots = new ArrayList<>();
+        SearchBoard board = new SearchBoard();
+        int[] moves = new int[256];
+        snapshots.add(BoardSnapshot.of(board, game));
+        while (game.size() < plies) {
+            int count = board.generateLegalMoves(moves);
+            if (count == 0) {
+                board = new SearchBoard();
+                game.clear();
+                snapshots.subList(1, snapshots.size()).clear();
+                continue;
+            }
+            int move = moves[random.nextInt(count)];
+            game.add(SearchBoard.moveToUci(move));
+            board.makeMove(move);
+            snapshots.add(BoardSnapshot.of(board, game));
+        }
+
+        try (BroadcastServer server = new BroadcastServer(0)) {
+            server.publish(1, snapshots.get(0), 300_000, 300_000, ChessGame.NO_SCORE);
+            Process spectators = new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"),
+                    "com.chessgame.Benchmark", "broadcast-spectators",
+                    String.valueOf(server.getPort()), String.valueOf(subscribers), String.valueOf(plies))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            BufferedReader output = new BufferedReader(new InputStreamReader(spectators.getInputStream()));
+            String line;
+            while ((line = output.readLine()) != null && !line.equals("ready")) {
+                System.out.println(line);
+            }
+            if (line == null) {
+                System.err.println("broadcast: spectators exited before subscribing");
+                return;
+            }
+            System.out.printf("broadcast: %d spectators subscribed%n", server.getSubscriberCount());
+            long start = System.nanoTime();
+            for (int ply = 1; ply <= plies; ply++) {
+                server.publish(1, snapshots.get(ply), 300_000 - ply * 100L, 300_000 - ply * 100L, ply % 200 - 100);
+                // A fast game: one move every 10 ms.
+                LockSupport.parkNanos(10_000_000L);
+            }
+            while ((line = output.readLine()) != null) {
+                System.out.println(line);
+            }
+            spectators.waitFor();
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("broadcast: %d frames queued, %d dropped, %d resyncs in %.2f s%n",
+                    server.getFramesQueued(), server.getFramesDropped(), server.getResyncs(), elapsedSeconds);
+        } catch (IOException e) {
+            System.err.println("broadcast: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The child side of the broadcast benchmark: connects the spectators,
+    // reads every frame and reports, per move, the time between the first
+    // and the last spectator receiving it.
+    private static void runSpectators(int port, int count, int plies) {
+        try (Selector selector = Selector.open()) {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            ByteBuffer subscribe = ByteBuffer.allocate(4);
+            SocketChannel[] channels = new SocketChannel[count];
+            ByteBuffer[] buffers = new ByteBuffer[count];
+            int[] received = new int[count];
+            for (int i = 0; i < count; i++) {
+                try {
+                    channels[i] = SocketChannel.open(address);
+                } catch (IOException e) {
+                    System.out.printf("broadcast: only %d spectators could connect (%s); raise ulimit -n%n", i, e.getMessage());
+                    count = i;
+                    break;
+                }
+                subscribe.clear();
+                subscribe.putInt(1).flip();
+                channels[i].write(subscribe);
+                channels[i].configureBlocking(false);
+                channels[i].register(selector, SelectionKey.OP_READ, i);
+                buffers[i] = ByteBuffer.allocate(4096);
+                received[i] = -1;
+            }
+            long[] first = new long[plies + 1];
+            long[] last = new long[plies + 1];
+            int[] arrivals = new int[plies + 1];
+            int joined = 0;
+            int finished = 0;
+            long bytes = 0;
+            boolean ready = false;
+            long deadline = System.nanoTime() + 120_000_000_000L;
+            while (finished < count && System.nanoTime() < deadline) {
+                selector.select(100);
+                long now = System.nanoTime();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    int i = (Integer) key.attachment();
+                    ByteBuffer buffer = buffers[i];
+                    int read = channels[i].read(buffer);
+                    if (read < 0) {
+                        key.cancel();
+                        continue;
+                    }
+                    bytes += read;
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        byte type = buffer.get(buffer.position());
+                        int size = type == BroadcastServer.SNAPSHOT ? BroadcastServer.SNAPSHOT_BYTES
+                                : type == BroadcastServer.MOVE ? BroadcastServer.MOVE_BYTES : BroadcastServer.RESULT_BYTES;
+                        if (buffer.remaining() < size) {
+                            break;
+                        }
+                        int ply = buffer.getShort(buffer.position() + 5);
+                        buffer.position(buffer.position() + size);
+                        if (type == BroadcastServer.SNAPSHOT && received[i] < 0) {
+                            joined++;
+                        }
+                        if (ply > received[i] && ply <= plies) {
+                            received[i] = ply;
+                            if (arrivals[ply]++ == 0) {
+                                first[ply] = now;
+                            }
+                            last[ply] = now;
+                            if (ply == plies) {
+                                finished++;
+                            }
+                        }
+                    }
+                    buffer.compact();
+                }
+                selector.selectedKeys().clear();
+                if (!ready && joined == count) {
+                    ready = true;
+                    System.out.println("ready");
+                    System.out.flush();
+                }
+            }
+            long[] spreads = new long[plies];
+            int measured = 0;
+            for (int ply = 1; ply <= plies; ply++) {
+                if (arrivals[ply] > 0) {
+                    spreads[measured++] = last[ply] - first[ply];
+                }
+            }
+            Arrays.sort(spreads, 0, measured);
+            if (!ready) {
+                System.out.println("ready");
+            }
+            System.out.printf("broadcast: %d/%d spectators saw every move, %.1f MB read%n", finished, count, bytes / 1e6);
+            if (measured > 0) {
+                System.out.printf("broadcast: fan-out per move p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                        spreads[measured / 2] / 1e6, spreads[Math.min(measured - 1, measured * 99 / 100)] / 1e6,
+                        spreads[measured - 1] / 1e6);
+            }
+            System.out.flush();
+            for (int i = 0; i < count; i++) {
+                channels[i].close();
+            }
+        } catch (IOException e) {
+            System.out.println("broadcast: spectator failed: " + e.getMessage());
+        }
+    }
+
+    // Restores a journaled game of the given length into a fresh ChessGame
+    // (run first, so the JVM is as cold as at startup), then measures what
+    // an append costs the thread making the move.
+    private static void benchmarkJournal(int plies) {
+        Random random = new Random(42);
+        List<String> game = new ArrayList<>();
+        SearchBoard board = new SearchBoard();
+        int[] moves = new int[256];
+        while (game.size() < plies) {
+            int count = board.generateLegalMoves(moves);
+            if (count == 0 || board.getHalfmoveClock() >= 90 || board.repetitions() > 1) {
+                // Over, or about to be drawn; play a different game.
+                board = new SearchBoard();
+                game.clear();
+                continue;
+            }
+            int move = moves[random.nextInt(count)];
+            game.add(SearchBoard.moveToUci(move));
+            board.makeMove(move);
+        }
+        try {
+            File directory = Files.createTempDirectory("journal-benchmark").toFile();
+            GameJournal journal = GameJournal.create(directory);
+            for (String move : game) {
+                journal.appendMove(move, -1);
+            }
+            journal.close();
+
+            long start = System.nanoTime();
+            GameJournal.Saved saved = GameJournal.findUnfinished(directory);
+            double readMillis = (System.nanoTime() - start) / 1e6;
+            ChessGame restored = new ChessGame();
+            start = System.nanoTime();
+            restored.enableJournal(directory);
+            double restoreMillis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("journal: %d plies, %d bytes; read %.2f ms, restore into ChessGame %.2f ms (%s)%n",
+                    plies, saved.getFile().length(), readMillis, restoreMillis,
+                    restored.getMoveHistory().equals(game) ? "identical" : "MISMATCH");
+            restored.closeJournal();
+            restored.closeStockfish();
+
+            journal = GameJournal.create(directory);
+            int appends = 1_000_000;
+            long[] samples = new long[appends];
+            for (int i = 0; i < appends; i++) {
+                long appendStart = System.nanoTime();
+                journal.appendMove(game.get(i % plies), 60_000);
+                samples[i] = System.nanoTime() - appendStart;
+            }
+            long closeStart = System.nanoTime();
+            journal.close();
+            long closeNanos = System.nanoTime() - closeStart;
+            Arrays.sort(samples);
+            System.out.printf("journal: append p50 %d ns, p99 %d ns, p99.99 %d ns, max %.1f us; final commit %.1f ms for %d records%n",
+                    samples[appends / 2], samples[appends * 99 / 100], samples[appends - appends / 10_000 - 1],
+                    samples[appends - 1] / 1e3, closeNanos / 1e6, appends);
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        } catch (IOException e) {
+            System.err.println("journal: " + e.getMessage());
+        }
+    }
+
+    // Launches the GUI in a fresh JVM, launches times per configuration, and
+    // reports the wall time from starting the JVM to the first painted
+    // frame: with the JVM's default class data sharing, and with the AppCDS
+    // archive if one is given. Launches alternate between configurations so
+    // drift on the machine hits both alike. -Dchess.startup.java picks the
+    // runtime (e.g. target/runtime/bin/java from the jlink profile), and
+    // -Dchess.startup.budgetMillis makes a median over budget in the last
+    // configuration fail the run with exit status 1.
+    private static void benchmarkStartup(int launches, String archive) {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.out.println("startup: needs a display (under X11, try xvfb-run)");
+            return;
+        }
+        String runtime = System.getProperty("chess.startup.java",
+                new File(System.getProperty("java.home"), "bin/java").getPath());
+        // The archive only matches the class path it was created with, and
+        // the build creates it with absolute paths.
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (classPath.length() > 0) {
+                classPath.append(File.pathSeparatorChar);
+            }
+            classPath.append(new File(entry).getAbsolutePath());
+        }
+        List<String> labels = new ArrayList<>();
+        List<List<String>> commands = new ArrayList<>();
+        labels.add("default CDS");
+        commands.add(startupCommand(runtime, null, classPath.toString()));
+        if (archive != null) {
+            labels.add("AppCDS");
+            commands.add(startupCommand(runtime, new File(archive).getAbsolutePath(), classPath.toString()));
+        }
+        long[][] millis = new long[commands.size()][launches];
+        for (int launch = 0; launch < launches; launch++) {
+            for (int i = 0; i < commands.size(); i++) {
+                millis[i][launch] = launchToFirstFrame(commands.get(i));
+                if (millis[i][launch] < 0) {
+                    System.err.println("startup: " + labels.get(i) + " launch did not paint a frame");
+                    System.exit(1);
+                }
+            }
+        }
+        long median = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            Arrays.sort(millis[i]);
+            median = millis[i][launches / 2];
+            System.out.printf("startup: %-11s first frame after min %d ms, median %d ms, max %d ms (%d launches)%n",
+                    labels.get(i), millis[i][0], median, millis[i][launches - 1], launches);
+        }
+        if (commands.size() > 1) {
+            System.out.printf("startup: AppCDS saves %d ms at the median%n", millis[0][launches / 2] - median);
+        }
+        Long budget = Long.getLong("chess.startup.budgetMillis");
+        if (budget != null && median > budget) {
+            System.out.printf("startup: median %d ms is over the %d ms budget%n", median, budget);
+            System.exit(1);
+        }
+    }
+
+    private static List<String> startupCommand(String runtime, String archive, String classPath) {
+        List<String> command = new ArrayList<>();
+        command.add(runtime);
+        // As the launcher runs the game.
+        command.add("--add-modules");
+        command.add("jdk.incubator.vector");
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        // No resumed game, and no journal left behind by the launches.
+        command.add("-Dchess.journal.dir=");
+        command.add("-cp");
+        command.add(classPath);
+        command.add("com.chessgame.Benchmark");
+        command.add("startup-frame");
+        return command;
+    }
+
+    // Milliseconds from starting the JVM until it reports its first frame,
+    // or -1 if it exits without one.
+    private static long launchToFirstFrame(List<String> command) {
+        try {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while ((line = output.readLine()) != null && !line.equals("frame")) {
+                // Skip whatever else the game prints while starting.
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            process.waitFor();
+            return line == null ? -1 : elapsedMillis;
+        } catch (IOException e) {
+            System.err.println("startup: cannot launch " + command.get(0) + ": " + e.getMessage());
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    // One timed launch: starts the game as ChessGameGUI.main does, prints
+    // "frame" once the window has been painted and exits. Also the AppCDS
+    // training run of the build; without a display it can only load the
+    // game model, so the archive then leaves Swing to the default CDS.
+    private static void startupFrame() {
+        if (GraphicsEnvironment.isHeadless()) {
+            ChessGame game = new ChessGame();
+            new SearchBoard().generateLegalMoves(new int[256]);
+            game.getSnapshot();
+            game.closeStockfish();
+            System.out.println("startup: no display, loaded the game model only");
+            return;
+        }
+        javax.swing.RepaintManager.setCurrentManager(new javax.swing.RepaintManager() {
+            private boolean painted;
+
+            @Override
+            public void paintDirtyRegions() {
+                super.paintDirtyRegions();
+                if (!painted && gameWindowShowing()) {
+                    painted = true;
+                    System.out.println("frame");
+                    System.out.flush();
+                    System.exit(0);
+                }
+            }
+        });
+        ChessGameGUI.main(new String[0]);
+    }
+
+    private static boolean gameWindowShowing() {
+        for (Frame frame : Frame.getFrames()) {
+            if (frame instanceof ChessGameGUI && frame.isShowing()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void benchmarkPerft(int depth) {
+        for (String fen : POSITIONS) {
+            SearchBoard board = new SearchBoard(fen);
+            long start = System.nanoTime();
+            long nodes = perft(board, depth, new int[depth + 1][256]);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("perft(%d) = %,d (%,.0f nodes/s) %s%n", depth, nodes, nodes / elapsedSeconds, fen);
+        }
+    }
+
+    // Multi-PV info lines as Stockfish prints them at high depth. Reports
+    // lines/s and the bytes the parsing thread allocated per line.
+    private static void benchmarkInfoParse(int seconds) {
+        String[] lines = {
+            "info depth 32 seldepth 44 multipv 1 score cp 31 nodes 184467321 nps 2104598 hashfull 998 tbhits 0 time 87651 "
+                    + "pv e2e4 e7e5 g1f3 b8c6 f1b5 g8f6 e1g1 f6e4 f1e1 e4d6 f3e5 f8e7 b5f1 c6e5 e1e5 e8g8 d2d4 e7f6 e5e1 f8e8 c2c3",
+            "info depth 32 seldepth 41 multipv 2 score cp 24 nodes 184467321 nps 2104598 hashfull 998 tbhits 0 time 87651 "
+                    + "pv d2d4 g8f6 c2c4 e7e6 g1f3 d7d5 b1c3 f8e7 c1f4 e8g8 e2e3 c7c5 d4c5 e7c5 a2a3 b8c6 d1c2 d8a5",
+            "info depth 32 seldepth 39 multipv 3 score mate -12 upperbound nodes 184467321 nps 2104598 time 87651 pv a2a3 e7e5",
+            "info depth 33 currmove g1f3 currmovenumber 3",
+            "info string NNUE evaluation using nn-b1a57edbea57.nnue enabled"
+        };
+        InfoLineParser parser = new InfoLineParser();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long checksum = 0;
+        long parsed = 0;
+        long warmupEnd = System.nanoTime() + 2_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            for (String line : lines) {
+                parser.parse(line);
+            }
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (int repeat = 0; repeat < 1000; repeat++) {
+                for (String line : lines) {
+                    if (parser.parse(line)) {
+                        checksum += parser.getScore() + parser.getPvMove(parser.getPvLength() - 1);
+                    }
+                }
+            }
+            parsed += 1000L * lines.length;
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocatedBefore;
+        System.out.printf("infoparse: %,.0f lines/s, %.2f bytes allocated/line (checksum %d)%n",
+                parsed / elapsedSeconds, (double) allocated / parsed, checksum);
+    }
+
+    static long perft(SearchBoard board, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth];
+        int count = board.generateMoves(moves, false);
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            if (!board.leftKingInCheck()) {
+                nodes += perft(board, depth - 1, buffers);
+            }
+            board.unmakeMove(moves[i]);
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,18 @@
+package com.chessgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.chessgame.BoardRefresh")
+@Label("Board Refresh")
+@Description("ChessGameGUI.refreshBoard updating the squares from the game state")
+@Category({"Chess", "GUI"})
+@Enabled(false)
+public class BoardRefreshEvent extends Event {
+    @Label("Last Move")
+    public String lastMove;
+}
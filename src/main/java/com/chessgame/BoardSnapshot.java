@@ -0,0 +1,143 @@
+package com.chessgame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// An immutable copy of a game position, taken once per committed move and
+// published by ChessGame through a volatile reference. Any thread can read
+// it without locks while the game keeps mutating its own ChessBoard (which
+// legality checks temporarily rearrange). Pieces use SearchBoard's codes, so
+// a snapshot is about a hundred bytes plus the move list.
+public final class BoardSnapshot {
+    private final byte[] squares = new byte[64];
+    private final int sideToMove;
+    private final int castlingRights;
+    private final int enPassantSquare;
+    private final int halfmoveClock;
+    private final int fullmoveNumber;
+    private final long key;
+    private final List<String> moves;
+
+    private BoardSnapshot(SearchBoard board, List<String> moves) {
+        for (int square = 0; square < 64; square++) {
+            squares[square] = (byte) board.getPiece(square);
+        }
+        this.sideToMove = board.getSideToMove();
+        this.castlingRights = board.getCastlingRights();
+        this.enPassantSquare = board.getEnPassantSquare();
+        this.halfmoveClock = board.getHalfmoveClock();
+        this.fullmoveNumber = moves.size() / 2 + 1;
+        this.key = board.getKey();
+        this.moves = Collections.unmodifiableList(new ArrayList<>(moves));
+    }
+
+    // Must be called by the thread that owns the board.
+    static BoardSnapshot of(ChessBoard board, boolean whiteTurn, List<String> moves) {
+        return new BoardSnapshot(SearchBoard.fromChessBoard(board, whiteTurn), moves);
+    }
+
+    static BoardSnapshot of(SearchBoard board, List<String> moves) {
+        return new BoardSnapshot(board, moves);
+    }
+
+    // SearchBoard piece code, or SearchBoard.EMPTY.
+    public int getPiece(int row, int col) {
+        return squares[row * 8 + col];
+    }
+
+    public boolean isWhiteToMove() {
+        return sideToMove == SearchBoard.WHITE;
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // Polyglot key of the position.
+    public long getKey() {
+        return key;
+    }
+
+    // Moves from the start position in coordinate notation.
+    public List<String> getMoves() {
+        return moves;
+    }
+
+    public String getLastMove() {
+        return moves.isEmpty() ? null : moves.get(moves.size() - 1);
+    }
+
+    public int getPly() {
+        return moves.size();
+    }
+
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = squares[row * 8 + col];
+                if (piece == SearchBoard.EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                fen.append(SearchBoard.PIECE_CHARS.charAt(piece));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+        fen.append(sideToMove == SearchBoard.WHITE ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        } else {
+            if ((castlingRights & SearchBoard.WHITE_KINGSIDE) != 0) fen.append('K');
+            if ((castlingRights & SearchBoard.WHITE_QUEENSIDE) != 0) fen.append('Q');
+            if ((castlingRights & SearchBoard.BLACK_KINGSIDE) != 0) fen.append('k');
+            if ((castlingRights & SearchBoard.BLACK_QUEENSIDE) != 0) fen.append('q');
+        }
+        fen.append(' ').append(enPassantSquare >= 0 ? SearchBoard.squareName(enPassantSquare) : "-");
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
+    }
+
+    // A fresh board for searching. It is replayed from the start position,
+    // so repetitions of earlier positions are detected too.
+    public SearchBoard toSearchBoard() {
+        SearchBoard board = new SearchBoard();
+        for (String move : moves) {
+            int encoded = board.parseUciMove(move);
+            if (encoded == 0) {
+                // ChessGame checks every move on a SearchBoard, so this only
+                // guards against a history that did not come from a game.
+                return new SearchBoard(toFen());
+            }
+            board.makeMove(encoded);
+        }
+        return board;
+    }
+}
@@ -0,0 +1,469 @@
+package com.chessgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Streams live games to spectators over TCP. A spectator connects and sends
+// the 4-byte id of each game it wants to watch; it gets a snapshot of the
+// position at once and then one small delta per move. Frames are fixed-size
+// by type, big-endian:
+//
+//   SNAPSHOT (55 bytes): type, game id, ply, 32 bytes of squares (two
+//       SearchBoard piece codes per byte, a8 first), side to move, castling
+//       rights, en passant square (255 for none), halfmove clock, fullmove
+//       number (2), white and black clock millis (4 each, -1 without a
+//       clock), White's score (2, -32768 for none)
+//   MOVE (19 bytes): type, game id, ply after the move, move (2: from | to
+//       << 6 | promotion << 12), white and black clock millis, White's score
+//   RESULT (6 bytes): type, game id, 1 = White won, 2 = Black won, 3 = draw
+//
+// One selector thread does all the I/O. Publishers on any thread queue
+// updates and wake it; it encodes each update once, copies the frame into
+// the bounded buffer of every subscriber of that game, and then writes each
+// affected socket once per batch. A subscriber whose buffer is full loses
+// its queued deltas: it is marked for resync and gets fresh snapshots of
+// its games once its buffer has drained, so a slow reader costs memory
+// bounded by its buffer and never holds up the others.
+public class BroadcastServer implements Closeable {
+    public static final byte SNAPSHOT = 1;
+    public static final byte MOVE = 2;
+    public static final byte RESULT = 3;
+    public static final int SNAPSHOT_BYTES = 55;
+    public static final int MOVE_BYTES = 19;
+    public static final int RESULT_BYTES = 6;
+    public static final int DEFAULT_BUFFER_BYTES = 4096;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final class Update {
+        final int gameId;
+        final BoardSnapshot snapshot;
+        final long whiteMillis;
+        final long blackMillis;
+        final int score;
+        final byte result;
+
+        Update(int gameId, BoardSnapshot snapshot, long whiteMillis, long blackMillis, int score, byte result) {
+            this.gameId = gameId;
+            this.snapshot = snapshot;
+            this.whiteMillis = whiteMillis;
+            this.blackMillis = blackMillis;
+            this.score = score;
+            this.result = result;
+        }
+    }
+
+    // The latest state of one game; selector thread only.
+    private static final class Game {
+        final int id;
+        final List<Subscriber> subscribers = new ArrayList<>();
+        BoardSnapshot snapshot;
+        long whiteMillis = -1;
+        long blackMillis = -1;
+        int score = ChessGame.NO_SCORE;
+        byte result;
+        // Built on the first join or resync after a change.
+        byte[] snapshotFrame;
+        boolean hasClosedSubscribers;
+
+        Game(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Subscriber {
+        final SocketChannel channel;
+        final ByteBuffer input = ByteBuffer.allocate(4);
+        final ByteBuffer output;
+        final List<Game> games = new ArrayList<>();
+        SelectionKey key;
+        boolean dirty;
+        boolean resync;
+        int resyncIndex;
+        boolean closed;
+
+        Subscriber(SocketChannel channel, int bufferBytes) {
+            this.channel = channel;
+            this.output = ByteBuffer.allocate(bufferBytes);
+        }
+    }
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final int bufferBytes;
+    private final Thread thread;
+    private final Queue<Update> updates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    // Selector thread only.
+    private final Map<Integer, Game> games = new HashMap<>();
+    private final List<Subscriber> dirty = new ArrayList<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong framesQueued = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    // Binds to the loopback interface; port 0 picks a free one.
+    public BroadcastServer(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DEFAULT_BUFFER_BYTES);
+    }
+
+    public BroadcastServer(InetSocketAddress address, int bufferBytes) throws IOException {
+        if (bufferBytes < SNAPSHOT_BYTES) {
+            throw new IllegalArgumentException("Subscriber buffers must hold at least one snapshot");
+        }
+        this.bufferBytes = bufferBytes;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "broadcast-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    // Publishes a game's position. A position one ply after the previous
+    // one goes out as a MOVE delta, anything else (a new game, a reset) as
+    // a SNAPSHOT. Safe from any thread.
+    public void publish(int gameId, BoardSnapshot snapshot, long whiteMillis, long blackMillis, int score) {
+        post(new Update(gameId, snapshot, whiteMillis, blackMillis, score, (byte) 0));
+    }
+
+    public void publishResult(int gameId, String result) {
+        byte code = result.equals("1-0") ? (byte) 1 : result.equals("0-1") ? (byte) 2 : (byte) 3;
+        post(new Update(gameId, null, 0, 0, 0, code));
+    }
+
+    // Feeds one game's events to spectators, e.g.
+    // actor.addSubscriber(server.feed(1)). A batch of events becomes a
+    // batch of frames on the wire.
+    public GameActor.Subscriber feed(int gameId) {
+        return events -> {
+            for (GameEvent event : events) {
+                switch (event.getType()) {
+                    case MOVE_PLAYED:
+                    case GAME_RESET:
+                        publish(gameId, event.getSnapshot(), event.getWhiteMillis(), event.getBlackMillis(), event.getScore());
+                        break;
+                    case GAME_OVER:
+                        publishResult(gameId, event.getResult());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        };
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    // Frames copied into subscriber buffers.
+    public long getFramesQueued() {
+        return framesQueued.get();
+    }
+
+    // Deltas a slow subscriber missed; each such run ends in a resync.
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getResyncs() {
+        return resyncs.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void post(Update update) {
+        updates.add(update);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Subscriber subscriber = (Subscriber) key.attachment();
+                        if (key.isReadable()) {
+                            read(subscriber);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            markDirty(subscriber);
+                        }
+                    }
+                }
+                Update update;
+                while ((update = updates.poll()) != null) {
+                    apply(update);
+                }
+                for (Subscriber subscriber : dirty) {
+                    subscriber.dirty = false;
+                    flush(subscriber);
+                }
+                dirty.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Broadcast server stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Subscriber subscriber = new Subscriber(channel, bufferBytes);
+            subscriber.key = channel.register(selector, SelectionKey.OP_READ, subscriber);
+            subscriberCount.incrementAndGet();
+        }
+    }
+
+    // Each complete 4-byte id subscribes to that game.
+    private void read(Subscriber subscriber) {
+        try {
+            while (true) {
+                int read = subscriber.channel.read(subscriber.input);
+                if (read < 0) {
+                    disconnect(subscriber);
+                    return;
+                }
+                if (subscriber.input.hasRemaining()) {
+                    return;
+                }
+                subscriber.input.flip();
+                subscribe(subscriber, subscriber.input.getInt());
+                subscriber.input.clear();
+            }
+        } catch (IOException e) {
+            disconnect(subscriber);
+        }
+    }
+
+    private void subscribe(Subscriber subscriber, int gameId) {
+        Game game = games.computeIfAbsent(gameId, Game::new);
+        if (game.subscribers.contains(subscriber)) {
+            return;
+        }
+        game.subscribers.add(subscriber);
+        subscriber.games.add(game);
+        if (game.snapshot != null) {
+            enqueue(subscriber, snapshotFrame(game));
+        }
+        if (game.result != 0) {
+            enqueue(subscriber, resultFrame(game));
+        }
+    }
+
+    private void apply(Update update) {
+        Game game = games.computeIfAbsent(update.gameId, Game::new);
+        byte[] frame;
+        if (update.snapshot == null) {
+            game.result = update.result;
+            frame = resultFrame(game);
+        } else {
+            BoardSnapshot previous = game.snapshot;
+            boolean delta = previous != null && update.snapshot.getPly() == previous.getPly() + 1;
+            game.snapshot = update.snapshot;
+            game.whiteMillis = update.whiteMillis;
+            game.blackMillis = update.blackMillis;
+            game.score = update.score;
+            game.snapshotFrame = null;
+            if (!delta) {
+                game.result = 0;
+            }
+            frame = delta ? moveFrame(game) : snapshotFrame(game);
+        }
+        if (game.hasClosedSubscribers) {
+            game.subscribers.removeIf(subscriber -> subscriber.closed);
+            game.hasClosedSubscribers = false;
+        }
+        for (Subscriber subscriber : game.subscribers) {
+            enqueue(subscriber, frame);
+        }
+    }
+
+    private void enqueue(Subscriber subscriber, byte[] frame) {
+        if (subscriber.closed) {
+            return;
+        }
+        if (subscriber.resync) {
+            // Games already caught up on may have moved on again.
+            subscriber.resyncIndex = 0;
+            framesDropped.incrementAndGet();
+            return;
+        }
+        if (subscriber.output.remaining() < frame.length) {
+            // What is already buffered is still sent, so the stream stays
+            // whole; the snapshots that follow supersede it.
+            subscriber.resync = true;
+            framesDropped.incrementAndGet();
+            resyncs.incrementAndGet();
+            return;
+        }
+        subscriber.output.put(frame);
+        framesQueued.incrementAndGet();
+        markDirty(subscriber);
+    }
+
+    private void markDirty(Subscriber subscriber) {
+        if (!subscriber.dirty) {
+            subscriber.dirty = true;
+            dirty.add(subscriber);
+        }
+    }
+
+    private void flush(Subscriber subscriber) {
+        if (subscriber.closed) {
+            return;
+        }
+        try {
+            ByteBuffer output = subscriber.output;
+            while (true) {
+                output.flip();
+                subscriber.channel.write(output);
+                output.compact();
+                if (output.position() > 0 || !subscriber.resync) {
+                    break;
+                }
+                // Drained after falling behind: catch up with snapshots, as
+                // many games per round as the buffer holds.
+                List<Game> watched = subscriber.games;
+                while (subscriber.resyncIndex < watched.size() && output.remaining() >= SNAPSHOT_BYTES + RESULT_BYTES) {
+                    Game game = watched.get(subscriber.resyncIndex++);
+                    if (game.snapshot != null) {
+                        output.put(snapshotFrame(game));
+                        framesQueued.incrementAndGet();
+                    }
+                    if (game.result != 0) {
+                        output.put(resultFrame(game));
+                        framesQueued.incrementAndGet();
+                    }
+                }
+                if (subscriber.resyncIndex == watched.size()) {
+                    subscriber.resync = false;
+                    subscriber.resyncIndex = 0;
+                }
+            }
+            int interest = output.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (subscriber.key.interestOps() != interest) {
+                subscriber.key.interestOps(interest);
+            }
+        } catch (IOException e) {
+            disconnect(subscriber);
+        }
+    }
+
+    private void disconnect(Subscriber subscriber) {
+        if (subscriber.closed) {
+            return;
+        }
+        subscriber.closed = true;
+        for (Game game : subscriber.games) {
+            game.hasClosedSubscribers = true;
+        }
+        subscriber.key.cancel();
+        closeQuietly(subscriber.channel);
+        subscriberCount.decrementAndGet();
+    }
+
+    private static byte[] snapshotFrame(Game game) {
+        if (game.snapshotFrame != null) {
+            return game.snapshotFrame;
+        }
+        BoardSnapshot snapshot = game.snapshot;
+        ByteBuffer frame = ByteBuffer.allocate(SNAPSHOT_BYTES);
+        frame.put(SNAPSHOT).putInt(game.id).putShort((short) snapshot.getPly());
+        for (int square = 0; square < 64; square += 2) {
+            int first = snapshot.getPiece(square >> 3, square & 7);
+            int second = snapshot.getPiece((square + 1) >> 3, (square + 1) & 7);
+            frame.put((byte) (first << 4 | second));
+        }
+        frame.put((byte) snapshot.getSideToMove())
+                .put((byte) snapshot.getCastlingRights())
+                .put((byte) (snapshot.getEnPassantSquare() < 0 ? 255 : snapshot.getEnPassantSquare()))
+                .put((byte) Math.min(255, snapshot.getHalfmoveClock()))
+                .putShort((short) snapshot.getFullmoveNumber());
+        putClocksAndScore(frame, game);
+        game.snapshotFrame = frame.array();
+        return game.snapshotFrame;
+    }
+
+    private static byte[] moveFrame(Game game) {
+        ByteBuffer frame = ByteBuffer.allocate(MOVE_BYTES);
+        frame.put(MOVE).putInt(game.id).putShort((short) game.snapshot.getPly())
+                .putShort((short) SearchBoard.packUci(game.snapshot.getLastMove()));
+        putClocksAndScore(frame, game);
+        return frame.array();
+    }
+
+    private static byte[] resultFrame(Game game) {
+        return ByteBuffer.allocate(RESULT_BYTES).put(RESULT).putInt(game.id).put(game.result).array();
+    }
+
+    private static void putClocksAndScore(ByteBuffer frame, Game game) {
+        frame.putInt((int) Math.min(Integer.MAX_VALUE, game.whiteMillis))
+                .putInt((int) Math.min(Integer.MAX_VALUE, game.blackMillis))
+                .putShort(game.score == ChessGame.NO_SCORE ? Short.MIN_VALUE
+                        : (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, game.score)));
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already gone.
+        }
+    }
+}
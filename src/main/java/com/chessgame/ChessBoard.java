@@ -4,6 +4,7 @@ import javax.swing.*;
 
 public class ChessBoard {
     private Piece[][] board;
+    private int halfmoveClock = 0;
 
     public ChessBoard() {
         this.board = new Piece[8][8];
@@ -14,6 +15,11 @@ public class ChessBoard {
         return board;
     }
 
+    // Plies since the last capture or pawn move, for the fifty-move rule.
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
     public Piece getPiece(int row, int column) {
         return board[row][column];
     }
@@ -56,9 +62,20 @@ public class ChessBoard {
     }
 
     public void movePiece(Position start, Position end, boolean isEnPassantMove) {
+        movePiece(start, end, isEnPassantMove, ' ');
+    }
+
+    // promotion is one of 'q', 'r', 'b', 'n' for engine moves, or ' ' to ask the player.
+    // The move must be legal; ChessGame checks it first.
+    public void movePiece(Position start, Position end, boolean isEnPassantMove, char promotion) {
         Piece movingPiece = board[start.getRow()][start.getColumn()];
         if (movingPiece == null) return;
-        if (!isEnPassantMove && !movingPiece.isValidMove(end, board)) return;
+
+        if (movingPiece instanceof Pawn || board[end.getRow()][end.getColumn()] != null) {
+            halfmoveClock = 0;
+        } else {
+            halfmoveClock++;
+        }
 
         // Handle Castling
         if (movingPiece instanceof King && Math.abs(start.getColumn() - end.getColumn()) == 2) {
@@ -69,7 +86,11 @@ public class ChessBoard {
             // Handle pawn promotion
             if ((movingPiece.getColor() == PieceColor.WHITE && end.getRow() == 0) ||
                 (movingPiece.getColor() == PieceColor.BLACK && end.getRow() == 7)) {
-                promotePawn((Pawn) movingPiece, end);
+                if (promotion == ' ') {
+                    promotePawn((Pawn) movingPiece, end);
+                } else {
+                    board[end.getRow()][end.getColumn()] = createPromotedPiece(promotion, movingPiece.getColor(), end);
+                }
                 board[start.getRow()][start.getColumn()] = null;
                 return;
             }
@@ -92,6 +113,28 @@ public class ChessBoard {
         }
     }
 
+    // Material the moving side wins (positive) or loses (negative), in
+    // centipawns, if the piece on start captures on end and both sides then
+    // trade off on that square. Non-captures score what the opponent can win
+    // back from the moved piece.
+    public int staticExchangeEvaluation(Position start, Position end) {
+        Piece moving = getPiece(start.getRow(), start.getColumn());
+        if (moving == null) {
+            return 0;
+        }
+        SearchBoard searchBoard = SearchBoard.fromChessBoard(this, moving.getColor() == PieceColor.WHITE);
+        int[] moves = new int[256];
+        int count = searchBoard.generateMoves(moves, false);
+        int from = start.getRow() * 8 + start.getColumn();
+        int to = end.getRow() * 8 + end.getColumn();
+        for (int i = 0; i < count; i++) {
+            if (SearchBoard.from(moves[i]) == from && SearchBoard.to(moves[i]) == to) {
+                return searchBoard.see(moves[i]);
+            }
+        }
+        return 0;
+    }
+
     private void handleCastling(King king, Position start, Position end) {
         int row = start.getRow();
         int col = start.getColumn();
@@ -108,6 +151,19 @@ public class ChessBoard {
         }
     }
 
+    private Piece createPromotedPiece(char promotion, PieceColor color, Position position) {
+        switch (Character.toLowerCase(promotion)) {
+            case 'r':
+                return new Rook(color, position);
+            case 'b':
+                return new Bishop(color, position);
+            case 'n':
+                return new Knight(color, position);
+            default:
+                return new Queen(color, position);
+        }
+    }
+
     private void promotePawn(Pawn pawn, Position position) {
         String[] options = {"Queen", "Rook", "Bishop", "Knight"};
         String selectedOption = (String) JOptionPane.showInputDialog(null,
@@ -1,102 +1,208 @@
 package com.chessgame;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
-import java.io.BufferedReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 
 public class ChessGame {
     private ChessBoard board;
+    // Follows board move for move. Moves are accepted only if its generator,
+    // the one the GUI highlights from, has them.
+    private SearchBoard rules = new SearchBoard();
     private boolean whiteTurn = true;
     private final List<String> moveHistory = new ArrayList<>();
-    private Process stockfishProcess;
-    private BufferedReader stockfishInput;
-    private PrintWriter stockfishOutput;
+    private UciEngine engine;
     private boolean isStockfishInitialized = false;
+    // The engine starts in the background so that a new game, and the first
+    // frame showing it, does not wait for the binary to be extracted and the
+    // handshake to finish. Null once the engine has been taken over.
+    private CompletableFuture<UciEngine> engineStartup;
+    private static final int INITIAL_SKILL_LEVEL = 10;
+    private static final Executor ENGINE_STARTER = runnable -> {
+        Thread thread = new Thread(runnable, "engine-startup");
+        thread.setDaemon(true);
+        thread.start();
+    };
+    private static final int MOVE_TIME_MILLIS = 1000;
+    // Every wait on the engine has a deadline. A move may take this much
+    // longer than the engine was asked to think, an acknowledgement this
+    // long in total; after a miss the engine gets STOP_GRACE_MILLIS to
+    // answer "stop" before it is killed and the move comes from a short
+    // in-process search instead.
+    private static final long MOVE_DEADLINE_SLACK_MILLIS = 2000;
+    private static final long READY_TIMEOUT_MILLIS = 5000;
+    private static final long STOP_GRACE_MILLIS = 500;
+    private static final long FALLBACK_SEARCH_MILLIS = 200;
+    private boolean engineNeedsRestart = false;
+    // Restored on a restarted engine; -1 until a level is set.
+    private int skillLevel = -1;
+    private Search fallbackSearch;
+    // The engine's verdict on its last move, for spectators.
+    public static final int NO_SCORE = Integer.MIN_VALUE;
+    private final InfoLineParser infoParser = new InfoLineParser();
+    private int searchScore = NO_SCORE;
+    private int lastEngineScore = NO_SCORE;
+    private boolean ponderEnabled = false;
+    private boolean pondering = false;
+    private boolean ponderHit = false;
+    private String ponderMove;
+    private int ponderHits = 0;
+    private int ponderMisses = 0;
+    private long latencySavedMillis = 0;
+    private GameClock clock;
+    private PolyglotBook openingBook;
+    private int maxBookDepth = 16;
+    // Must stay a power of two larger than the 100 plies the fifty-move rule allows.
+    private static final int POSITION_HISTORY_SIZE = 128;
+    private final long[] positionKeys = new long[POSITION_HISTORY_SIZE];
+    private int positionCount = 0;
+    private boolean insufficientMaterial = false;
+    // Set while a saved game is replayed: moves skip the per-move
+    // snapshot, clock, engine and journal updates, done once at the end.
+    private boolean replaying = false;
+    // Where games are journaled, or null; the journal itself is opened with
+    // the first move of each game.
+    private File journalDirectory;
+    private GameJournal journal;
+    // Republished after every committed move for readers on other threads.
+    private volatile BoardSnapshot snapshot;
+    private final Tablebases tablebases = new Tablebases(
+            System.getProperty("chess.tablebases") != null ? new File(System.getProperty("chess.tablebases")) : null);
 
     public ChessGame() {
         this.board = new ChessBoard();
+        recordPosition();
+        publishSnapshot();
         initializeStockfish();
     }
 
     private void initializeStockfish() {
-        try {
-            String resourcePath = "/stockfish/stockfish-macos";
-            File tempStockfish = File.createTempFile("stockfish", null);
-            tempStockfish.deleteOnExit();
-    
-            try (
-                InputStream is = getClass().getResourceAsStream(resourcePath);
-                FileOutputStream os = new FileOutputStream(tempStockfish)
-            ) {
-                if (is == null) {
-                    throw new FileNotFoundException("Could not find Stockfish binary in resources: " + resourcePath);
-                }
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    os.write(buffer, 0, bytesRead);
+        skillLevel = INITIAL_SKILL_LEVEL;
+        engineStartup = CompletableFuture.supplyAsync(() -> {
+            UciEngine started = null;
+            try {
+                started = new UciEngine(UciEngine.extractStockfish());
+                started.setOption("Skill Level", INITIAL_SKILL_LEVEL);
+                started.setOption("UCI_LimitStrength", true);
+                started.waitReady(UciEngine.deadlineAfter(READY_TIMEOUT_MILLIS));
+                return started;
+            } catch (Exception e) {
+                System.err.println("Failed to initialize Stockfish:");
+                e.printStackTrace();
+                if (started != null) {
+                    started.kill();
                 }
+                return null;
             }
-    
-            if (!tempStockfish.setExecutable(true)) {
-                throw new IOException("Failed to make Stockfish executable");
-            }
-    
-            ProcessBuilder pb = new ProcessBuilder(tempStockfish.getAbsolutePath());
-            stockfishProcess = pb.start();
-            stockfishInput = new BufferedReader(new InputStreamReader(stockfishProcess.getInputStream()));
-            stockfishOutput = new PrintWriter(new OutputStreamWriter(stockfishProcess.getOutputStream()), true);
-    
-            stockfishOutput.println("uci");
-            waitForLine("uciok");
-    
-            stockfishOutput.println("isready");
-            waitForLine("readyok");
-    
-            isStockfishInitialized = true;
-            setStockfishSkillLevel(10);
-    
-        } catch (Exception e) {
-            System.err.println("Failed to initialize Stockfish:");
-            e.printStackTrace();
-            stockfishOutput = null;
-            stockfishInput = null;
-            stockfishProcess = null;
-            isStockfishInitialized = false;
-        }
-    }
-    
-    private void waitForLine(String expected) throws IOException {
-        String line;
-        while ((line = stockfishInput.readLine()) != null) {
-            if (line.trim().equals(expected)) break;
+        }, ENGINE_STARTER);
+    }
+
+    // Takes over the engine started in the background and tells it what
+    // happened while it was starting. Without wait, returns false if it is
+    // still starting.
+    private boolean adoptEngine(boolean wait) {
+        if (engineStartup == null) {
+            return true;
         }
+        if (!wait && !engineStartup.isDone()) {
+            return false;
+        }
+        engine = engineStartup.join();
+        engineStartup = null;
+        isStockfishInitialized = engine != null;
+        if (engine != null) {
+            if (ponderEnabled) {
+                engine.setOption("Ponder", true);
+            }
+            if (!moveHistory.isEmpty()) {
+                engine.send("position startpos moves " + String.join(" ", moveHistory));
+            }
+        }
+        return true;
+    }
+
+    // Commands to an engine that is starting or being replaced are dropped;
+    // taking it over or restarting it sends the current state.
+    private void sendToEngine(String command) {
+        if (adoptEngine(false) && engine != null && !engineNeedsRestart) {
+            engine.send(command);
+        }
+    }
+
+    // Waits for the engine if it is still starting and restarts it if it had
+    // to be killed. Returns whether an engine is there to ask.
+    private boolean engineAvailable() {
+        adoptEngine(true);
+        if (engineNeedsRestart) {
+            restartEngine();
+        }
+        return engine != null && !engineNeedsRestart;
+    }
+
+    // Starts a fresh engine process and restores what the old one had been
+    // told: options and the current position.
+    private void restartEngine() {
+        Metrics.ENGINE_RESTARTS.incrementAndGet();
+        if (engine != null) {
+            engine.kill();
+            engine = null;
+        }
+        try {
+            engine = new UciEngine(UciEngine.extractStockfish());
+        } catch (IOException e) {
+            System.err.println("Failed to restart Stockfish: " + e.getMessage());
+            return;
+        }
+        engineNeedsRestart = false;
+        if (skillLevel >= 0) {
+            engine.setOption("Skill Level", skillLevel);
+            engine.setOption("UCI_LimitStrength", true);
+        }
+        if (ponderEnabled) {
+            engine.setOption("Ponder", true);
+        }
+        engine.send("ucinewgame");
+        engine.send(moveHistory.isEmpty() ? "position startpos" : "position startpos moves " + String.join(" ", moveHistory));
+    }
+
+    // The engine is hung or gone: kill it now and restart it on next use,
+    // so the current caller is not held up by the restart.
+    private void abandonEngine(String reason) {
+        System.err.println("Stockfish " + reason + "; restarting it");
+        if (engine != null) {
+            engine.kill();
+        }
+        engineNeedsRestart = true;
+        pondering = false;
+        ponderHit = false;
+        ponderMove = null;
     }
 
     public void setStockfishSkillLevel(int level) {
-        if (stockfishOutput != null && isStockfishInitialized) {
+        adoptEngine(true);
+        if (engine != null && isStockfishInitialized) {
             if (level < 0 || level > 20) {
                 System.err.println("Invalid Stockfish skill level: " + level + ". Must be between 0 and 20.");
                 return;
             }
-            stockfishOutput.println("setoption name Skill Level value " + level);
-            stockfishOutput.println("setoption name UCI_LimitStrength value true");
-            stockfishOutput.println("isready");
+            skillLevel = level;
+            stopPondering();
+            if (!engineAvailable()) {
+                return;
+            }
+            sendToEngine("setoption name Skill Level value " + level);
+            sendToEngine("setoption name UCI_LimitStrength value true");
             try {
-                String line;
-                while ((line = stockfishInput.readLine()) != null) {
-                    if (line.equals("readyok")) break;
-                }
-            } catch (Exception e) {
-                System.err.println("Error confirming Stockfish readiness after setting skill level: " + e.getMessage());
+                engine.waitReady(UciEngine.deadlineAfter(READY_TIMEOUT_MILLIS));
+            } catch (UciEngine.DeadlineExceededException e) {
+                Metrics.ENGINE_DEADLINE_MISSES.incrementAndGet();
+                abandonEngine("did not acknowledge the skill level in time");
+            } catch (IOException e) {
+                abandonEngine("failed after setting the skill level: " + e.getMessage());
             }
         } else {
             System.err.println("Stockfish is not initialized. Cannot set skill level.");
@@ -104,30 +210,120 @@ public class ChessGame {
     }
 
     public void closeStockfish() {
-        if (stockfishOutput != null) {
-            stockfishOutput.println("quit");
+        if (engineStartup != null) {
+            // Not taken over yet: close it once it is up.
+            engineStartup.thenAccept(started -> {
+                if (started != null) {
+                    started.close();
+                }
+            });
+            engineStartup = null;
+            return;
         }
-        if (stockfishProcess != null) {
-            try {
-                stockfishProcess.destroy();
-            } catch (Exception e) {
-                System.err.println("Error closing Stockfish: " + e.getMessage());
+        if (engine != null && !engineNeedsRestart) {
+            engine.close();
+        } else if (engine != null) {
+            engine.kill();
+        }
+    }
+
+    public void loadOpeningBook(File bookFile) {
+        try {
+            openingBook = new PolyglotBook(bookFile);
+        } catch (IOException e) {
+            System.err.println("Failed to load opening book " + bookFile + ": " + e.getMessage());
+            openingBook = null;
+        }
+    }
+
+    public boolean hasOpeningBook() {
+        return openingBook != null;
+    }
+
+    public int getMaxBookDepth() {
+        return maxBookDepth;
+    }
+
+    public void setMaxBookDepth(int plies) {
+        if (plies < 0) {
+            System.err.println("Invalid opening book depth: " + plies + ". Must not be negative.");
+            return;
+        }
+        this.maxBookDepth = plies;
+    }
+
+    public String getBookMove() {
+        if (openingBook == null || moveHistory.size() >= maxBookDepth) {
+            return null;
+        }
+
+        String bookMove = openingBook.findMove(Zobrist.computeKey(board, whiteTurn));
+        if (bookMove == null) {
+            return null;
+        }
+
+        // Polyglot stores castling as the king capturing its own rook.
+        Position start = new Position(8 - (bookMove.charAt(1) - '0'), bookMove.charAt(0) - 'a');
+        if (board.getPiece(start.getRow(), start.getColumn()) instanceof King) {
+            if (bookMove.startsWith("e1h1") || bookMove.startsWith("e8h8")) {
+                return bookMove.substring(0, 2) + "g" + bookMove.charAt(3);
+            } else if (bookMove.startsWith("e1a1") || bookMove.startsWith("e8a8")) {
+                return bookMove.substring(0, 2) + "c" + bookMove.charAt(3);
             }
         }
+        return bookMove;
+    }
+
+    // Perfect move from the endgame tablebases for KQK, KRK, KPK and KBNK, or
+    // null if the position is not covered or its table is still being built.
+    public String getTablebaseMove() {
+        return tablebases.bestMove(board, whiteTurn);
+    }
+
+    public String getTablebaseResult() {
+        return tablebases.describe(board, whiteTurn);
     }
 
+    // The live board, for the thread that plays the moves. Other threads
+    // should read getSnapshot() instead.
     public ChessBoard getBoard() {
         return this.board;
     }
 
+    // The position after the last committed move. Never torn, and safe to
+    // read from any thread without locking.
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void publishSnapshot() {
+        snapshot = BoardSnapshot.of(board, whiteTurn, moveHistory);
+    }
+
     public void resetGame() {
+        if (journal != null) {
+            // A game given up half way is not offered for restore.
+            journal.appendResult(null);
+            journal.close();
+            journal = null;
+        }
+        stopPondering();
+        ponderMove = null;
         this.board = new ChessBoard();
+        this.rules = new SearchBoard();
         this.whiteTurn = true;
         moveHistory.clear();
+        positionCount = 0;
+        recordPosition();
+        publishSnapshot();
+        if (clock != null) {
+            clock.reset();
+            clock.start(PieceColor.WHITE);
+        }
 
-        if (stockfishOutput != null) {
-            stockfishOutput.println("ucinewgame");
-            stockfishOutput.println("position startpos");
+        if (engine != null || engineStartup != null) {
+            sendToEngine("ucinewgame");
+            sendToEngine("position startpos");
         } else {
             System.err.println("Stockfish output is not initialized. Cannot reset Stockfish.");
         }
@@ -179,28 +375,73 @@ public class ChessGame {
     }
 
     public boolean makeMove(Position start, Position end) {
+        return makeMove(start, end, ' ');
+    }
+
+    public boolean makeMove(Position start, Position end, char promotion) {
+        MoveAttemptEvent event = new MoveAttemptEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        boolean accepted = false;
+        try {
+            accepted = applyMove(start, end, promotion);
+            return accepted;
+        } finally {
+            Metrics.MOVE_VALIDATION.record(System.nanoTime() - startNanos);
+            if (event.shouldCommit()) {
+                event.from = start.toChessNotation();
+                event.to = end.toChessNotation();
+                event.accepted = accepted;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean applyMove(Position start, Position end, char promotion) {
         Piece movingPiece = board.getPiece(start.getRow(), start.getColumn());
         if (movingPiece == null || movingPiece.getColor() != (whiteTurn ? PieceColor.WHITE : PieceColor.BLACK)) {
             return false;
         }
 
-        boolean isEnPassantMove = isEnPassantMove(start, end, movingPiece);
+        String moveNotation = generateMoveNotation(start, end);
+        if (movingPiece instanceof Pawn && (end.getRow() == 0 || end.getRow() == 7)) {
+            // A promotion without a piece becomes a queen.
+            promotion = promotion == ' ' ? 'q' : Character.toLowerCase(promotion);
+            moveNotation += promotion;
+        }
+        int legalMove = rules.parseUciMove(moveNotation);
 
-        if (movingPiece.isValidMove(end, board.getBoard()) || isEnPassantMove) {
-            if (isEnPassantMove) {
+        if (legalMove != 0) {
+            if ((SearchBoard.flags(legalMove) & SearchBoard.FLAG_EN_PASSANT) != 0) {
                 executeEnPassant(start, end);
             } else {
-                board.movePiece(start, end, false);
+                board.movePiece(start, end, false, promotion);
             }
+            rules.makeMove(legalMove);
 
             resetJustMovedTwoSquaresForPawns(movingPiece);
 
-            String moveNotation = generateMoveNotation(start, end);
             moveHistory.add(moveNotation);
             whiteTurn = !whiteTurn;
+            recordPosition();
+            if (replaying) {
+                return true;
+            }
+            publishSnapshot();
+            if (clock != null) {
+                clock.press(movingPiece.getColor());
+            }
+            journalMove(moveNotation, movingPiece.getColor());
 
-            if (stockfishOutput != null) {
-                stockfishOutput.println("position startpos moves " + String.join(" ", moveHistory));
+            if (pondering && !ponderHit && moveNotation.equals(ponderMove)) {
+                // The engine is already searching this exact position.
+                ponderHit = true;
+            } else if (pondering) {
+                // Stopping the ponder search also sends the real position.
+                ponderMisses++;
+                stopPondering();
+            } else if (engine != null) {
+                sendToEngine("position startpos moves " + String.join(" ", moveHistory));
             }
             return true;
         }
@@ -225,6 +466,11 @@ public class ChessGame {
         board.setPiece(capturedPawnRow, capturedPawnCol, null);
     }
 
+    // Moves played so far in coordinate notation, e.g. "e2e4" or "e7e8q".
+    public List<String> getMoveHistory() {
+        return Collections.unmodifiableList(new ArrayList<>(moveHistory));
+    }
+
     public String getLastMove() {
         if (!moveHistory.isEmpty()) {
             return moveHistory.get(moveHistory.size() - 1);
@@ -240,38 +486,427 @@ public class ChessGame {
         return "" + startFile + startRank + endFile + endRank;
     }
 
+    // Always returns a move within the move deadline while any legal move
+    // exists: from the engine if it answers in time, otherwise from a short
+    // in-process search.
     public String getStockfishMove() {
-        if (!isStockfishInitialized) {
-            System.err.println("Stockfish is not initialized. Cannot get Stockfish move.");
-            return null;
+        Metrics.ENGINE_REQUESTS.incrementAndGet();
+        long startNanos = System.nanoTime();
+        lastEngineScore = NO_SCORE;
+        searchScore = NO_SCORE;
+        try {
+            if (!engineAvailable() || !isStockfishInitialized) {
+                return fallbackMove();
+            }
+            long deadline = UciEngine.deadlineAfter(moveDeadlineMillis());
+            if (pondering && ponderHit) {
+                pondering = false;
+                ponderHit = false;
+                ponderHits++;
+                long expectedMillis = expectedThinkMillis();
+                long start = System.nanoTime();
+                sendToEngine("ponderhit");
+                String move = readEngineMove(deadline);
+                latencySavedMillis += Math.max(0, expectedMillis - (System.nanoTime() - start) / 1_000_000);
+                return move;
+            }
+            stopPondering();
+            if (!engineAvailable()) {
+                return fallbackMove();
+            }
+            sendToEngine("go " + searchLimits());
+            return readEngineMove(deadline);
+        } finally {
+            Metrics.ENGINE_REQUEST.record(System.nanoTime() - startNanos);
         }
+    }
 
+    // The engine's best move, or the fallback if it misses the deadline,
+    // ignores "stop" or exits.
+    private String readEngineMove(long deadline) {
         try {
-            stockfishOutput.println("go movetime 1000");
-            String line;
-            while ((line = stockfishInput.readLine()) != null) {
-                if (line.startsWith("bestmove")) {
-                    return line.split(" ")[1];
+            String move = readBestMove(deadline);
+            if (move != null) {
+                return move;
+            }
+            abandonEngine("exited during a search");
+        } catch (UciEngine.DeadlineExceededException e) {
+            Metrics.ENGINE_DEADLINE_MISSES.incrementAndGet();
+            sendToEngine("stop");
+            try {
+                String move = readBestMove(UciEngine.deadlineAfter(STOP_GRACE_MILLIS));
+                if (move != null) {
+                    return move;
                 }
+                abandonEngine("exited after missing its deadline");
+            } catch (IOException stopFailure) {
+                abandonEngine("ignored stop after missing its deadline");
+            }
+        } catch (IOException e) {
+            abandonEngine("failed during a search: " + e.getMessage());
+        }
+        return fallbackMove();
+    }
+
+    // A short search of our own on the current position.
+    private String fallbackMove() {
+        Metrics.ENGINE_FALLBACK_MOVES.incrementAndGet();
+        if (fallbackSearch == null) {
+            fallbackSearch = new Search(new Evaluator());
+        }
+        Search.Result result = fallbackSearch.search(getSnapshot().toSearchBoard(), Search.MAX_PLY, FALLBACK_SEARCH_MILLIS);
+        int score = result.getScore();
+        setLastEngineScore(Math.abs(score) > Search.MATE - Search.MAX_PLY
+                ? Integer.signum(score) * (GameAnalyzer.MATE_SCORE - (Search.MATE - Math.abs(score) + 1) / 2)
+                : score);
+        return result.getMove() == 0 ? null : SearchBoard.moveToUci(result.getMove());
+    }
+
+    // Reads up to the "bestmove <move> [ponder <reply>]" line, remembering the
+    // expected reply so the engine can ponder on it. Returns null if the
+    // engine exits first.
+    private String readBestMove(long deadline) throws IOException {
+        String line;
+        while ((line = engine.readLine(deadline)) != null) {
+            if (line.startsWith("bestmove")) {
+                String[] tokens = line.split(" ");
+                ponderMove = tokens.length >= 4 && tokens[2].equals("ponder") ? tokens[3] : null;
+                setLastEngineScore(searchScore);
+                return tokens[1];
+            }
+            if (infoParser.parse(line) && infoParser.getMultipv() == 1 && !infoParser.isBound()) {
+                searchScore = infoParser.getScore();
             }
-        } catch (Exception e) {
-            System.err.println("Error getting Stockfish move: " + e.getMessage());
         }
         return null;
     }
 
-    public void playStockfishMove() {
-        if (!isStockfishInitialized) {
-            System.err.println("Stockfish is not initialized. Cannot play Stockfish move.");
+    // Takes a side-to-move score, stores it from White's point of view.
+    private void setLastEngineScore(int score) {
+        lastEngineScore = score == NO_SCORE || whiteTurn ? score : -score;
+    }
+
+    // White's advantage in centipawns (GameAnalyzer's mate scale) according
+    // to the search that chose the last engine move, or NO_SCORE.
+    public int getLastEngineScore() {
+        return lastEngineScore;
+    }
+
+    // The longest a move may take: the engine's own budget plus slack.
+    private long moveDeadlineMillis() {
+        if (clock == null) {
+            return MOVE_TIME_MILLIS + MOVE_DEADLINE_SLACK_MILLIS;
+        }
+        return Math.min(clock.getRemainingMillis(getCurrentPlayerColor()), 3 * expectedThinkMillis()) + MOVE_DEADLINE_SLACK_MILLIS;
+    }
+
+    // With a clock the engine gets both sides' remaining time and manages its
+    // own budget; untimed games keep the fixed move time. UCI has no notion of
+    // delay, so it is passed on as extra increment.
+    private String searchLimits() {
+        if (clock == null) {
+            return "movetime " + MOVE_TIME_MILLIS;
+        }
+        long increment = clock.getIncrementMillis() + clock.getDelayMillis();
+        return "wtime " + clock.getRemainingMillis(PieceColor.WHITE)
+                + " btime " + clock.getRemainingMillis(PieceColor.BLACK)
+                + " winc " + increment + " binc " + increment;
+    }
+
+    // Rough share of the clock an engine spends on one move, used to estimate
+    // what a ponder hit saved.
+    private long expectedThinkMillis() {
+        if (clock == null) {
+            return MOVE_TIME_MILLIS;
+        }
+        return clock.getRemainingMillis(getCurrentPlayerColor()) / 30 + clock.getIncrementMillis() + clock.getDelayMillis();
+    }
+
+    // A null clock makes the game untimed.
+    public void setTimeControl(GameClock clock) {
+        this.clock = clock;
+        if (clock != null) {
+            clock.reset();
+            clock.start(getCurrentPlayerColor());
+        }
+        if (journal != null) {
+            journalTimeControl();
+        }
+    }
+
+    // Journals every game to directory from now on, first restoring the
+    // last game there if it was left unfinished.
+    public void enableJournal(File directory) {
+        journalDirectory = directory;
+        GameJournal.Saved saved = GameJournal.findUnfinished(directory);
+        if (saved == null) {
+            return;
+        }
+        int restored = replay(saved.getMoves());
+        if (saved.getTimeControl() != null) {
+            long[] control = saved.getTimeControl();
+            clock = new GameClock(control[0], control[1], control[2]);
+            clock.setRemainingMillis(saved.getRemainingMillis(PieceColor.WHITE), saved.getRemainingMillis(PieceColor.BLACK));
+            clock.start(getCurrentPlayerColor());
+        }
+        if (restored < saved.getMoves().size()) {
+            // Not this game's moves after all. The legal part carries on in
+            // a new journal and the file is set aside, so it is not offered
+            // again at every start.
+            System.err.println("Game journal " + saved.getFile() + " stops at an illegal move after " + restored + " plies");
+            GameJournal.reject(saved);
+            journalReplayedMoves();
             return;
         }
+        try {
+            journal = GameJournal.resume(saved);
+        } catch (IOException e) {
+            System.err.println("Cannot continue game journal " + saved.getFile() + ": " + e.getMessage());
+            journalReplayedMoves();
+        }
+    }
 
-        String stockfishMove = getStockfishMove();
-        if (stockfishMove != null && stockfishMove.length() == 4) {
+    // Starts a new journal holding the moves played so far. Only each
+    // side's last move carries its clock; earlier times were not kept.
+    private void journalReplayedMoves() {
+        if (moveHistory.isEmpty() || !openJournal()) {
+            // The first move opens one as usual.
+            return;
+        }
+        for (int ply = 0; ply < moveHistory.size(); ply++) {
+            PieceColor mover = ply % 2 == 0 ? PieceColor.WHITE : PieceColor.BLACK;
+            boolean last = ply >= moveHistory.size() - 2;
+            journal.appendMove(moveHistory.get(ply), clock != null && last ? clock.getRemainingMillis(mover) : -1);
+        }
+    }
+
+    // Plays moves without the per-move side effects and syncs the snapshot
+    // and engine once. Returns how many were legal.
+    private int replay(List<String> moves) {
+        int played = 0;
+        replaying = true;
+        try {
+            for (String move : moves) {
+                Position start = new Position(8 - (move.charAt(1) - '0'), move.charAt(0) - 'a');
+                Position end = new Position(8 - (move.charAt(3) - '0'), move.charAt(2) - 'a');
+                if (!applyMove(start, end, move.length() == 5 ? move.charAt(4) : ' ')) {
+                    break;
+                }
+                played++;
+            }
+        } finally {
+            replaying = false;
+        }
+        publishSnapshot();
+        sendToEngine("position startpos moves " + String.join(" ", moveHistory));
+        return played;
+    }
+
+    // The game ended; its journal is complete.
+    public void recordResult(String result) {
+        if (journal != null) {
+            journal.appendResult(result);
+            journal.close();
+            journal = null;
+        }
+    }
+
+    // Commits the journal without ending the game, so it is restored on
+    // the next start.
+    public void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void journalMove(String move, PieceColor mover) {
+        if (journalDirectory == null) {
+            return;
+        }
+        if (journal == null) {
+            if (moveHistory.size() != 1 || !openJournal()) {
+                // Journaling was off or failed earlier in this game.
+                return;
+            }
+        }
+        journal.appendMove(move, clock == null ? -1 : clock.getRemainingMillis(mover));
+    }
+
+    private boolean openJournal() {
+        try {
+            journal = GameJournal.create(journalDirectory);
+        } catch (IOException e) {
+            System.err.println("Cannot start game journal: " + e.getMessage());
+            journalDirectory = null;
+            return false;
+        }
+        journalTimeControl();
+        return true;
+    }
+
+    private void journalTimeControl() {
+        if (clock != null) {
+            journal.appendTimeControl(clock.getBaseMillis(), clock.getIncrementMillis(), clock.getDelayMillis());
+        }
+    }
+
+    public GameClock getClock() {
+        return clock;
+    }
+
+    public void setPonderEnabled(boolean enabled) {
+        if (!enabled) {
+            stopPondering();
+        }
+        this.ponderEnabled = enabled;
+        if (engine != null && isStockfishInitialized) {
+            sendToEngine("setoption name Ponder value " + enabled);
+        }
+    }
+
+    public boolean isPonderEnabled() {
+        return ponderEnabled;
+    }
+
+    // Searches the reply we expect from the opponent while they think. The
+    // search keeps going until ponderhit (expected move played) or stop.
+    private void startPondering() {
+        if (!ponderEnabled || !isStockfishInitialized || ponderMove == null || pondering) {
+            return;
+        }
+        sendToEngine("position startpos moves " + String.join(" ", moveHistory) + " " + ponderMove);
+        sendToEngine("go ponder " + searchLimits());
+        pondering = true;
+        ponderHit = false;
+    }
+
+    private void stopPondering() {
+        if (!pondering) {
+            return;
+        }
+        pondering = false;
+        ponderHit = false;
+        sendToEngine("stop");
+        try {
+            if (readBestMove(UciEngine.deadlineAfter(STOP_GRACE_MILLIS)) == null) {
+                abandonEngine("exited while pondering");
+            }
+        } catch (UciEngine.DeadlineExceededException e) {
+            Metrics.ENGINE_DEADLINE_MISSES.incrementAndGet();
+            abandonEngine("ignored stop while pondering");
+        } catch (IOException e) {
+            abandonEngine("failed while pondering: " + e.getMessage());
+        }
+        // That search was for a position that did not happen.
+        searchScore = NO_SCORE;
+        lastEngineScore = NO_SCORE;
+        ponderMove = null;
+        sendToEngine("position startpos moves " + String.join(" ", moveHistory));
+    }
+
+    public int getPonderHits() {
+        return ponderHits;
+    }
+
+    public int getPonderMisses() {
+        return ponderMisses;
+    }
+
+    public double getPonderHitRate() {
+        int total = ponderHits + ponderMisses;
+        return total == 0 ? 0.0 : (double) ponderHits / total;
+    }
+
+    public long getAverageLatencySavedMillis() {
+        return ponderHits == 0 ? 0 : latencySavedMillis / ponderHits;
+    }
+
+    public void playStockfishMove() {
+        String stockfishMove = getBookMove();
+        if (stockfishMove == null) {
+            stockfishMove = getTablebaseMove();
+        }
+        if (stockfishMove == null) {
+            stockfishMove = getStockfishMove();
+        } else {
+            stopPondering();
+            ponderMove = null;
+        }
+        if (stockfishMove != null && (stockfishMove.length() == 4 || stockfishMove.length() == 5)) {
             Position start = new Position(8 - (stockfishMove.charAt(1) - '0'), stockfishMove.charAt(0) - 'a');
             Position end = new Position(8 - (stockfishMove.charAt(3) - '0'), stockfishMove.charAt(2) - 'a');
-            makeMove(start, end);
+            if (makeMove(start, end, stockfishMove.length() == 5 ? stockfishMove.charAt(4) : ' ')) {
+                startPondering();
+            }
+        }
+    }
+
+    private void recordPosition() {
+        positionKeys[positionCount & (POSITION_HISTORY_SIZE - 1)] = Zobrist.computeKey(board, whiteTurn);
+        positionCount++;
+        // Material only changes on captures and promotions, both of which reset the clock.
+        if (board.getHalfmoveClock() == 0) {
+            insufficientMaterial = hasInsufficientMaterial();
+        }
+    }
+
+    // Positions before the last capture or pawn move can never repeat, so only
+    // every other entry back to that point needs comparing.
+    public boolean isThreefoldRepetition() {
+        int current = positionCount - 1;
+        long key = positionKeys[current & (POSITION_HISTORY_SIZE - 1)];
+        int limit = Math.min(board.getHalfmoveClock(), Math.min(current, POSITION_HISTORY_SIZE - 1));
+        int repetitions = 0;
+        for (int back = 2; back <= limit; back += 2) {
+            if (positionKeys[(current - back) & (POSITION_HISTORY_SIZE - 1)] == key && ++repetitions == 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isFiftyMoveRule() {
+        return board.getHalfmoveClock() >= 100;
+    }
+
+    public boolean isInsufficientMaterial() {
+        return insufficientMaterial;
+    }
+
+    public String getDrawReason() {
+        if (isThreefoldRepetition()) {
+            return "threefold repetition";
+        } else if (isFiftyMoveRule()) {
+            return "the fifty-move rule";
+        } else if (isInsufficientMaterial()) {
+            return "insufficient material";
+        }
+        return null;
+    }
+
+    private boolean hasInsufficientMaterial() {
+        int knights = 0;
+        int bishops = 0;
+        int bishopSquareColors = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board.getPiece(row, col);
+                if (piece == null || piece instanceof King) {
+                    continue;
+                }
+                if (piece instanceof Knight) {
+                    knights++;
+                } else if (piece instanceof Bishop) {
+                    bishops++;
+                    bishopSquareColors |= 1 << ((row + col) % 2);
+                } else {
+                    return false;
+                }
+            }
         }
+        // K vs K, a single minor piece, or bishops that all stand on one square color.
+        return knights + bishops <= 1 || (knights == 0 && bishopSquareColors != 3);
     }
 
     public boolean isInCheck(PieceColor kingColor) {
@@ -302,6 +937,25 @@ public class ChessGame {
     }
 
     public boolean isCheckmate(PieceColor kingColor) {
+        GameOverCheckEvent event = new GameOverCheckEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        boolean result = false;
+        try {
+            result = checkmate(kingColor);
+            return result;
+        } finally {
+            Metrics.GAME_STATE_CHECK.record(System.nanoTime() - startNanos);
+            if (event.shouldCommit()) {
+                event.check = "checkmate";
+                event.color = kingColor.name();
+                event.result = result;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean checkmate(PieceColor kingColor) {
         if (!isInCheck(kingColor)) {
             return false;
         }
@@ -345,6 +999,18 @@ public class ChessGame {
     }
 
     public List<Position> getLegalMovesForPieceAt(Position position) {
+        LegalMovesEvent event = new LegalMovesEvent();
+        event.begin();
+        List<Position> legalMoves = computeLegalMovesForPieceAt(position);
+        if (event.shouldCommit()) {
+            event.square = position.toChessNotation();
+            event.moveCount = legalMoves.size();
+            event.commit();
+        }
+        return legalMoves;
+    }
+
+    private List<Position> computeLegalMovesForPieceAt(Position position) {
         Piece selectedPiece = board.getPiece(position.getRow(), position.getColumn());
         if (selectedPiece == null) {
             return new ArrayList<>();
@@ -440,6 +1106,25 @@ public class ChessGame {
     }
 
     public boolean isStalemate(PieceColor kingColor) {
+        GameOverCheckEvent event = new GameOverCheckEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        boolean result = false;
+        try {
+            result = stalemate(kingColor);
+            return result;
+        } finally {
+            Metrics.GAME_STATE_CHECK.record(System.nanoTime() - startNanos);
+            if (event.shouldCommit()) {
+                event.check = "stalemate";
+                event.color = kingColor.name();
+                event.result = result;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean stalemate(PieceColor kingColor) {
         if (isInCheck(kingColor)) {
             return false;
         }
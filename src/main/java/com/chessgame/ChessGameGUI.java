@@ -3,23 +3,28 @@ package com.chessgame;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.HashMap;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class ChessGameGUI extends JFrame {
     private final ChessSquareComponent[][] squares = new ChessSquareComponent[8][8];
-    private final ChessGame game = new ChessGame();
-    private final Map<Class<? extends Piece>, String> pieceUnicodeMap = new HashMap<>() {
-        {
-            put(Pawn.class, "\u265F");
-            put(Rook.class, "\u265C");
-            put(Knight.class, "\u265E");
-            put(Bishop.class, "\u265D");
-            put(Queen.class, "\u265B");
-            put(King.class, "\u265A");
-        }
-    };
+    // The GUI never touches the game directly: commands go to the actor and
+    // the board is drawn from the snapshots its events carry.
+    private final transient GameActor game = new GameActor(openGame());
+    private transient Position selectedSquare;
+    private transient GameClock clock;
+    private String gameResult = "*";
+    // The ply shown on the board; new moves are followed only while it is
+    // at the end of the game.
+    private final transient HistoryCursor history = new HistoryCursor();
+    private final DefaultListModel<String> moveListModel = new DefaultListModel<>();
+    private final JList<String> moveList = new JList<>(moveListModel);
+    // Indexed by SearchBoard piece type; both colors use the filled glyphs.
+    private static final String[] PIECE_SYMBOLS = {"", "\u265F", "\u265E", "\u265D", "\u265C", "\u265B", "\u265A"};
 
     private boolean isDarkTheme = false;
     private String boardStyle = "Wood"; // Default board style
@@ -27,6 +32,21 @@ public class ChessGameGUI extends JFrame {
     private JSlider stockfishLevelSlider;
     private JLabel skillLevelLabel;
     private int stockfishSkillLevel = 10; // Default skill level (0-20)
+    private JLabel tablebaseLabel;
+    private JLabel ponderStatsLabel;
+    private final JLabel whiteClockLabel = new JLabel("White: untimed", SwingConstants.CENTER);
+    private final JLabel blackClockLabel = new JLabel("Black: untimed", SwingConstants.CENTER);
+    // Analysis lines and the eval bar are redrawn at most this often, however
+    // fast the engine reports.
+    private static final int ANALYSIS_FRAME_RATE = 10;
+    private transient BackgroundAnalysis backgroundAnalysis;
+    private int analysisLineCount = Integer.getInteger("chess.analysis.lines", BackgroundAnalysis.DEFAULT_LINES);
+    private final EvalBar evalBar = new EvalBar();
+    private JTextArea analysisLinesArea;
+    // Spectators on -Dchess.broadcast.port watch this window's game as game 1.
+    private transient BroadcastServer broadcast;
+    private static final long HINT_SEARCH_MILLIS = 1000;
+    private boolean hintSearchRunning;
 
     public ChessGameGUI() {
         try {
@@ -44,20 +64,68 @@ public class ChessGameGUI extends JFrame {
         initializeBoard(boardPanel);
         add(boardPanel, BorderLayout.CENTER);
         add(createSidePanel(), BorderLayout.EAST);
+        add(createClockPanel(), BorderLayout.NORTH);
+        add(createHistoryPanel(), BorderLayout.SOUTH);
+        evalBar.setVisible(false);
+        add(evalBar, BorderLayout.WEST);
+        new Timer(100, e -> updateClocks()).start();
+        new Timer(1000 / ANALYSIS_FRAME_RATE, e -> publishAnalysis()).start();
 
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                game.closeStockfish();
+                setBackgroundAnalysisEnabled(false);
+                try {
+                    game.close().get(2, TimeUnit.SECONDS);
+                    if (broadcast != null) {
+                        broadcast.close();
+                    }
+                } catch (Exception ex) {
+                    System.err.println("Engine did not shut down cleanly: " + ex);
+                }
             }
         });
 
-        SwingUtilities.invokeLater(this::refreshBoard);
+        game.addSubscriber(events -> SwingUtilities.invokeLater(() -> handleGameEvents(events)));
+        startBroadcast();
+        // A game restored from the journal may already have moves and a clock.
+        game.query(ChessGame::getClock).thenAccept(restoredClock -> SwingUtilities.invokeLater(() -> clock = restoredClock));
+        SwingUtilities.invokeLater(() -> {
+            updateHistory(game.getSnapshot());
+            refreshBoard();
+        });
 
         pack();
         setVisible(true);
     }
 
+    // Games are journaled to -Dchess.journal.dir (default ~/.chess-java/games,
+    // empty to turn journaling off), and a game left unfinished there by the
+    // last session is resumed.
+    private static ChessGame openGame() {
+        ChessGame game = new ChessGame();
+        String directory = System.getProperty("chess.journal.dir",
+                new File(System.getProperty("user.home"), ".chess-java/games").getPath());
+        if (!directory.isEmpty()) {
+            game.enableJournal(new File(directory));
+        }
+        return game;
+    }
+
+    private void startBroadcast() {
+        Integer port = Integer.getInteger("chess.broadcast.port");
+        if (port == null) {
+            return;
+        }
+        try {
+            broadcast = new BroadcastServer(port);
+            game.addSubscriber(broadcast.feed(1));
+            broadcast.publish(1, game.getSnapshot(), -1, -1, ChessGame.NO_SCORE);
+        } catch (IOException e) {
+            System.err.println("Failed to start the spectator broadcast on port " + port + ": " + e.getMessage());
+        }
+    }
+
     private void initializeBoard(JPanel boardPanel) {
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.fill = GridBagConstraints.BOTH;
@@ -178,7 +246,8 @@ public class ChessGameGUI extends JFrame {
         stockfishLevelSlider.addChangeListener(e -> {
             stockfishSkillLevel = stockfishLevelSlider.getValue();
             skillLevelLabel.setText("Stockfish Level: " + stockfishSkillLevel);
-            game.setStockfishSkillLevel(stockfishSkillLevel);
+            int level = stockfishSkillLevel;
+            game.execute(g -> g.setStockfishSkillLevel(level));
         });
         sidePanel.add(stockfishLevelSlider, gbc);
 
@@ -194,10 +263,193 @@ public class ChessGameGUI extends JFrame {
         gbc.gridy = 6;
         sidePanel.add(resetButton, gbc);
 
+        tablebaseLabel = new JLabel(" ");
+        tablebaseLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        gbc.gridy = 7;
+        sidePanel.add(tablebaseLabel, gbc);
+
+        JCheckBox ponderCheckBox = new JCheckBox("Ponder on your time");
+        ponderCheckBox.setFont(new Font("Arial", Font.PLAIN, 14));
+        ponderCheckBox.addActionListener(e -> {
+            boolean enabled = ponderCheckBox.isSelected();
+            game.execute(g -> g.setPonderEnabled(enabled));
+        });
+        gbc.gridy = 8;
+        sidePanel.add(ponderCheckBox, gbc);
+
+        ponderStatsLabel = new JLabel(" ");
+        ponderStatsLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        gbc.gridy = 9;
+        sidePanel.add(ponderStatsLabel, gbc);
+
+        JCheckBox analysisCheckBox = new JCheckBox("Continuous analysis");
+        analysisCheckBox.setFont(new Font("Arial", Font.PLAIN, 14));
+        analysisCheckBox.addActionListener(e -> analysisCheckBox.setSelected(setBackgroundAnalysisEnabled(analysisCheckBox.isSelected())));
+        gbc.gridy = 10;
+        sidePanel.add(analysisCheckBox, gbc);
+
+        analysisLinesArea = new JTextArea(analysisLineCount, 20);
+        analysisLinesArea.setEditable(false);
+        analysisLinesArea.setLineWrap(true);
+        analysisLinesArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        gbc.gridy = 11;
+        sidePanel.add(analysisLinesArea, gbc);
+
         sidePanel.setPreferredSize(new Dimension(300, getHeight()));
         return sidePanel;
     }
 
+    private JPanel createClockPanel() {
+        JPanel clockPanel = new JPanel(new GridLayout(1, 2, 10, 0));
+        whiteClockLabel.setFont(new Font("Arial", Font.BOLD, 18));
+        blackClockLabel.setFont(new Font("Arial", Font.BOLD, 18));
+        clockPanel.add(whiteClockLabel);
+        clockPanel.add(blackClockLabel);
+        return clockPanel;
+    }
+
+    private JPanel createHistoryPanel() {
+        JPanel historyPanel = new JPanel(new BorderLayout(5, 0));
+        JPanel buttons = new JPanel(new GridLayout(1, 4, 2, 0));
+        String[] labels = {"|<", "<", ">", ">|"};
+        String[] tips = {"First position (Home)", "Previous move (Left)", "Next move (Right)", "Current position (End)"};
+        int[] keys = {KeyEvent.VK_HOME, KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_END};
+        for (int i = 0; i < labels.length; i++) {
+            int button = i;
+            Action action = new AbstractAction(labels[i]) {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    stepHistory(button);
+                }
+            };
+            JButton historyButton = new JButton(action);
+            historyButton.setToolTipText(tips[i]);
+            historyButton.setFocusable(false);
+            buttons.add(historyButton);
+            getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(keys[i], 0), labels[i]);
+            getRootPane().getActionMap().put(labels[i], action);
+        }
+        historyPanel.add(buttons, BorderLayout.WEST);
+
+        moveList.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+        moveList.setVisibleRowCount(3);
+        moveList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        moveList.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        moveList.addListSelectionListener(e -> {
+            int index = moveList.getSelectedIndex();
+            if (!e.getValueIsAdjusting() && index >= 0 && index + 1 != history.getPly()) {
+                seekHistory(index + 1);
+            }
+        });
+        historyPanel.add(new JScrollPane(moveList), BorderLayout.CENTER);
+        return historyPanel;
+    }
+
+    private void stepHistory(int button) {
+        switch (button) {
+            case 0:
+                seekHistory(0);
+                break;
+            case 1:
+                seekHistory(history.getPly() - 1);
+                break;
+            case 2:
+                seekHistory(history.getPly() + 1);
+                break;
+            default:
+                seekHistory(history.getLength());
+                break;
+        }
+    }
+
+    private void seekHistory(int ply) {
+        history.seek(ply);
+        selectedSquare = null;
+        if (history.getPly() == 0) {
+            moveList.clearSelection();
+        } else {
+            moveList.setSelectedIndex(history.getPly() - 1);
+            moveList.ensureIndexIsVisible(history.getPly() - 1);
+        }
+        refreshBoard();
+    }
+
+    // Brings the cursor and the move list up to the game's moves.
+    private void updateHistory(BoardSnapshot snapshot) {
+        boolean following = history.isAtEnd();
+        history.setMoves(snapshot.getMoves());
+        if (following) {
+            history.seek(history.getLength());
+        }
+        while (moveListModel.size() > history.getLength()) {
+            moveListModel.remove(moveListModel.size() - 1);
+        }
+        for (int ply = 1; ply <= history.getLength(); ply++) {
+            String label = ply % 2 == 1 ? (ply + 1) / 2 + ". " + history.getSan(ply) : history.getSan(ply);
+            if (ply > moveListModel.size()) {
+                moveListModel.addElement(label);
+            } else if (!moveListModel.get(ply - 1).equals(label)) {
+                moveListModel.set(ply - 1, label);
+            }
+        }
+        if (history.getPly() > 0) {
+            moveList.setSelectedIndex(history.getPly() - 1);
+            moveList.ensureIndexIsVisible(history.getPly() - 1);
+        } else {
+            moveList.clearSelection();
+        }
+    }
+
+    private void updateClocks() {
+        if (clock == null) {
+            whiteClockLabel.setText("White: untimed");
+            blackClockLabel.setText("Black: untimed");
+            return;
+        }
+        whiteClockLabel.setText("White: " + GameClock.format(clock.getRemainingMillis(PieceColor.WHITE)));
+        blackClockLabel.setText("Black: " + GameClock.format(clock.getRemainingMillis(PieceColor.BLACK)));
+
+        // The actor ends the game and stops the clock; until it has, every
+        // tick reports the fall again and the actor ignores the repeats.
+        PieceColor running = clock.getRunningSide();
+        if (running != null && clock.isFlagged(running)) {
+            game.flagFall(running);
+        }
+    }
+
+    private void changeTimeControl(GameClock clock) {
+        this.clock = clock;
+        game.execute(g -> g.setTimeControl(clock));
+        resetGame();
+    }
+
+    private void showCustomTimeControlDialog() {
+        JTextField minutesField = new JTextField("10");
+        JTextField incrementField = new JTextField("5");
+        JTextField delayField = new JTextField("0");
+        JPanel panel = new JPanel(new GridLayout(3, 2, 5, 5));
+        panel.add(new JLabel("Base time (minutes):"));
+        panel.add(minutesField);
+        panel.add(new JLabel("Increment (seconds):"));
+        panel.add(incrementField);
+        panel.add(new JLabel("Delay (seconds):"));
+        panel.add(delayField);
+
+        if (JOptionPane.showConfirmDialog(this, panel, "Custom Time Control", JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION) {
+            try {
+                long base = Math.round(Double.parseDouble(minutesField.getText().trim()) * 60_000);
+                long increment = Math.round(Double.parseDouble(incrementField.getText().trim()) * 1000);
+                long delay = Math.round(Double.parseDouble(delayField.getText().trim()) * 1000);
+                if (base <= 0 || increment < 0 || delay < 0) {
+                    throw new NumberFormatException();
+                }
+                changeTimeControl(new GameClock(base, increment, delay));
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, "Please enter a positive base time and non-negative increment and delay.");
+            }
+        }
+    }
+
     @SuppressWarnings("unused")
     private void showStockfishColorDialog() {
         JPanel panel = new JPanel(new GridLayout(1, 2, 10, 10));
@@ -236,14 +488,18 @@ public class ChessGameGUI extends JFrame {
     }
 
     private void refreshBoard() {
-        ChessBoard board = game.getBoard();
+        BoardRefreshEvent event = new BoardRefreshEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        BoardSnapshot snapshot = game.getSnapshot();
+        boolean live = history.isAtEnd();
+        SearchBoard view = history.getBoard();
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
-                Piece piece = board.getPiece(row, col);
-                if (piece != null) {
-                    String symbol = pieceUnicodeMap.get(piece.getClass());
-                    Color color = piece.getColor() == PieceColor.WHITE ? Color.WHITE : (isDarkTheme ? Color.BLACK : Color.BLACK);
-                    squares[row][col].setPieceSymbol(symbol, color);
+                int piece = live ? snapshot.getPiece(row, col) : view.getPiece(row * 8 + col);
+                if (piece != SearchBoard.EMPTY) {
+                    Color color = (piece & SearchBoard.BLACK_FLAG) == 0 ? Color.WHITE : Color.BLACK;
+                    squares[row][col].setPieceSymbol(PIECE_SYMBOLS[piece & 7], color);
                 } else {
                     squares[row][col].clearPieceSymbol();
                 }
@@ -251,68 +507,145 @@ public class ChessGameGUI extends JFrame {
         }
 
         clearHighlights();
+        if (backgroundAnalysis != null) {
+            backgroundAnalysis.setPosition(live ? snapshot.getMoves() : snapshot.getMoves().subList(0, history.getPly()));
+        }
         SwingUtilities.invokeLater(this::repaint);
+        Metrics.BOARD_REFRESH.record(System.nanoTime() - startNanos);
+        if (event.shouldCommit()) {
+            event.lastMove = snapshot.getLastMove();
+            event.commit();
+        }
     }
 
+    // Selection and legal-move highlights are worked out here from the
+    // snapshot; only the finished move is sent to the game.
     private void handleSquareClick(int row, int col) {
-        try {
-            // Only allow human moves if it's not Stockfish's turn
-            if (stockfishColor == null || game.getCurrentPlayerColor() != stockfishColor) {
-                boolean moveResult = game.handleSquareSelection(row, col);
-                clearHighlights();
-
-                if (moveResult) {
-                    checkForPawnPromotion(row, col);
-                    refreshBoard();
-                    checkGameState();
-                    checkGameOver();
-                } else if (game.isPieceSelected()) {
-                    highlightLegalMoves(new Position(row, col));
-                }
+        if (!history.isAtEnd()) {
+            // Moves are only made in the current position.
+            seekHistory(history.getLength());
+            return;
+        }
+        BoardSnapshot snapshot = game.getSnapshot();
+        PieceColor toMove = snapshot.isWhiteToMove() ? PieceColor.WHITE : PieceColor.BLACK;
+        if (stockfishColor != null && toMove == stockfishColor) {
+            return;
+        }
+        clearHighlights();
+        Position clicked = new Position(row, col);
+        if (selectedSquare == null) {
+            int piece = snapshot.getPiece(row, col);
+            if (piece != SearchBoard.EMPTY && (piece & SearchBoard.BLACK_FLAG) == (snapshot.isWhiteToMove() ? 0 : SearchBoard.BLACK_FLAG)) {
+                selectedSquare = clicked;
+                highlightLegalMoves(snapshot, clicked);
             }
-
-            // If it's Stockfish's turn, play its move
-            if (stockfishColor != null && game.getCurrentPlayerColor() == stockfishColor) {
-                SwingUtilities.invokeLater(this::playStockfishMove);
+            return;
+        }
+        Position from = selectedSquare;
+        selectedSquare = null;
+        char promotion = ' ';
+        if (isLegalPromotion(snapshot, from, clicked)) {
+            promotion = choosePromotion();
+            if (promotion == 0) {
+                return;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "An error occurred: " + e.getMessage());
         }
+        game.move(from, clicked, promotion);
     }
 
-    private void checkForPawnPromotion(int row, int col) {
-        Piece piece = game.getBoard().getPiece(row, col);
-        if (piece instanceof Pawn) {
-            Pawn pawn = (Pawn) piece;
-            if ((pawn.getColor() == PieceColor.WHITE && row == 0) || (pawn.getColor() == PieceColor.BLACK && row == 7)) {
-                promotePawn(pawn);
+    // Only a move the game will accept gets the promotion dialog.
+    private static boolean isLegalPromotion(BoardSnapshot snapshot, Position from, Position to) {
+        SearchBoard board = snapshot.toSearchBoard();
+        int[] moves = new int[256];
+        int count = board.generateLegalMoves(moves);
+        int fromSquare = from.getRow() * 8 + from.getColumn();
+        int toSquare = to.getRow() * 8 + to.getColumn();
+        for (int i = 0; i < count; i++) {
+            if (SearchBoard.from(moves[i]) == fromSquare && SearchBoard.to(moves[i]) == toSquare
+                    && SearchBoard.promotion(moves[i]) != 0) {
+                return true;
             }
         }
+        return false;
     }
 
-    private void checkGameState() {
-        PieceColor currentPlayer = game.getCurrentPlayerColor();
-        boolean inCheck = game.isInCheck(currentPlayer);
-        if (inCheck) {
-            JOptionPane.showMessageDialog(this, currentPlayer + " is in check!");
+    // Returns 'q', 'r', 'b' or 'n', or 0 if the player cancelled.
+    private char choosePromotion() {
+        String[] options = {"Queen", "Rook", "Bishop", "Knight"};
+        String selectedOption = (String) JOptionPane.showInputDialog(this,
+                "Choose a piece to promote your pawn to:",
+                "Pawn Promotion",
+                JOptionPane.PLAIN_MESSAGE,
+                null,
+                options,
+                options[0]);
+        if (selectedOption == null) {
+            return 0;
         }
+        return selectedOption.equals("Knight") ? 'n' : Character.toLowerCase(selectedOption.charAt(0));
     }
 
-    private void highlightLegalMoves(Position position) {
-        List<Position> legalMoves = game.getLegalMovesForPieceAt(position);
-        for (Position move : legalMoves) {
-            Piece movingPiece = game.getBoard().getPiece(position.getRow(), position.getColumn());
-            if (movingPiece != null && game.isEnPassantMove(position, move, movingPiece)) {
-                squares[move.getRow()][move.getColumn()].setBackground(Color.PINK);
-            } else if (game.isCastlingMove(position, move)) {
-                squares[move.getRow()][move.getColumn()].setBackground(Color.BLUE);
+    private void highlightLegalMoves(BoardSnapshot snapshot, Position position) {
+        SearchBoard board = snapshot.toSearchBoard();
+        int[] moves = new int[256];
+        int count = board.generateLegalMoves(moves);
+        int from = position.getRow() * 8 + position.getColumn();
+        for (int i = 0; i < count; i++) {
+            if (SearchBoard.from(moves[i]) != from) {
+                continue;
+            }
+            int to = SearchBoard.to(moves[i]);
+            if ((SearchBoard.flags(moves[i]) & SearchBoard.FLAG_EN_PASSANT) != 0) {
+                squares[to / 8][to % 8].setBackground(Color.PINK);
+            } else if ((SearchBoard.flags(moves[i]) & SearchBoard.FLAG_CASTLE) != 0) {
+                squares[to / 8][to % 8].setBackground(Color.BLUE);
             } else {
-                squares[move.getRow()][move.getColumn()].setBackground(Color.GREEN);
+                squares[to / 8][to % 8].setBackground(Color.GREEN);
             }
         }
     }
 
+    // One batch of events from the game actor, on the EDT. The board is
+    // redrawn once per batch however many moves it holds.
+    private void handleGameEvents(List<GameEvent> events) {
+        boolean positionChanged = false;
+        GameEvent gameOver = null;
+        for (GameEvent event : events) {
+            switch (event.getType()) {
+                case MOVE_PLAYED:
+                case GAME_RESET:
+                    updateHistory(event.getSnapshot());
+                    positionChanged = true;
+                    gameResult = "*";
+                    tablebaseLabel.setText(event.getMessage() != null ? "Tablebase: " + event.getMessage() : " ");
+                    if (event.isEngineMove()) {
+                        updatePonderStats();
+                    }
+                    break;
+                case GAME_OVER:
+                    gameResult = event.getResult();
+                    gameOver = event;
+                    break;
+                case CHECK:
+                    refreshBoard();
+                    positionChanged = false;
+                    JOptionPane.showMessageDialog(this, event.getMessage());
+                    break;
+                case ENGINE_FAILED:
+                    JOptionPane.showMessageDialog(this, event.getMessage());
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (positionChanged) {
+            refreshBoard();
+        }
+        if (gameOver != null) {
+            showGameOver(gameOver);
+        }
+    }
+
     private void clearHighlights() {
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
@@ -367,9 +700,154 @@ public class ChessGameGUI extends JFrame {
         boardsMenu.add(greenBoard);
         menuBar.add(boardsMenu);
 
+        JMenu bookMenu = new JMenu("Opening Book");
+        JMenuItem loadBookItem = new JMenuItem("Load Polyglot Book...");
+        JMenuItem bookDepthItem = new JMenuItem("Max Book Depth...");
+
+        loadBookItem.addActionListener(e -> loadOpeningBook());
+        bookDepthItem.addActionListener(e -> changeMaxBookDepth());
+
+        bookMenu.add(loadBookItem);
+        bookMenu.add(bookDepthItem);
+        menuBar.add(bookMenu);
+
+        JMenu timeMenu = new JMenu("Time Control");
+        JMenuItem untimedItem = new JMenuItem("Untimed");
+        JMenuItem bulletItem = new JMenuItem("Bullet 1+0");
+        JMenuItem blitzItem = new JMenuItem("Blitz 3+2");
+        JMenuItem rapidItem = new JMenuItem("Rapid 15+10");
+        JMenuItem classicalItem = new JMenuItem("Classical 90+30");
+        JMenuItem customItem = new JMenuItem("Custom...");
+
+        untimedItem.addActionListener(e -> changeTimeControl(null));
+        bulletItem.addActionListener(e -> changeTimeControl(new GameClock(60_000, 0, 0)));
+        blitzItem.addActionListener(e -> changeTimeControl(new GameClock(180_000, 2_000, 0)));
+        rapidItem.addActionListener(e -> changeTimeControl(new GameClock(900_000, 10_000, 0)));
+        classicalItem.addActionListener(e -> changeTimeControl(new GameClock(5_400_000, 30_000, 0)));
+        customItem.addActionListener(e -> showCustomTimeControlDialog());
+
+        timeMenu.add(untimedItem);
+        timeMenu.add(bulletItem);
+        timeMenu.add(blitzItem);
+        timeMenu.add(rapidItem);
+        timeMenu.add(classicalItem);
+        timeMenu.add(customItem);
+        menuBar.add(timeMenu);
+
+        JMenu analysisMenu = new JMenu("Analysis");
+        JMenuItem analyzeGameItem = new JMenuItem("Analyze Game...");
+        analyzeGameItem.addActionListener(e -> analyzeGame());
+        analysisMenu.add(analyzeGameItem);
+        JMenuItem analysisLinesItem = new JMenuItem("Analysis Lines...");
+        analysisLinesItem.addActionListener(e -> changeAnalysisLineCount());
+        analysisMenu.add(analysisLinesItem);
+        JMenuItem findMateItem = new JMenuItem("Find Forced Mate...");
+        findMateItem.addActionListener(e -> findForcedMate());
+        analysisMenu.add(findMateItem);
+        menuBar.add(analysisMenu);
+
         setJMenuBar(menuBar);
     }
 
+    private void loadOpeningBook() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Polyglot books (*.bin)", "bin"));
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File file = chooser.getSelectedFile();
+            game.query(g -> {
+                g.loadOpeningBook(file);
+                return g.hasOpeningBook();
+            }).thenAccept(loaded -> {
+                if (!loaded) {
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Unable to load opening book " + file.getName() + "."));
+                }
+            });
+        }
+    }
+
+    private void changeMaxBookDepth() {
+        game.query(ChessGame::getMaxBookDepth).thenAccept(depth -> SwingUtilities.invokeLater(() -> changeMaxBookDepth(depth)));
+    }
+
+    private void changeMaxBookDepth(int currentDepth) {
+        String input = JOptionPane.showInputDialog(this, "Maximum opening book depth (plies):", currentDepth);
+        if (input != null) {
+            try {
+                int plies = Integer.parseInt(input.trim());
+                game.execute(g -> g.setMaxBookDepth(plies));
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, "Please enter a whole number of plies.");
+            }
+        }
+    }
+
+    // Runs the batch analysis on background engines, streaming each annotated
+    // ply into a dialog as it completes, then offers to save the PGN.
+    private void analyzeGame() {
+        List<String> moves = game.getSnapshot().getMoves();
+        if (moves.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "There are no moves to analyze yet.");
+            return;
+        }
+        String input = JOptionPane.showInputDialog(this, "Search depth per move:", 16);
+        if (input == null) {
+            return;
+        }
+        int depth;
+        try {
+            depth = Integer.parseInt(input.trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a whole number.");
+            return;
+        }
+
+        int engines = Integer.getInteger("chess.analysis.engines", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        GameAnalyzer analyzer = new GameAnalyzer(moves, engines, "depth " + depth);
+        String result = gameResult;
+        String white = stockfishColor == PieceColor.WHITE ? "Stockfish" : "Player";
+        String black = stockfishColor == PieceColor.BLACK ? "Stockfish" : "Player";
+
+        JTextArea output = new JTextArea(20, 60);
+        output.setEditable(false);
+        output.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JDialog dialog = new JDialog(this, "Game Analysis (" + engines + " engines)", false);
+        dialog.add(new JScrollPane(output));
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                analyzer.cancel();
+            }
+        });
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+
+        Thread worker = new Thread(() -> {
+            try {
+                analyzer.analyze(ply -> SwingUtilities.invokeLater(() -> output.append(ply + "\n")));
+                SwingUtilities.invokeLater(() -> saveAnalysis(analyzer, white, black, result));
+            } catch (Exception e) {
+                System.err.println("Game analysis failed: " + e.getMessage());
+                SwingUtilities.invokeLater(() -> output.append("Analysis failed: " + e.getMessage() + "\n"));
+            }
+        }, "game-analysis");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void saveAnalysis(GameAnalyzer analyzer, String white, String black, String result) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("PGN files (*.pgn)", "pgn"));
+        chooser.setSelectedFile(new File("analysis.pgn"));
+        if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try (Writer out = new FileWriter(chooser.getSelectedFile())) {
+                analyzer.writePgn(out, white, black, result);
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this, "Unable to save " + chooser.getSelectedFile().getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
     private void changeTheme(boolean dark) {
         isDarkTheme = dark;
         refreshBoard();
@@ -381,97 +859,207 @@ public class ChessGameGUI extends JFrame {
     }
 
     private void resetGame() {
-        game.resetGame();
+        selectedSquare = null;
         if (stockfishColor != null) {
-            game.setStockfishSkillLevel(stockfishSkillLevel);
-        }
-        refreshBoard();
-        // If Stockfish plays White, make its move immediately after reset
-        if (stockfishColor == PieceColor.WHITE) {
-            SwingUtilities.invokeLater(this::playStockfishMove);
+            int level = stockfishSkillLevel;
+            game.execute(g -> g.setStockfishSkillLevel(level));
         }
+        // The actor asks the engine for a move whenever its side is to move,
+        // including straight after the reset when it plays White.
+        game.setEngineColor(stockfishColor);
+        game.reset();
     }
 
-    private void checkGameOver() {
-        PieceColor currentPlayer = game.getCurrentPlayerColor();
-        if (game.isCheckmate(currentPlayer)) {
+    private void showGameOver(GameEvent event) {
+        if (event.getMessage().equals("Checkmate")) {
             int response = JOptionPane.showConfirmDialog(this, "Checkmate! Would you like to play again?", "Game Over", JOptionPane.YES_NO_OPTION);
             if (response == JOptionPane.YES_OPTION) {
                 resetGame();
             } else {
-                game.closeStockfish();
+                try {
+                    game.close().get(2, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    System.err.println("Engine did not shut down cleanly: " + e);
+                }
                 System.exit(0);
             }
-        } else if (game.isStalemate(currentPlayer)) {
+        } else if (event.getMessage().equals("Time forfeit")) {
+            JOptionPane.showMessageDialog(this, (event.getResult().equals("0-1") ? "White" : "Black") + " ran out of time!");
+            resetGame();
+        } else if (event.getMessage().equals("Stalemate")) {
             JOptionPane.showMessageDialog(this, "Stalemate! The game is a draw.");
             resetGame();
+        } else {
+            JOptionPane.showMessageDialog(this, event.getMessage() + ".");
+            resetGame();
         }
     }
 
-    private void promotePawn(Pawn pawn) {
-        String[] options = {"Queen", "Rook", "Bishop", "Knight"};
-        String selectedOption = (String) JOptionPane.showInputDialog(this,
-                "Choose a piece to promote your pawn to:",
-                "Pawn Promotion",
-                JOptionPane.PLAIN_MESSAGE,
-                null,
-                options,
-                options[0]);
+    private void startStockfishVsHuman() {
+        resetGame();
+        String colorText = stockfishColor == PieceColor.WHITE ? "White" : "Black";
+        JOptionPane.showMessageDialog(this, "Stockfish will play as " + colorText + " at level " + stockfishSkillLevel + ".");
+    }
 
-        if (selectedOption != null) {
-            int row = pawn.getPosition().getRow();
-            int col = pawn.getPosition().getColumn();
-            game.getBoard().setPiece(row, col, null);
-            Piece promotedPiece = null;
-            switch (selectedOption) {
-                case "Queen":
-                    promotedPiece = new Queen(pawn.getColor(), pawn.getPosition());
-                    break;
-                case "Rook":
-                    promotedPiece = new Rook(pawn.getColor(), pawn.getPosition());
-                    break;
-                case "Bishop":
-                    promotedPiece = new Bishop(pawn.getColor(), pawn.getPosition());
-                    break;
-                case "Knight":
-                    promotedPiece = new Knight(pawn.getColor(), pawn.getPosition());
-                    break;
+    private void updatePonderStats() {
+        game.query(g -> {
+            int total = g.getPonderHits() + g.getPonderMisses();
+            return total == 0 ? null : String.format("Ponder hits: %d/%d (%.0f%%), avg %d ms saved",
+                    g.getPonderHits(), total, g.getPonderHitRate() * 100, g.getAverageLatencySavedMillis());
+        }).thenAccept(text -> {
+            if (text != null) {
+                SwingUtilities.invokeLater(() -> ponderStatsLabel.setText(text));
             }
-            if (promotedPiece != null) {
-                game.getBoard().setPiece(row, col, promotedPiece);
+        });
+    }
+
+    // Returns whether analysis is running afterwards.
+    private boolean setBackgroundAnalysisEnabled(boolean enabled) {
+        if (enabled && backgroundAnalysis == null) {
+            try {
+                backgroundAnalysis = new BackgroundAnalysis(analysisLineCount);
+                backgroundAnalysis.addSubscriber(this::showAnalysis);
+                backgroundAnalysis.setPosition(game.getSnapshot().getMoves());
+            } catch (Exception e) {
+                System.err.println("Failed to start background analysis: " + e.getMessage());
+                JOptionPane.showMessageDialog(this, "Unable to start background analysis: " + e.getMessage());
             }
-            refreshBoard();
+        } else if (!enabled && backgroundAnalysis != null) {
+            backgroundAnalysis.close();
+            backgroundAnalysis = null;
+            analysisLinesArea.setText("");
         }
+        evalBar.setVisible(backgroundAnalysis != null);
+        evalBar.clear();
+        return backgroundAnalysis != null;
     }
 
-    private void startStockfishVsHuman() {
-        resetGame();
-        String colorText = stockfishColor == PieceColor.WHITE ? "White" : "Black";
-        JOptionPane.showMessageDialog(this, "Stockfish will play as " + colorText + " at level " + stockfishSkillLevel + ".");
-        refreshBoard();
+    private void changeAnalysisLineCount() {
+        String input = JOptionPane.showInputDialog(this, "Number of analysis lines (1-" + BackgroundAnalysis.MAX_LINES + "):", analysisLineCount);
+        if (input == null) {
+            return;
+        }
+        try {
+            int count = Integer.parseInt(input.trim());
+            if (count < 1 || count > BackgroundAnalysis.MAX_LINES) {
+                throw new NumberFormatException();
+            }
+            analysisLineCount = count;
+            analysisLinesArea.setRows(count);
+            if (backgroundAnalysis != null) {
+                backgroundAnalysis.setLineCount(count);
+            }
+            pack();
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a number between 1 and " + BackgroundAnalysis.MAX_LINES + ".");
+        }
     }
 
-    private void playStockfishMove() {
-        game.playStockfishMove();
-        refreshBoard();
-        checkGameState();
-        checkGameOver();
-        // If Stockfish just moved and it's still its turn, play again
-        if (stockfishColor != null && game.getCurrentPlayerColor() == stockfishColor) {
-            SwingUtilities.invokeLater(this::playStockfishMove);
+    // Runs on the frame timer, so the engine's reports reach the EDT at most
+    // once per frame however fast they arrive.
+    private void publishAnalysis() {
+        if (backgroundAnalysis != null) {
+            backgroundAnalysis.publish();
+        }
+    }
+
+    private void showAnalysis(List<String> position, BackgroundAnalysis.Line[] lines) {
+        StringBuilder text = new StringBuilder();
+        for (BackgroundAnalysis.Line line : lines) {
+            if (line != null) {
+                text.append(String.format("%6s  d%-2d %s%n", GameAnalyzer.formatEval(line.getScore()), line.getDepth(),
+                        BackgroundAnalysis.formatPv(position, line.getPv(), 8)));
+            }
+        }
+        analysisLinesArea.setText(text.toString().trim());
+        if (lines.length > 0 && lines[0] != null) {
+            evalBar.setScore(lines[0].getScore());
+        } else {
+            evalBar.clear();
+        }
+    }
+
+    // Runs the proof-number mate solver on the current position off the EDT
+    // and highlights the first move of a mate it proves.
+    private void findForcedMate() {
+        String input = JOptionPane.showInputDialog(this, "Find a forced mate in at most (1-" + MateSolver.MAX_MOVES + ") moves:", 5);
+        if (input == null) {
+            return;
+        }
+        int maxMoves;
+        try {
+            maxMoves = Integer.parseInt(input.trim());
+            if (maxMoves < 1 || maxMoves > MateSolver.MAX_MOVES) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a number between 1 and " + MateSolver.MAX_MOVES + ".");
+            return;
+        }
+        SearchBoard board = game.getSnapshot().toSearchBoard();
+        long maxNodes = Long.getLong("chess.mate.nodes", 20_000_000L);
+        Thread worker = new Thread(() -> {
+            MateSolver.Result result = new MateSolver().solve(board, maxMoves, maxNodes);
+            SwingUtilities.invokeLater(() -> showForcedMate(board, maxMoves, result));
+        }, "mate-solver");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void showForcedMate(SearchBoard board, int maxMoves, MateSolver.Result result) {
+        if (result.getStatus() == MateSolver.PROVEN && result.getPv().length > 0) {
+            clearHighlights();
+            int move = result.getPv()[0];
+            int from = move & 63;
+            int to = (move >>> 6) & 63;
+            squares[from / 8][from % 8].setBackground(Color.YELLOW);
+            squares[to / 8][to % 8].setBackground(Color.YELLOW);
+            JOptionPane.showMessageDialog(this, "Mate in " + result.getMateIn() + ": " + MateSolver.formatLine(board, result.getPv()));
+        } else if (result.getStatus() == MateSolver.DISPROVEN) {
+            JOptionPane.showMessageDialog(this, "No forced mate in " + maxMoves + (maxMoves == 1 ? " move." : " moves."));
+        } else {
+            JOptionPane.showMessageDialog(this, String.format("No answer within %,d nodes.", result.getNodes()));
         }
     }
 
     private void showStockfishBestMove() {
         clearHighlights();
-        String stockfishMove = game.getStockfishMove();
-        if (stockfishMove != null && stockfishMove.length() == 4) {
+        // With background analysis running the answer is already there.
+        // Otherwise a short in-process search answers, off the EDT; asking
+        // the game's engine would stop its pondering and overwrite what it
+        // said about its own last move.
+        BoardSnapshot snapshot = game.getSnapshot();
+        String stockfishMove = null;
+        if (backgroundAnalysis != null) {
+            stockfishMove = backgroundAnalysis.getBestMove(snapshot.getMoves());
+        }
+        if (stockfishMove != null) {
+            highlightBestMove(stockfishMove);
+        } else if (!hintSearchRunning) {
+            hintSearchRunning = true;
+            SearchBoard board = snapshot.toSearchBoard();
+            Thread worker = new Thread(() -> {
+                Search.Result result = new Search(new Evaluator(), new TranspositionTable(1 << 18))
+                        .search(board, Search.MAX_PLY, HINT_SEARCH_MILLIS);
+                String move = result.getMove() == 0 ? null : SearchBoard.moveToUci(result.getMove());
+                SwingUtilities.invokeLater(() -> {
+                    hintSearchRunning = false;
+                    highlightBestMove(move);
+                });
+            }, "hint-search");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void highlightBestMove(String stockfishMove) {
+        if (stockfishMove != null && stockfishMove.length() >= 4) {
             Position start = new Position(8 - (stockfishMove.charAt(1) - '0'), stockfishMove.charAt(0) - 'a');
             Position end = new Position(8 - (stockfishMove.charAt(3) - '0'), stockfishMove.charAt(2) - 'a');
             squares[start.getRow()][start.getColumn()].setBackground(Color.YELLOW);
             squares[end.getRow()][end.getColumn()].setBackground(Color.YELLOW);
         } else {
-            JOptionPane.showMessageDialog(this, "Unable to retrieve Stockfish's best move.");
+            JOptionPane.showMessageDialog(this, "Unable to find a best move.");
         }
     }
 
@@ -481,6 +1069,7 @@ public class ChessGameGUI extends JFrame {
             System.exit(1);
         } else {
             System.setProperty("sun.java2d.uiScale", "4");
+            Metrics.start();
             SwingUtilities.invokeLater(ChessGameGUI::new);
         }
     }
@@ -0,0 +1,18 @@
+package com.chessgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.chessgame.EngineCommand")
+@Label("Engine Command")
+@Description("A UCI command written to the engine process")
+@Category({"Chess", "Engine"})
+@Enabled(false)
+public class EngineCommandEvent extends Event {
+    @Label("Command")
+    public String command;
+}
@@ -0,0 +1,18 @@
+package com.chessgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.chessgame.EngineResponse")
+@Label("Engine Response")
+@Description("A line read from the engine process; the duration is the time spent blocked waiting for it")
+@Category({"Chess", "Engine"})
+@Enabled(false)
+public class EngineResponseEvent extends Event {
+    @Label("Line")
+    public String line;
+}
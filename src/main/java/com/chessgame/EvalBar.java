@@ -0,0 +1,59 @@
+package com.chessgame;
+
+import javax.swing.*;
+import java.awt.*;
+
+// Vertical evaluation bar: the white share grows from the bottom as the score
+// (centipawns, white's point of view) rises, flattening out for large
+// advantages so small swings stay visible.
+public final class EvalBar extends JComponent {
+    private static final long serialVersionUID = 1L;
+    private int score;
+    private boolean known;
+
+    public EvalBar() {
+        setPreferredSize(new Dimension(24, 512));
+        setToolTipText("Background analysis evaluation");
+    }
+
+    public void setScore(int score) {
+        if (!known || this.score != score) {
+            this.score = score;
+            this.known = true;
+            repaint();
+        }
+    }
+
+    public void clear() {
+        if (known) {
+            known = false;
+            repaint();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        double whiteShare = known ? 1 / (1 + Math.exp(-score / 250.0)) : 0.5;
+        int whiteHeight = (int) Math.round(height * whiteShare);
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(0, 0, width, height - whiteHeight);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, height - whiteHeight, width, whiteHeight);
+
+        if (known) {
+            String text = GameAnalyzer.formatEval(score);
+            g.setFont(new Font("Arial", Font.BOLD, 9));
+            FontMetrics metrics = g.getFontMetrics();
+            int x = Math.max(0, (width - metrics.stringWidth(text)) / 2);
+            if (score >= 0) {
+                g.setColor(Color.BLACK);
+                g.drawString(text, x, height - 4);
+            } else {
+                g.setColor(Color.WHITE);
+                g.drawString(text, x, metrics.getAscent() + 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package com.chessgame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Static evaluation in centipawns from the side to move's point of view.
+// Material and piece-square terms come in middlegame and endgame flavours
+// (PeSTO values) that SearchBoard keeps up to date on every make/unmake; only
+// mobility and king safety are computed here per call, and pawn-structure
+// terms are cached in a PawnHashTable. The two halves are blended by game
+// phase, which runs from 24 (all pieces on) down to 0.
+public class Evaluator {
+    public static final int TOTAL_PHASE = 24;
+    static final int[] PHASE_WEIGHT = {0, 0, 1, 1, 2, 4, 0};
+
+    static final int[] MG_MATERIAL = {0, 82, 337, 365, 477, 1025, 0};
+    static final int[] EG_MATERIAL = {0, 94, 281, 297, 512, 936, 0};
+
+    // Tables are written from white's side with a8 first, which matches the
+    // SearchBoard square numbering; black squares are mirrored with ^ 56.
+    static final int[][] MG_PST = {
+        {},
+        {
+              0,   0,   0,   0,   0,   0,  0,   0,
+             98, 134,  61,  95,  68, 126, 34, -11,
+             -6,   7,  26,  31,  65,  56, 25, -20,
+            -14,  13,   6,  21,  23,  12, 17, -23,
+            -27,  -2,  -5,  12,  17,   6, 10, -25,
+            -26,  -4,  -4, -10,   3,   3, 33, -12,
+            -35,  -1, -20, -23, -15,  24, 38, -22,
+              0,   0,   0,   0,   0,   0,  0,   0
+        },
+        {
+            -167, -89, -34, -49,  61, -97, -15, -107,
+             -73, -41,  72,  36,  23,  62,   7,  -17,
+             -47,  60,  37,  65,  84, 129,  73,   44,
+              -9,  17,  19,  53,  37,  69,  18,   22,
+             -13,   4,  16,  13,  28,  19,  21,   -8,
+             -23,  -9,  12,  10,  19,  17,  25,  -16,
+             -29, -53, -12,  -3,  -1,  18, -14,  -19,
+            -105, -21, -58, -33, -17, -28, -19,  -23
+        },
+        {
+            -29,   4, -82, -37, -25, -42,   7,  -8,
+            -26,  16, -18, -13,  30,  59,  18, -47,
+            -16,  37,  43,  40,  35,  50,  37,  -2,
+             -4,   5,  19,  50,  37,  37,   7,  -2,
+             -6,  13,  13,  26,  34,  12,  10,   4,
+              0,  15,  15,  15,  14,  27,  18,  10,
+              4,  15,  16,   0,   7,  21,  33,   1,
+            -33,  -3, -14, -21, -13, -12, -39, -21
+        },
+        {
+             32,  42,  32,  51, 63,  9,  31,  43,
+             27,  32,  58,  62, 80, 67,  26,  44,
+             -5,  19,  26,  36, 17, 45,  61,  16,
+            -24, -11,   7,  26, 24, 35,  -8, -20,
+            -36, -26, -12,  -1,  9, -7,   6, -23,
+            -45, -25, -16, -17,  3,  0,  -5, -33,
+            -44, -16, -20,  -9, -1, 11,  -6, -71,
+            -19, -13,   1,  17, 16,  7, -37, -26
+        },
+        {
+            -28,   0,  29,  12,  59,  44,  43,  45,
+            -24, -39,  -5,   1, -16,  57,  28,  54,
+            -13, -17,   7,   8,  29,  56,  47,  57,
+            -27, -27, -16, -16,  -1,  17,  -2,   1,
+             -9, -26,  -9, -10,  -2,  -4,   3,  -3,
+            -14,   2, -11,  -2,  -5,   2,  14,   5,
+            -35,  -8,  11,   2,   8,  15,  -3,   1,
+             -1, -18,  -9,  10, -15, -25, -31, -50
+        },
+        {
+            -65,  23,  16, -15, -56, -34,   2,  13,
+             29,  -1, -20,  -7,  -8,  -4, -38, -29,
+             -9,  24,   2, -16, -20,   6,  22, -22,
+            -17, -20, -12, -27, -30, -25, -14, -36,
+            -49,  -1, -27, -39, -46, -44, -33, -51,
+            -14, -14, -22, -46, -44, -30, -15, -27,
+              1,   7,  -8, -64, -43, -16,   9,   8,
+            -15,  36,  12, -54,   8, -28,  24,  14
+        }
+    };
+
+    static final int[][] EG_PST = {
+        {},
+        {
+              0,   0,   0,   0,   0,   0,   0,   0,
+            178, 173, 158, 134, 147, 132, 165, 187,
+             94, 100,  85,  67,  56,  53,  82,  84,
+             32,  24,  13,   5,  -2,   4,  17,  17,
+             13,   9,  -3,  -7,  -7,  -8,   3,  -1,
+              4,   7,  -6,   1,   0,  -5,  -1,  -8,
+             13,   8,   8,  10,  13,   0,   2,  -7,
+              0,   0,   0,   0,   0,   0,   0,   0
+        },
+        {
+            -58, -38, -13, -28, -31, -27, -63, -99,
+            -25,  -8, -25,  -2,  -9, -25, -24, -52,
+            -24, -20,  10,   9,  -1,  -9, -19, -41,
+            -17,   3,  22,  22,  22,  11,   8, -18,
+            -18,  -6,  16,  25,  16,  17,   4, -18,
+            -23,  -3,  -1,  15,  10,  -3, -20, -22,
+            -42, -20, -10,  -5,  -2, -20, -23, -44,
+            -29, -51, -23, -15, -22, -18, -50, -64
+        },
+        {
+            -14, -21, -11,  -8, -7,  -9, -17, -24,
+             -8,  -4,   7, -12, -3, -13,  -4, -14,
+              2,  -8,   0,  -1, -2,   6,   0,   4,
+             -3,   9,  12,   9, 14,  10,   3,   2,
+             -6,   3,  13,  19,  7,  10,  -3,  -9,
+            -12,  -3,   8,  10, 13,   3,  -7, -15,
+            -14, -18,  -7,  -1,  4,  -9, -15, -27,
+            -23,  -9, -23,  -5, -9, -16,  -5, -17
+        },
+        {
+            13, 10, 18, 15, 12,  12,   8,   5,
+            11, 13, 13, 11, -3,   3,   8,   3,
+             7,  7,  7,  5,  4,  -3,  -5,  -3,
+             4,  3, 13,  1,  2,   1,  -1,   2,
+             3,  5,  8,  4, -5,  -6,  -8, -11,
+            -4,  0, -5, -1, -7, -12,  -8, -16,
+            -6, -6,  0,  2, -9,  -9, -11,  -3,
+            -9,  2,  3, -1, -5, -13,   4, -20
+        },
+        {
+             -9,  22,  22,  27,  27,  19,  10,  20,
+            -17,  20,  32,  41,  58,  25,  30,   0,
+            -20,   6,   9,  49,  47,  35,  19,   9,
+              3,  22,  24,  45,  57,  40,  57,  36,
+            -18,  28,  19,  47,  31,  34,  39,  23,
+            -16, -27,  15,   6,   9,  17,  10,   5,
+            -22, -23, -30, -16, -16, -23, -36, -32,
+            -33, -28, -22, -43,  -5, -32, -20, -41
+        },
+        {
+            -74, -35, -18, -18, -11,  15,   4, -17,
+            -12,  17,  14,  17,  17,  38,  23,  11,
+             10,  17,  23,  15,  20,  45,  44,  13,
+             -8,  22,  24,  27,  26,  33,  26,   3,
+            -18,  -4,  21,  24,  27,  23,   9, -11,
+            -19,  -3,  11,  21,  23,  16,   7,  -9,
+            -27, -11,   4,  13,  14,   4,  -5, -17,
+            -53, -34, -21, -11, -28, -14, -24, -43
+        }
+    };
+
+    // Per reachable square, by piece type, measured against a typical count
+    // so a piece with average freedom scores roughly zero.
+    static final int[] MG_MOBILITY = {0, 0, 4, 5, 2, 1, 0};
+    static final int[] EG_MOBILITY = {0, 0, 4, 5, 4, 2, 0};
+    private static final int[] MOBILITY_BASELINE = {0, 0, 4, 6, 7, 13, 0};
+
+    // King safety: each enemy piece hitting the king zone adds attack units,
+    // which are turned into a penalty that grows faster than linearly.
+    static final int[] KING_ATTACK_UNITS = {0, 0, 2, 2, 3, 5, 0};
+    static final int[] KING_SAFETY_TABLE = new int[64];
+
+    // Pawn structure penalties, middlegame then endgame.
+    static final int[] DOUBLED = {-10, -20};
+    static final int[] ISOLATED = {-12, -15};
+    static final int[] BACKWARD = {-8, -10};
+    // Passed pawn bonus by rank counted from the pawn's own side.
+    static final int[] PASSED_MG = {0, 5, 10, 15, 25, 45, 70, 0};
+    static final int[] PASSED_EG = {0, 10, 15, 25, 45, 75, 120, 0};
+    // Shield penalty per file next to the king: pawn on its second rank,
+    // third rank, further up, or missing.
+    static final int[] SHIELD = {0, -10, -20, -30};
+
+    // Material plus piece-square value for every piece code and square.
+    static final int[][] MG_TABLE = new int[16][64];
+    static final int[][] EG_TABLE = new int[16][64];
+
+    // Tuned weights, if present, replace the defaults above.
+    public static final String WEIGHTS_RESOURCE = "/eval/weights.txt";
+    private static final String[] TYPE_NAMES = {"", "PAWN", "KNIGHT", "BISHOP", "ROOK", "QUEEN", "KING"};
+    // Every tunable weight array by name, in the order they are written out.
+    static final Map<String, int[]> WEIGHTS = new LinkedHashMap<>();
+
+    static {
+        for (int units = 0; units < KING_SAFETY_TABLE.length; units++) {
+            KING_SAFETY_TABLE[units] = Math.min(500, units * units * 3 / 2);
+        }
+        WEIGHTS.put("MG_MATERIAL", MG_MATERIAL);
+        WEIGHTS.put("EG_MATERIAL", EG_MATERIAL);
+        for (int type = SearchBoard.PAWN; type <= SearchBoard.KING; type++) {
+            WEIGHTS.put("MG_PST_" + TYPE_NAMES[type], MG_PST[type]);
+            WEIGHTS.put("EG_PST_" + TYPE_NAMES[type], EG_PST[type]);
+        }
+        WEIGHTS.put("MG_MOBILITY", MG_MOBILITY);
+        WEIGHTS.put("EG_MOBILITY", EG_MOBILITY);
+        WEIGHTS.put("KING_ATTACK_UNITS", KING_ATTACK_UNITS);
+        WEIGHTS.put("DOUBLED", DOUBLED);
+        WEIGHTS.put("ISOLATED", ISOLATED);
+        WEIGHTS.put("BACKWARD", BACKWARD);
+        WEIGHTS.put("PASSED_MG", PASSED_MG);
+        WEIGHTS.put("PASSED_EG", PASSED_EG);
+        WEIGHTS.put("SHIELD", SHIELD);
+
+        InputStream in = Evaluator.class.getResourceAsStream(WEIGHTS_RESOURCE);
+        if (in != null) {
+            try (InputStream stream = in) {
+                loadWeights(stream);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring evaluator weights " + WEIGHTS_RESOURCE + ": " + e.getMessage());
+            }
+        }
+        buildTables();
+    }
+
+    // Reads "NAME value value ..." lines as written by saveWeights. Names
+    // that are not listed keep their current values; nothing changes unless
+    // the whole file is valid.
+    static void loadWeights(InputStream in) throws IOException {
+        Map<String, int[]> loaded = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            int[] target = WEIGHTS.get(tokens[0]);
+            if (target == null || tokens.length - 1 != target.length) {
+                throw new IOException("Unexpected weights line: " + tokens[0]);
+            }
+            int[] values = new int[target.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Integer.parseInt(tokens[i + 1]);
+            }
+            loaded.put(tokens[0], values);
+        }
+        for (Map.Entry<String, int[]> entry : loaded.entrySet()) {
+            System.arraycopy(entry.getValue(), 0, WEIGHTS.get(entry.getKey()), 0, entry.getValue().length);
+        }
+        buildTables();
+    }
+
+    static void saveWeights(Writer out) throws IOException {
+        for (Map.Entry<String, int[]> entry : WEIGHTS.entrySet()) {
+            StringBuilder line = new StringBuilder(entry.getKey());
+            for (int value : entry.getValue()) {
+                line.append(' ').append(value);
+            }
+            out.write(line.append('\n').toString());
+        }
+        out.flush();
+    }
+
+    // Must be called again whenever the material or table weights change;
+    // boards created before then carry stale incremental scores.
+    static void buildTables() {
+        for (int type = SearchBoard.PAWN; type <= SearchBoard.KING; type++) {
+            for (int square = 0; square < 64; square++) {
+                MG_TABLE[type][square] = MG_MATERIAL[type] + MG_PST[type][square];
+                EG_TABLE[type][square] = EG_MATERIAL[type] + EG_PST[type][square];
+                MG_TABLE[type | SearchBoard.BLACK_FLAG][square] = MG_MATERIAL[type] + MG_PST[type][square ^ 56];
+                EG_TABLE[type | SearchBoard.BLACK_FLAG][square] = EG_MATERIAL[type] + EG_PST[type][square ^ 56];
+            }
+        }
+    }
+
+    private final PawnHashTable pawnTable;
+    private final int[] mg = new int[2];
+    private final int[] eg = new int[2];
+    private final int[] attackUnits = new int[2];
+    private final boolean[] kingZone = new boolean[128];
+    // Per colour and file: pawn count and the lowest/highest occupied row.
+    private final int[][] pawnCount = new int[2][8];
+    private final int[][] minPawnRow = new int[2][8];
+    private final int[][] maxPawnRow = new int[2][8];
+
+    public Evaluator() {
+        this(new PawnHashTable());
+    }
+
+    public Evaluator(PawnHashTable pawnTable) {
+        this.pawnTable = pawnTable;
+    }
+
+    public PawnHashTable getPawnTable() {
+        return pawnTable;
+    }
+
+    public int evaluate(SearchBoard board) {
+        mg[0] = board.getMgScore(SearchBoard.WHITE);
+        mg[1] = board.getMgScore(SearchBoard.BLACK);
+        eg[0] = board.getEgScore(SearchBoard.WHITE);
+        eg[1] = board.getEgScore(SearchBoard.BLACK);
+        attackUnits[0] = 0;
+        attackUnits[1] = 0;
+        markKingZone(board.getKingSquare(SearchBoard.WHITE), 0);
+        markKingZone(board.getKingSquare(SearchBoard.BLACK), 64);
+
+        for (int square = 0; square < 64; square++) {
+            int piece = board.getPiece(square);
+            int type = piece & 7;
+            if (type < SearchBoard.KNIGHT || type > SearchBoard.QUEEN) {
+                continue;
+            }
+            evaluatePiece(board, square, piece >> 3, type);
+        }
+
+        int slot = pawnTable.probe(board.getPawnKey());
+        if (slot < 0) {
+            slot = ~slot;
+            evaluatePawns(board, slot);
+        }
+        mg[0] += pawnTable.getMg(slot) + pawnTable.getShield(slot, SearchBoard.WHITE, board.getKingSquare(SearchBoard.WHITE) & 7);
+        mg[1] += pawnTable.getShield(slot, SearchBoard.BLACK, board.getKingSquare(SearchBoard.BLACK) & 7);
+        eg[0] += pawnTable.getEg(slot);
+
+        // Attack units collected by one side count against the other side's king.
+        mg[1] -= KING_SAFETY_TABLE[Math.min(attackUnits[0], 63)];
+        mg[0] -= KING_SAFETY_TABLE[Math.min(attackUnits[1], 63)];
+        clearKingZone(board.getKingSquare(SearchBoard.WHITE), 0);
+        clearKingZone(board.getKingSquare(SearchBoard.BLACK), 64);
+
+        int phase = Math.min(board.getPhase(), TOTAL_PHASE);
+        int score = ((mg[0] - mg[1]) * phase + (eg[0] - eg[1]) * (TOTAL_PHASE - phase)) / TOTAL_PHASE;
+        return board.getSideToMove() == SearchBoard.WHITE ? score : -score;
+    }
+
+    private void evaluatePiece(SearchBoard board, int square, int color, int type) {
+        int ownFlag = color == SearchBoard.WHITE ? 0 : SearchBoard.BLACK_FLAG;
+        int enemyZone = color == SearchBoard.WHITE ? 64 : 0;
+        int reachable = 0;
+        int zoneHits = 0;
+        if (type == SearchBoard.KNIGHT) {
+            for (int target : SearchBoard.KNIGHT_TARGETS[square]) {
+                int occupant = board.getPiece(target);
+                if (occupant == SearchBoard.EMPTY || (occupant & SearchBoard.BLACK_FLAG) != ownFlag) {
+                    reachable++;
+                }
+                if (kingZone[enemyZone + target]) {
+                    zoneHits++;
+                }
+            }
+        } else {
+            int firstDirection = type == SearchBoard.BISHOP ? 4 : 0;
+            int lastDirection = type == SearchBoard.ROOK ? 4 : 8;
+            for (int direction = firstDirection; direction < lastDirection; direction++) {
+                for (int target : SearchBoard.RAYS[square][direction]) {
+                    int occupant = board.getPiece(target);
+                    if (kingZone[enemyZone + target]) {
+                        zoneHits++;
+                    }
+                    if (occupant == SearchBoard.EMPTY) {
+                        reachable++;
+                        continue;
+                    }
+                    if ((occupant & SearchBoard.BLACK_FLAG) != ownFlag) {
+                        reachable++;
+                    }
+                    break;
+                }
+            }
+        }
+        mg[color] += MG_MOBILITY[type] * (reachable - MOBILITY_BASELINE[type]);
+        eg[color] += EG_MOBILITY[type] * (reachable - MOBILITY_BASELINE[type]);
+        if (zoneHits > 0) {
+            attackUnits[color] += KING_ATTACK_UNITS[type] * zoneHits;
+        }
+    }
+
+    // Fills a pawn table slot with white-minus-black structure scores and
+    // both sides' shields for every king file.
+    private void evaluatePawns(SearchBoard board, int slot) {
+        for (int color = 0; color < 2; color++) {
+            for (int file = 0; file < 8; file++) {
+                pawnCount[color][file] = 0;
+                minPawnRow[color][file] = 8;
+                maxPawnRow[color][file] = -1;
+            }
+        }
+        for (int square = 0; square < 64; square++) {
+            int piece = board.getPiece(square);
+            if ((piece & 7) == SearchBoard.PAWN) {
+                int color = piece >> 3;
+                int file = square & 7;
+                int row = square >> 3;
+                pawnCount[color][file]++;
+                minPawnRow[color][file] = Math.min(minPawnRow[color][file], row);
+                maxPawnRow[color][file] = Math.max(maxPawnRow[color][file], row);
+            }
+        }
+
+        int[] structureMg = {0, 0};
+        int[] structureEg = {0, 0};
+        for (int square = 0; square < 64; square++) {
+            int piece = board.getPiece(square);
+            if ((piece & 7) != SearchBoard.PAWN) {
+                continue;
+            }
+            int color = piece >> 3;
+            int file = square & 7;
+            int row = square >> 3;
+            int forward = color == SearchBoard.WHITE ? -1 : 1;
+            int relativeRank = color == SearchBoard.WHITE ? 7 - row : row;
+            boolean leftNeighbour = file > 0 && pawnCount[color][file - 1] > 0;
+            boolean rightNeighbour = file < 7 && pawnCount[color][file + 1] > 0;
+
+            if (isPassed(color, file, row)) {
+                structureMg[color] += PASSED_MG[relativeRank];
+                structureEg[color] += PASSED_EG[relativeRank];
+            }
+            if (!leftNeighbour && !rightNeighbour) {
+                structureMg[color] += ISOLATED[0];
+                structureEg[color] += ISOLATED[1];
+            } else if (isBackward(board, color, file, row, forward)) {
+                structureMg[color] += BACKWARD[0];
+                structureEg[color] += BACKWARD[1];
+            }
+        }
+        for (int color = 0; color < 2; color++) {
+            for (int file = 0; file < 8; file++) {
+                if (pawnCount[color][file] > 1) {
+                    structureMg[color] += DOUBLED[0] * (pawnCount[color][file] - 1);
+                    structureEg[color] += DOUBLED[1] * (pawnCount[color][file] - 1);
+                }
+            }
+        }
+
+        pawnTable.store(slot, board.getPawnKey(), structureMg[0] - structureMg[1], structureEg[0] - structureEg[1]);
+        for (int kingFile = 0; kingFile < 8; kingFile++) {
+            pawnTable.storeShield(slot, kingFile, shield(SearchBoard.WHITE, kingFile), shield(SearchBoard.BLACK, kingFile));
+        }
+    }
+
+    private boolean isPassed(int color, int file, int row) {
+        int enemy = color ^ 1;
+        for (int f = Math.max(0, file - 1); f <= Math.min(7, file + 1); f++) {
+            if (pawnCount[enemy][f] == 0) {
+                continue;
+            }
+            if (color == SearchBoard.WHITE ? minPawnRow[enemy][f] < row : maxPawnRow[enemy][f] > row) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // No friendly pawn on an adjacent file level with or behind it, and its
+    // stop square is covered by an enemy pawn.
+    private boolean isBackward(SearchBoard board, int color, int file, int row, int forward) {
+        for (int f = file - 1; f <= file + 1; f += 2) {
+            if (f < 0 || f > 7 || pawnCount[color][f] == 0) {
+                continue;
+            }
+            if (color == SearchBoard.WHITE ? maxPawnRow[color][f] >= row : minPawnRow[color][f] <= row) {
+                return false;
+            }
+        }
+        int attackerRow = row + 2 * forward;
+        if (attackerRow < 0 || attackerRow > 7) {
+            return false;
+        }
+        int enemyPawn = color == SearchBoard.WHITE ? SearchBoard.PAWN | SearchBoard.BLACK_FLAG : SearchBoard.PAWN;
+        return (file > 0 && board.getPiece(attackerRow * 8 + file - 1) == enemyPawn)
+                || (file < 7 && board.getPiece(attackerRow * 8 + file + 1) == enemyPawn);
+    }
+
+    private int shield(int color, int kingFile) {
+        int total = 0;
+        for (int f = Math.max(0, kingFile - 1); f <= Math.min(7, kingFile + 1); f++) {
+            if (pawnCount[color][f] == 0) {
+                total += SHIELD[3];
+                continue;
+            }
+            // The pawn closest to the own back rank shelters the king.
+            int row = color == SearchBoard.WHITE ? maxPawnRow[color][f] : minPawnRow[color][f];
+            int relativeRank = color == SearchBoard.WHITE ? 7 - row : row;
+            total += SHIELD[Math.min(relativeRank - 1, 2)];
+        }
+        return total;
+    }
+
+    private void markKingZone(int kingSquare, int offset) {
+        kingZone[offset + kingSquare] = true;
+        for (int square : SearchBoard.KING_TARGETS[kingSquare]) {
+            kingZone[offset + square] = true;
+        }
+    }
+
+    private void clearKingZone(int kingSquare, int offset) {
+        kingZone[offset + kingSquare] = false;
+        for (int square : SearchBoard.KING_TARGETS[kingSquare]) {
+            kingZone[offset + square] = false;
+        }
+    }
+}
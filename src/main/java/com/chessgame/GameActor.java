@@ -0,0 +1,257 @@
+package com.chessgame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Owns one ChessGame and is the only code that touches it. Callers on any
+// thread post commands to a mailbox and return at once. The mailbox is
+// drained by one task at a time on a shared executor, so each game has a
+// single writer while many games share a few threads. Everything that
+// happened in one drain is delivered to subscribers as one batch of
+// immutable events, on the actor's thread.
+public class GameActor {
+    // Commands handled per drain before the thread is handed to other games.
+    private static final int BATCH_LIMIT = 64;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService SHARED_EXECUTOR = Executors.newFixedThreadPool(
+            Integer.getInteger("chess.actor.threads", 2), runnable -> {
+                Thread thread = new Thread(runnable, "game-actor-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public interface Subscriber {
+        void gameEvents(List<GameEvent> events);
+    }
+
+    private interface Command {
+        void run(List<GameEvent> events);
+    }
+
+    private final ChessGame game;
+    private final Executor executor;
+    private final Queue<Command> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Only read and written by commands.
+    private PieceColor engineColor;
+    private boolean engineMoveQueued;
+    private boolean gameOver;
+
+    public GameActor(ChessGame game) {
+        this(game, SHARED_EXECUTOR);
+    }
+
+    // Any executor works, including one that starts a virtual thread per
+    // task; the actor never runs two drains at once.
+    public GameActor(ChessGame game, Executor executor) {
+        this.game = game;
+        this.executor = executor;
+    }
+
+    public void addSubscriber(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void removeSubscriber(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    // Safe from any thread; the position after the last committed move.
+    public BoardSnapshot getSnapshot() {
+        return game.getSnapshot();
+    }
+
+    // promotion is 'q', 'r', 'b', 'n' or ' ' for non-promotions.
+    public void move(Position from, Position to, char promotion) {
+        send(events -> {
+            String notation = from.toChessNotation() + to.toChessNotation() + (promotion == ' ' ? "" : promotion);
+            if (gameOver || !game.makeMove(from, to, promotion)) {
+                events.add(new GameEvent(GameEvent.Type.MOVE_REJECTED, game.getSnapshot(), notation, false, null, null));
+                return;
+            }
+            events.add(movePlayed(game.getSnapshot(), false));
+            positionChanged(events);
+        });
+    }
+
+    public void reset() {
+        send(events -> {
+            game.resetGame();
+            gameOver = false;
+            events.add(new GameEvent(GameEvent.Type.GAME_RESET, game.getSnapshot(), null, false, game.getTablebaseResult(), null,
+                    clockMillis(PieceColor.WHITE), clockMillis(PieceColor.BLACK), ChessGame.NO_SCORE));
+            positionChanged(events);
+        });
+    }
+
+    // The side the engine plays, or null for human against human. The
+    // actor asks the engine for a move whenever that side is to move.
+    public void setEngineColor(PieceColor color) {
+        send(events -> {
+            engineColor = color;
+            if (!gameOver && color == game.getCurrentPlayerColor()) {
+                queueEngineMove();
+            }
+        });
+    }
+
+    // Reported by whoever watches the clock; the game ends on time only if
+    // that side's clock really has run out when the command is handled.
+    public void flagFall(PieceColor side) {
+        send(events -> {
+            GameClock clock = game.getClock();
+            if (gameOver || clock == null || !clock.isFlagged(side)) {
+                return;
+            }
+            clock.stop();
+            gameOver(events, "Time forfeit", side == PieceColor.WHITE ? "0-1" : "1-0");
+        });
+    }
+
+    public void playEngineMove() {
+        send(events -> queueEngineMove());
+    }
+
+    // Runs an arbitrary change, such as a setting, in the game's turn.
+    public void execute(Consumer<ChessGame> action) {
+        send(events -> action.accept(game));
+    }
+
+    // Reads something from the game in its turn. The future completes on
+    // the actor's thread.
+    public <T> CompletableFuture<T> query(Function<ChessGame, T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        send(events -> {
+            try {
+                future.complete(query.apply(game));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // Closes the engine after every command already posted.
+    public CompletableFuture<Void> close() {
+        return query(game -> {
+            game.closeStockfish();
+            game.closeJournal();
+            return null;
+        });
+    }
+
+    private void queueEngineMove() {
+        if (engineMoveQueued) {
+            return;
+        }
+        engineMoveQueued = true;
+        send(this::engineMove);
+    }
+
+    private void engineMove(List<GameEvent> events) {
+        engineMoveQueued = false;
+        if (gameOver || engineColor != game.getCurrentPlayerColor()) {
+            return;
+        }
+        // The engine takes a whole move time; show what came before first.
+        deliver(events);
+        BoardSnapshot before = game.getSnapshot();
+        game.playStockfishMove();
+        BoardSnapshot after = game.getSnapshot();
+        if (after == before) {
+            events.add(new GameEvent(GameEvent.Type.ENGINE_FAILED, after, null, true, "The engine did not return a legal move.", null));
+            return;
+        }
+        events.add(movePlayed(after, true));
+        positionChanged(events);
+    }
+
+    private GameEvent movePlayed(BoardSnapshot snapshot, boolean engineMove) {
+        return new GameEvent(GameEvent.Type.MOVE_PLAYED, snapshot, snapshot.getLastMove(), engineMove, game.getTablebaseResult(), null,
+                clockMillis(PieceColor.WHITE), clockMillis(PieceColor.BLACK),
+                engineMove ? game.getLastEngineScore() : ChessGame.NO_SCORE);
+    }
+
+    private long clockMillis(PieceColor side) {
+        GameClock clock = game.getClock();
+        return clock == null ? -1 : clock.getRemainingMillis(side);
+    }
+
+    private void positionChanged(List<GameEvent> events) {
+        BoardSnapshot snapshot = game.getSnapshot();
+        PieceColor toMove = game.getCurrentPlayerColor();
+        if (game.isCheckmate(toMove)) {
+            gameOver(events, "Checkmate", toMove == PieceColor.WHITE ? "0-1" : "1-0");
+        } else if (game.isStalemate(toMove)) {
+            gameOver(events, "Stalemate", "1/2-1/2");
+        } else if (game.getDrawReason() != null) {
+            gameOver(events, "Draw by " + game.getDrawReason(), "1/2-1/2");
+        } else if (game.isInCheck(toMove)) {
+            events.add(new GameEvent(GameEvent.Type.CHECK, snapshot, null, false, toMove + " is in check!", null));
+        }
+        if (!gameOver && engineColor == toMove) {
+            queueEngineMove();
+        }
+    }
+
+    private void gameOver(List<GameEvent> events, String reason, String result) {
+        gameOver = true;
+        game.recordResult(result);
+        events.add(new GameEvent(GameEvent.Type.GAME_OVER, game.getSnapshot(), null, false, reason, result));
+    }
+
+    private void send(Command command) {
+        mailbox.add(command);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        List<GameEvent> events = new ArrayList<>();
+        Command command;
+        for (int handled = 0; handled < BATCH_LIMIT && (command = mailbox.poll()) != null; handled++) {
+            try {
+                command.run(events);
+            } catch (RuntimeException e) {
+                System.err.println("Game command failed: " + e);
+            }
+        }
+        deliver(events);
+        scheduled.set(false);
+        // A command posted after the last poll but before the flag cleared
+        // found the actor still scheduled, so check once more.
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void deliver(List<GameEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<GameEvent> batch = Collections.unmodifiableList(new ArrayList<>(events));
+        events.clear();
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.gameEvents(batch);
+            } catch (RuntimeException e) {
+                System.err.println("Game event subscriber failed: " + e);
+            }
+        }
+    }
+}
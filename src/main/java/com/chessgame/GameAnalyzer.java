@@ -0,0 +1,357 @@
+package com.chessgame;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Analyses every position of a finished game on several engine processes at
+// once. Workers pull the next unanalysed position from a shared counter, so
+// fast and slow positions balance out and throughput grows with the number
+// of engines. A ply is reported as soon as the positions before and after it
+// are both done, which is usually out of order.
+public class GameAnalyzer {
+    public static final int INACCURACY = 50;
+    public static final int MISTAKE = 100;
+    public static final int BLUNDER = 300;
+    // Mate scores map to +-MATE_SCORE minus the moves left to mate.
+    static final int MATE_SCORE = 10000;
+    // Losses are measured on evaluations clamped to this, so converting a won
+    // position more slowly is not reported as a blunder.
+    private static final int LOSS_CLAMP = 1000;
+
+    public interface Listener {
+        void plyAnalyzed(PlyAnalysis analysis);
+    }
+
+    public static class PlyAnalysis {
+        private final int ply;
+        private final String move;
+        private final String san;
+        private final String bestMove;
+        private final String bestSan;
+        private final int evalBefore;
+        private final int evalAfter;
+        private final int centipawnLoss;
+
+        PlyAnalysis(int ply, String move, String san, String bestMove, String bestSan,
+                    int evalBefore, int evalAfter, int centipawnLoss) {
+            this.ply = ply;
+            this.move = move;
+            this.san = san;
+            this.bestMove = bestMove;
+            this.bestSan = bestSan;
+            this.evalBefore = evalBefore;
+            this.evalAfter = evalAfter;
+            this.centipawnLoss = centipawnLoss;
+        }
+
+        public int getPly() {
+            return ply;
+        }
+
+        public String getMove() {
+            return move;
+        }
+
+        public String getSan() {
+            return san;
+        }
+
+        public String getBestMove() {
+            return bestMove;
+        }
+
+        public String getBestSan() {
+            return bestSan;
+        }
+
+        // Both evaluations are in centipawns from white's point of view.
+        public int getEvalBefore() {
+            return evalBefore;
+        }
+
+        public int getEvalAfter() {
+            return evalAfter;
+        }
+
+        public int getCentipawnLoss() {
+            return centipawnLoss;
+        }
+
+        public String getClassification() {
+            if (centipawnLoss >= BLUNDER) return "Blunder";
+            if (centipawnLoss >= MISTAKE) return "Mistake";
+            if (centipawnLoss >= INACCURACY) return "Inaccuracy";
+            return null;
+        }
+
+        // PGN numeric annotation glyph: $4 "??", $2 "?", $6 "?!".
+        public String getNag() {
+            if (centipawnLoss >= BLUNDER) return "$4";
+            if (centipawnLoss >= MISTAKE) return "$2";
+            if (centipawnLoss >= INACCURACY) return "$6";
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            String label = getClassification();
+            return String.format("%d%s %s  eval %s  best %s  loss %d%s", ply / 2 + 1, ply % 2 == 0 ? "." : "...",
+                    san, formatEval(evalAfter), bestSan, centipawnLoss, label == null ? "" : "  " + label);
+        }
+    }
+
+    private static class PositionResult {
+        final int score;
+        final String bestMove;
+
+        PositionResult(int score, String bestMove) {
+            this.score = score;
+            this.bestMove = bestMove;
+        }
+    }
+
+    private final List<String> moves;
+    private final int engineCount;
+    private final String goLimit;
+    private final PositionResult[] positions;
+    private final PlyAnalysis[] plies;
+    private final String[] sans;
+    private final String[] fens;
+    private volatile boolean cancelled;
+
+    // moves are in coordinate notation from the standard start position;
+    // goLimit is the UCI budget per position, e.g. "depth 18" or "nodes 2000000".
+    public GameAnalyzer(List<String> moves, int engineCount, String goLimit) {
+        this.moves = new ArrayList<>(moves);
+        this.engineCount = Math.max(1, Math.min(engineCount, moves.size() + 1));
+        this.goLimit = goLimit;
+        this.positions = new PositionResult[moves.size() + 1];
+        this.plies = new PlyAnalysis[moves.size()];
+        this.sans = new String[moves.size()];
+        this.fens = new String[moves.size() + 1];
+
+        SearchBoard board = new SearchBoard();
+        for (int i = 0; i < moves.size(); i++) {
+            fens[i] = board.toFen();
+            int move = board.parseUciMove(moves.get(i));
+            if (move == 0) {
+                throw new IllegalArgumentException("Illegal move " + moves.get(i) + " at ply " + (i + 1));
+            }
+            sans[i] = board.toSan(move);
+            board.makeMove(move);
+        }
+        fens[moves.size()] = board.toFen();
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public List<PlyAnalysis> analyze(Listener listener) throws IOException, InterruptedException {
+        File binary = UciEngine.extractStockfish();
+        AtomicInteger nextPosition = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(engineCount, runnable -> {
+            Thread thread = new Thread(runnable, "game-analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < engineCount; i++) {
+                futures.add(workers.submit(() -> {
+                    UciEngine engine = new UciEngine(binary);
+                    InfoLineParser parser = new InfoLineParser();
+                    try {
+                        // One search thread per process: parallelism comes from the processes.
+                        engine.setOption("Threads", 1);
+                        engine.setOption("Hash", 32);
+                        engine.send("ucinewgame");
+                        engine.waitReady();
+                        int index;
+                        while (!cancelled && (index = nextPosition.getAndIncrement()) < positions.length) {
+                            positionAnalyzed(index, analyzePosition(engine, parser, index), listener);
+                        }
+                    } finally {
+                        engine.close();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Engine analysis failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+
+        List<PlyAnalysis> result = new ArrayList<>();
+        for (PlyAnalysis ply : plies) {
+            if (ply != null) {
+                result.add(ply);
+            }
+        }
+        return result;
+    }
+
+    private PositionResult analyzePosition(UciEngine engine, InfoLineParser parser, int index) throws IOException {
+        StringBuilder position = new StringBuilder("position startpos");
+        if (index > 0) {
+            position.append(" moves ").append(String.join(" ", moves.subList(0, index)));
+        }
+        engine.send(position.toString());
+        engine.send("go " + goLimit);
+        Metrics.ENGINE_REQUESTS.incrementAndGet();
+        long startNanos = System.nanoTime();
+
+        int score = 0;
+        String line;
+        try {
+            while ((line = engine.readLine()) != null) {
+                if (line.startsWith("info")) {
+                    if (parser.parse(line) && !parser.isBound() && parser.getMultipv() == 1) {
+                        score = parser.getScore();
+                    }
+                } else if (line.startsWith("bestmove")) {
+                    String[] tokens = line.split(" ");
+                    String best = tokens.length > 1 && !tokens[1].equals("(none)") ? tokens[1] : null;
+                    return new PositionResult(score, best);
+                }
+            }
+        } finally {
+            Metrics.ENGINE_REQUEST.record(System.nanoTime() - startNanos);
+        }
+        throw new IOException("Engine exited while analysing ply " + index);
+    }
+
+    private synchronized void positionAnalyzed(int index, PositionResult result, Listener listener) {
+        positions[index] = result;
+        for (int ply = Math.max(0, index - 1); ply <= Math.min(index, plies.length - 1); ply++) {
+            if (plies[ply] == null && positions[ply] != null && positions[ply + 1] != null) {
+                plies[ply] = annotate(ply);
+                if (listener != null) {
+                    listener.plyAnalyzed(plies[ply]);
+                }
+            }
+        }
+    }
+
+    private PlyAnalysis annotate(int ply) {
+        PositionResult before = positions[ply];
+        PositionResult after = positions[ply + 1];
+        // before is from the mover's side, after from the opponent's.
+        int best = Math.max(-LOSS_CLAMP, Math.min(LOSS_CLAMP, before.score));
+        int played = Math.max(-LOSS_CLAMP, Math.min(LOSS_CLAMP, -after.score));
+        String move = moves.get(ply);
+        int loss = move.equals(before.bestMove) ? 0 : Math.max(0, best - played);
+
+        String bestSan = before.bestMove;
+        if (before.bestMove != null) {
+            SearchBoard board = new SearchBoard(fens[ply]);
+            int bestMove = board.parseUciMove(before.bestMove);
+            if (bestMove != 0) {
+                bestSan = board.toSan(bestMove);
+            }
+        }
+        int sign = ply % 2 == 0 ? 1 : -1;
+        return new PlyAnalysis(ply, move, sans[ply], before.bestMove, bestSan,
+                sign * before.score, -sign * after.score, loss);
+    }
+
+    static String formatEval(int whiteScore) {
+        if (Math.abs(whiteScore) > MATE_SCORE - 1000) {
+            int mateIn = MATE_SCORE - Math.abs(whiteScore);
+            return whiteScore > 0 ? "#" + mateIn : "#-" + mateIn;
+        }
+        return String.format("%.2f", whiteScore / 100.0);
+    }
+
+    // Writes the game with [%eval] comments, glyphs for inaccuracies,
+    // mistakes and blunders, and the engine's preferred move where it differs.
+    public void writePgn(Writer out, String white, String black, String result) throws IOException {
+        out.write("[Event \"Chess.java game\"]\n");
+        out.write("[Site \"Chess.java\"]\n");
+        out.write("[Date \"" + LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")) + "\"]\n");
+        out.write("[Round \"-\"]\n");
+        out.write("[White \"" + white + "\"]\n");
+        out.write("[Black \"" + black + "\"]\n");
+        out.write("[Result \"" + result + "\"]\n");
+        out.write("[Annotator \"Stockfish (" + goLimit + ")\"]\n\n");
+
+        StringBuilder line = new StringBuilder();
+        List<String> tokens = new ArrayList<>();
+        for (int ply = 0; ply < sans.length; ply++) {
+            if (ply % 2 == 0) {
+                tokens.add((ply / 2 + 1) + ".");
+            }
+            tokens.add(sans[ply]);
+            PlyAnalysis analysis = plies[ply];
+            if (analysis == null) {
+                continue;
+            }
+            if (analysis.getNag() != null) {
+                tokens.add(analysis.getNag());
+            }
+            tokens.add("{");
+            tokens.add("[%eval " + formatEval(analysis.getEvalAfter()) + "]");
+            if (analysis.getClassification() != null) {
+                tokens.addAll(Arrays.asList((analysis.getClassification() + ". " + analysis.getBestSan()
+                        + " was best, losing " + analysis.getCentipawnLoss() + " centipawns.").split(" ")));
+            }
+            tokens.add("}");
+            if (ply % 2 == 0 && ply + 1 < sans.length) {
+                tokens.add((ply / 2 + 1) + "...");
+            }
+        }
+        tokens.add(result);
+        for (String token : tokens) {
+            if (line.length() > 0 && line.length() + 1 + token.length() > 79) {
+                out.write(line.append('\n').toString());
+                line.setLength(0);
+            }
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(token);
+        }
+        out.write(line.append('\n').toString());
+        out.flush();
+    }
+
+    // java -cp chess-game.jar com.chessgame.GameAnalyzer moves.txt out.pgn [engines] [depth]
+    // moves.txt holds the game as whitespace-separated coordinate moves.
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: GameAnalyzer <moves file> <output pgn> [engines] [depth]");
+            return;
+        }
+        String text = new String(Files.readAllBytes(new File(args[0]).toPath())).trim();
+        List<String> moves = text.isEmpty() ? new ArrayList<>() : Arrays.asList(text.split("\\s+"));
+        int engines = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        String limit = "depth " + (args.length > 3 ? args[3] : "16");
+
+        GameAnalyzer analyzer = new GameAnalyzer(moves, engines, limit);
+        long start = System.nanoTime();
+        analyzer.analyze(System.out::println);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d positions on %d engines in %.1fs (%.2f positions/s)%n",
+                moves.size() + 1, engines, seconds, (moves.size() + 1) / seconds);
+        try (Writer out = new FileWriter(args[1])) {
+            analyzer.writePgn(out, "?", "?", "*");
+        }
+    }
+}
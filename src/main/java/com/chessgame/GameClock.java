@@ -0,0 +1,109 @@
+package com.chessgame;
+
+public final class GameClock {
+    private final long baseMillis;
+    private final long incrementMillis;
+    private final long delayMillis;
+    private long whiteRemainingMillis;
+    private long blackRemainingMillis;
+    private PieceColor running;
+    private long turnStartNanos;
+
+    // Base time plus Fischer increment (added after each move) and simple
+    // delay (the first delayMillis of every move are not charged).
+    public GameClock(long baseMillis, long incrementMillis, long delayMillis) {
+        this.baseMillis = baseMillis;
+        this.incrementMillis = incrementMillis;
+        this.delayMillis = delayMillis;
+        reset();
+    }
+
+    public synchronized void reset() {
+        whiteRemainingMillis = baseMillis;
+        blackRemainingMillis = baseMillis;
+        running = null;
+    }
+
+    // Sets both clocks, e.g. for a resumed game; negative values leave that
+    // side's clock as it is.
+    public synchronized void setRemainingMillis(long whiteMillis, long blackMillis) {
+        if (whiteMillis >= 0) {
+            whiteRemainingMillis = whiteMillis;
+        }
+        if (blackMillis >= 0) {
+            blackRemainingMillis = blackMillis;
+        }
+    }
+
+    public synchronized void start(PieceColor side) {
+        running = side;
+        turnStartNanos = System.nanoTime();
+    }
+
+    public synchronized void stop() {
+        if (running != null) {
+            charge(running);
+            running = null;
+        }
+    }
+
+    // Called once the mover has completed a move: charges the time used,
+    // adds the increment and starts the opponent's clock.
+    public synchronized void press(PieceColor mover) {
+        if (running != mover) {
+            return;
+        }
+        charge(mover);
+        if (mover == PieceColor.WHITE) {
+            whiteRemainingMillis += incrementMillis;
+        } else {
+            blackRemainingMillis += incrementMillis;
+        }
+        start(mover == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE);
+    }
+
+    private void charge(PieceColor side) {
+        long used = Math.max(0, (System.nanoTime() - turnStartNanos) / 1_000_000 - delayMillis);
+        if (side == PieceColor.WHITE) {
+            whiteRemainingMillis -= used;
+        } else {
+            blackRemainingMillis -= used;
+        }
+    }
+
+    public synchronized long getRemainingMillis(PieceColor side) {
+        long remaining = side == PieceColor.WHITE ? whiteRemainingMillis : blackRemainingMillis;
+        if (side == running) {
+            remaining -= Math.max(0, (System.nanoTime() - turnStartNanos) / 1_000_000 - delayMillis);
+        }
+        return Math.max(0, remaining);
+    }
+
+    public boolean isFlagged(PieceColor side) {
+        return getRemainingMillis(side) <= 0;
+    }
+
+    public synchronized PieceColor getRunningSide() {
+        return running;
+    }
+
+    public long getBaseMillis() {
+        return baseMillis;
+    }
+
+    public long getIncrementMillis() {
+        return incrementMillis;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    public static String format(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 10) {
+            return String.format("%d.%d", seconds, (millis % 1000) / 100);
+        }
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+}
@@ -0,0 +1,97 @@
+package com.chessgame;
+
+// Something that happened to a game, published by its GameActor. Events are
+// immutable and carry the snapshot of the position they refer to, so
+// subscribers never need to touch the game itself.
+public final class GameEvent {
+    public enum Type {
+        MOVE_PLAYED,
+        MOVE_REJECTED,
+        GAME_RESET,
+        CHECK,
+        GAME_OVER,
+        ENGINE_FAILED
+    }
+
+    private final Type type;
+    private final BoardSnapshot snapshot;
+    private final String move;
+    private final boolean engineMove;
+    private final String message;
+    private final String result;
+    private final long whiteMillis;
+    private final long blackMillis;
+    private final int score;
+
+    GameEvent(Type type, BoardSnapshot snapshot, String move, boolean engineMove, String message, String result) {
+        this(type, snapshot, move, engineMove, message, result, -1, -1, ChessGame.NO_SCORE);
+    }
+
+    GameEvent(Type type, BoardSnapshot snapshot, String move, boolean engineMove, String message, String result,
+              long whiteMillis, long blackMillis, int score) {
+        this.type = type;
+        this.snapshot = snapshot;
+        this.move = move;
+        this.engineMove = engineMove;
+        this.message = message;
+        this.result = result;
+        this.whiteMillis = whiteMillis;
+        this.blackMillis = blackMillis;
+        this.score = score;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // The move in coordinate notation, for MOVE_PLAYED and MOVE_REJECTED.
+    public String getMove() {
+        return move;
+    }
+
+    public boolean isEngineMove() {
+        return engineMove;
+    }
+
+    // The tablebase verdict for MOVE_PLAYED and GAME_RESET (null outside
+    // the tablebases), the reason for GAME_OVER, the error for ENGINE_FAILED.
+    public String getMessage() {
+        return message;
+    }
+
+    // "1-0", "0-1" or "1/2-1/2" for GAME_OVER, otherwise null.
+    public String getResult() {
+        return result;
+    }
+
+    // Clock readings after MOVE_PLAYED and GAME_RESET; -1 without a clock.
+    public long getWhiteMillis() {
+        return whiteMillis;
+    }
+
+    public long getBlackMillis() {
+        return blackMillis;
+    }
+
+    // White's advantage by the engine's search for an engine MOVE_PLAYED,
+    // otherwise ChessGame.NO_SCORE.
+    public int getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(type.name());
+        if (move != null) {
+            text.append(' ').append(move);
+        }
+        if (message != null) {
+            text.append(" (").append(message).append(')');
+        }
+        return text.toString();
+    }
+}
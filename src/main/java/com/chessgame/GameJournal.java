@@ -0,0 +1,314 @@
+package com.chessgame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Append-only binary record of one game, one file per game, so closing the
+// window or a crash loses at most the last commit window. A file is a
+// 13-byte header (magic, version, start time) followed by records of a
+// type byte, a fixed-size payload and the CRC32 of both:
+//
+//   MOVE (11 bytes): move (2: from | to << 6 | promotion << 12), the
+//       mover's clock after the move in millis (-1 untimed)
+//   TIME_CONTROL (17 bytes): base, increment and delay millis (4 each)
+//   RESULT (6 bytes): 1 = White won, 2 = Black won, 3 = draw, 0 = abandoned
+//
+// A torn or corrupt tail fails its CRC and is cut off when the game is
+// resumed. Appends only copy the record into a buffer. A shared writer
+// thread commits everything buffered once per chess.journal.syncMillis
+// (default 100), a group commit of one write and one fsync however many
+// moves arrived; -1 writes without fsync and leaves flushing to the OS.
+public class GameJournal implements Closeable {
+    public static final long SYNC_MILLIS = Long.getLong("chess.journal.syncMillis", 100);
+    static final int MAGIC = 0x434A4E4C;
+    static final byte VERSION = 1;
+    static final int HEADER_BYTES = 13;
+    static final byte MOVE = 1;
+    static final byte TIME_CONTROL = 2;
+    static final byte RESULT = 3;
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "game-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // What a journal holds: the game's moves in coordinate notation, the
+    // time control and each side's clock, and whether it was finished.
+    public static final class Saved {
+        private final File file;
+        private final List<String> moves = new ArrayList<>();
+        private long[] timeControl;
+        private final long[] remainingMillis = {-1, -1};
+        private boolean finished;
+        private long validBytes;
+
+        Saved(File file) {
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public List<String> getMoves() {
+            return moves;
+        }
+
+        // Base, increment and delay millis, or null for an untimed game.
+        public long[] getTimeControl() {
+            return timeControl;
+        }
+
+        // The side's clock after its last move, or -1 if it has not moved
+        // since the time control was set.
+        public long getRemainingMillis(PieceColor side) {
+            return remainingMillis[side == PieceColor.WHITE ? 0 : 1];
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private byte[] pending = new byte[512];
+    private int pendingBytes;
+    private byte[] spare = new byte[512];
+    private boolean commitScheduled;
+    private boolean closed;
+    private final Thread shutdownHook = new Thread(this::commit, "game-journal-shutdown");
+
+    private GameJournal(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // Starts a new journal in directory.
+    public static GameJournal create(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        long now = System.currentTimeMillis();
+        File file = new File(directory, String.format("game-%013d.journal", now));
+        for (int suffix = 1; !file.createNewFile(); suffix++) {
+            file = new File(directory, String.format("game-%013d-%d.journal", now, suffix));
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).put(VERSION).putLong(now);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        return new GameJournal(file, channel);
+    }
+
+    // Continues a saved journal after its last intact record.
+    public static GameJournal resume(Saved saved) throws IOException {
+        FileChannel channel = FileChannel.open(saved.file.toPath(), StandardOpenOption.WRITE);
+        channel.truncate(saved.validBytes);
+        channel.position(saved.validBytes);
+        return new GameJournal(saved.file, channel);
+    }
+
+    // The newest journal in directory if its game was never finished,
+    // otherwise null.
+    public static Saved findUnfinished(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("game-") && name.endsWith(".journal"));
+        if (files == null || files.length == 0) {
+            return null;
+        }
+        Arrays.sort(files);
+        try {
+            Saved saved = read(files[files.length - 1]);
+            return saved == null || saved.finished || saved.moves.isEmpty() ? null : saved;
+        } catch (IOException e) {
+            System.err.println("Cannot read game journal " + files[files.length - 1] + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Renames a journal that cannot be continued to <name>.rejected, out of
+    // findUnfinished()'s way but kept for a look.
+    public static void reject(Saved saved) {
+        File rejected = new File(saved.file.getPath() + ".rejected");
+        if (!saved.file.renameTo(rejected)) {
+            System.err.println("Cannot set aside game journal " + saved.file);
+        }
+    }
+
+    // Reads every intact record; null if the file is not a journal.
+    public static Saved read(File file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC || data.get() != VERSION) {
+            return null;
+        }
+        data.getLong();
+        Saved saved = new Saved(file);
+        CRC32 crc = new CRC32();
+        while (data.remaining() > 0) {
+            int start = data.position();
+            byte type = data.get();
+            int size = recordBytes(type);
+            if (size < 0 || data.remaining() < size - 1) {
+                break;
+            }
+            crc.reset();
+            crc.update(data.array(), start, size - 4);
+            data.position(start + size - 4);
+            if (data.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            data.position(start + 1);
+            if (type == MOVE) {
+                String move = SearchBoard.unpackUci(data.getShort() & 0xFFFF);
+                saved.remainingMillis[saved.moves.size() % 2] = data.getInt();
+                saved.moves.add(move);
+            } else if (type == TIME_CONTROL) {
+                saved.timeControl = new long[] {data.getInt(), data.getInt(), data.getInt()};
+                saved.remainingMillis[0] = -1;
+                saved.remainingMillis[1] = -1;
+            } else {
+                data.get();
+                saved.finished = true;
+            }
+            data.position(start + size);
+            saved.validBytes = data.position();
+        }
+        if (saved.validBytes == 0) {
+            saved.validBytes = HEADER_BYTES;
+        }
+        return saved;
+    }
+
+    private static int recordBytes(byte type) {
+        switch (type) {
+            case MOVE: return 11;
+            case TIME_CONTROL: return 17;
+            case RESULT: return 6;
+            default: return -1;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // remainingMillis is the mover's clock after the move, -1 if untimed.
+    public synchronized void appendMove(String uci, long remainingMillis) {
+        int start = reserve(MOVE);
+        int move = SearchBoard.packUci(uci);
+        pending[start + 1] = (byte) (move >>> 8);
+        pending[start + 2] = (byte) move;
+        putInt(start + 3, (int) Math.max(-1, Math.min(Integer.MAX_VALUE, remainingMillis)));
+        seal(start, 11);
+    }
+
+    public synchronized void appendTimeControl(long baseMillis, long incrementMillis, long delayMillis) {
+        int start = reserve(TIME_CONTROL);
+        putInt(start + 1, (int) baseMillis);
+        putInt(start + 5, (int) incrementMillis);
+        putInt(start + 9, (int) delayMillis);
+        seal(start, 17);
+    }
+
+    // "1-0", "0-1", "1/2-1/2", or null for a game given up unfinished.
+    public synchronized void appendResult(String result) {
+        int start = reserve(RESULT);
+        pending[start + 1] = result == null ? 0 : result.equals("1-0") ? (byte) 1 : result.equals("0-1") ? (byte) 2 : (byte) 3;
+        seal(start, 6);
+    }
+
+    // Commits what is buffered and closes the file.
+    @Override
+    public void close() {
+        commit();
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; the hook has committed.
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing game journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    private int reserve(byte type) {
+        int size = recordBytes(type);
+        if (pendingBytes + size > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingBytes + size));
+        }
+        int start = pendingBytes;
+        pending[start] = type;
+        return start;
+    }
+
+    private void seal(int start, int size) {
+        crc.reset();
+        crc.update(pending, start, size - 4);
+        putInt(start + size - 4, (int) crc.getValue());
+        pendingBytes = start + size;
+        if (!commitScheduled && !closed) {
+            commitScheduled = true;
+            WRITER.schedule(this::commit, Math.max(0, SYNC_MILLIS), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void putInt(int offset, int value) {
+        pending[offset] = (byte) (value >>> 24);
+        pending[offset + 1] = (byte) (value >>> 16);
+        pending[offset + 2] = (byte) (value >>> 8);
+        pending[offset + 3] = (byte) value;
+    }
+
+    // Writes and syncs everything appended so far. Appends made meanwhile
+    // go to the other buffer and wait for the next commit; commits from the
+    // writer, close and the shutdown hook take turns on the channel.
+    private void commit() {
+        synchronized (channel) {
+            byte[] batch;
+            int length;
+            synchronized (this) {
+                commitScheduled = false;
+                if (closed || pendingBytes == 0) {
+                    return;
+                }
+                batch = pending;
+                length = pendingBytes;
+                pending = spare;
+                spare = batch;
+                pendingBytes = 0;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch, 0, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (SYNC_MILLIS >= 0) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing game journal " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
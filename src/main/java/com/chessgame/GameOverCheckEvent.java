@@ -0,0 +1,24 @@
+package com.chessgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.chessgame.GameOverCheck")
+@Label("Game Over Check")
+@Description("A checkmate or stalemate test for one side")
+@Category({"Chess", "Game"})
+@Enabled(false)
+public class GameOverCheckEvent extends Event {
+    @Label("Check")
+    public String check;
+
+    @Label("Color")
+    public String color;
+
+    @Label("Result")
+    public boolean result;
+}
@@ -0,0 +1,87 @@
+package com.chessgame;
+
+import java.util.Arrays;
+import java.util.List;
+
+// A view of any ply of the game for stepping through its history. The game
+// is held as encoded moves on one SearchBoard, and seeking makes or unmakes
+// the moves between the current ply and the target, so a jump across a
+// whole 300-move game costs a few thousand make/unmake steps (tens of
+// microseconds) and allocates nothing. Not thread-safe; the GUI keeps it on
+// the EDT.
+public class HistoryCursor {
+    // SearchBoard keeps one undo entry per ply, up to its own limit.
+    public static final int MAX_PLIES = 1000;
+
+    private final SearchBoard board = new SearchBoard();
+    private int[] moves = new int[256];
+    private String[] sans = new String[256];
+    private List<String> history = List.of();
+    private int length;
+    private int ply;
+
+    // Follows the game to the given move list. Moves appended to the known
+    // history are encoded once; a history that does not extend the current
+    // one (a new game) replaces it. The displayed ply stays where it was
+    // unless it no longer exists.
+    public void setMoves(List<String> uciMoves) {
+        int common = 0;
+        int limit = Math.min(Math.min(uciMoves.size(), length), MAX_PLIES);
+        while (common < limit && uciMoves.get(common).equals(history.get(common))) {
+            common++;
+        }
+        int target = Math.min(ply, common);
+        seek(common);
+        length = common;
+        while (length < Math.min(uciMoves.size(), MAX_PLIES)) {
+            int move = board.parseUciMove(uciMoves.get(length));
+            if (move == 0) {
+                System.err.println("History stops at unknown move " + uciMoves.get(length));
+                break;
+            }
+            if (length == moves.length) {
+                moves = Arrays.copyOf(moves, length * 2);
+                sans = Arrays.copyOf(sans, length * 2);
+            }
+            moves[length] = move;
+            sans[length] = board.toSan(move);
+            board.makeMove(move);
+            length++;
+            ply++;
+        }
+        history = uciMoves;
+        seek(target);
+    }
+
+    public void seek(int target) {
+        target = Math.max(0, Math.min(length, target));
+        while (ply < target) {
+            board.makeMove(moves[ply++]);
+        }
+        while (ply > target) {
+            board.unmakeMove(moves[--ply]);
+        }
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isAtEnd() {
+        return ply == length;
+    }
+
+    // The move that led to the given ply (1-based), in SAN.
+    public String getSan(int ply) {
+        return sans[ply - 1];
+    }
+
+    // The displayed position; callers must not move on it.
+    public SearchBoard getBoard() {
+        return board;
+    }
+}
@@ -0,0 +1,192 @@
+package com.chessgame;
+
+// Parses UCI "info" lines in place. At high depth an engine sends thousands
+// of these a second, so the parser walks the characters of the line once
+// and keeps its results in reusable fields and a move buffer instead of
+// splitting the line into token strings. Moves are packed as from | to << 6
+// | promotion << 12, the SearchBoard encoding without flags. Not
+// thread-safe; each reader thread owns one parser.
+public class InfoLineParser {
+    public static final int MAX_PV = 64;
+
+    private int depth;
+    private int selDepth;
+    private int multipv;
+    private int score;
+    private boolean hasScore;
+    private boolean bound;
+    private long nodes;
+    private long nps;
+    private final int[] pv = new int[MAX_PV];
+    private int pvLength;
+
+    private String line;
+    private int position;
+    private int tokenStart;
+    private int tokenEnd;
+
+    // Returns true for lines carrying a score, the ones worth publishing.
+    public boolean parse(String line) {
+        this.line = line;
+        position = 0;
+        depth = 0;
+        selDepth = 0;
+        multipv = 1;
+        score = 0;
+        hasScore = false;
+        bound = false;
+        nodes = 0;
+        nps = 0;
+        pvLength = 0;
+        if (!nextToken() || !tokenEquals("info")) {
+            return false;
+        }
+        while (nextToken()) {
+            if (tokenEquals("depth")) {
+                depth = (int) nextNumber();
+            } else if (tokenEquals("seldepth")) {
+                selDepth = (int) nextNumber();
+            } else if (tokenEquals("multipv")) {
+                multipv = (int) nextNumber();
+            } else if (tokenEquals("nodes")) {
+                nodes = nextNumber();
+            } else if (tokenEquals("nps")) {
+                nps = nextNumber();
+            } else if (tokenEquals("score")) {
+                parseScore();
+            } else if (tokenEquals("lowerbound") || tokenEquals("upperbound")) {
+                bound = true;
+            } else if (tokenEquals("pv")) {
+                while (nextToken() && pvLength < MAX_PV) {
+                    int move = tokenMove();
+                    if (move < 0) {
+                        break;
+                    }
+                    pv[pvLength++] = move;
+                }
+                break;
+            } else if (tokenEquals("string")) {
+                break;
+            }
+        }
+        return hasScore;
+    }
+
+    // "score cp 35" or "score mate -3"; mates use GameAnalyzer's scale.
+    private void parseScore() {
+        if (!nextToken()) {
+            return;
+        }
+        boolean mate = tokenEquals("mate");
+        long value = nextNumber();
+        score = !mate ? (int) value
+                : value > 0 ? GameAnalyzer.MATE_SCORE - (int) value : -GameAnalyzer.MATE_SCORE - (int) value;
+        hasScore = true;
+    }
+
+    private boolean nextToken() {
+        int length = line.length();
+        while (position < length && line.charAt(position) == ' ') {
+            position++;
+        }
+        if (position >= length) {
+            return false;
+        }
+        tokenStart = position;
+        while (position < length && line.charAt(position) != ' ') {
+            position++;
+        }
+        tokenEnd = position;
+        return true;
+    }
+
+    private boolean tokenEquals(String word) {
+        return tokenEnd - tokenStart == word.length() && line.regionMatches(tokenStart, word, 0, word.length());
+    }
+
+    private long nextNumber() {
+        if (!nextToken()) {
+            return 0;
+        }
+        int i = tokenStart;
+        boolean negative = line.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        for (; i < tokenEnd; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    // The current token as a packed move, or -1 if it is not one.
+    private int tokenMove() {
+        int length = tokenEnd - tokenStart;
+        if (length != 4 && length != 5) {
+            return -1;
+        }
+        int from = square(tokenStart);
+        int to = square(tokenStart + 2);
+        if (from < 0 || to < 0) {
+            return -1;
+        }
+        int promotion = length == 5 ? " pnbrqk".indexOf(line.charAt(tokenStart + 4)) : 0;
+        if (promotion < 0 || (length == 5 && promotion < SearchBoard.KNIGHT)) {
+            return -1;
+        }
+        return SearchBoard.encodeMove(from, to, promotion, 0);
+    }
+
+    private int square(int index) {
+        int file = line.charAt(index) - 'a';
+        int rank = line.charAt(index + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            return -1;
+        }
+        return (7 - rank) * 8 + file;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSelDepth() {
+        return selDepth;
+    }
+
+    public int getMultipv() {
+        return multipv;
+    }
+
+    // Side-to-move centipawns, or +-(MATE_SCORE - moves) for mates.
+    public int getScore() {
+        return score;
+    }
+
+    // True when the score is only a lowerbound or upperbound from a failed
+    // aspiration window.
+    public boolean isBound() {
+        return bound;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getNps() {
+        return nps;
+    }
+
+    public int getPvLength() {
+        return pvLength;
+    }
+
+    public int getPvMove(int index) {
+        return pv[index];
+    }
+}
@@ -0,0 +1,21 @@
+package com.chessgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.chessgame.LegalMoves")
+@Label("Legal Move Computation")
+@Description("Legal moves computed for the piece on one square")
+@Category({"Chess", "Game"})
+@Enabled(false)
+public class LegalMovesEvent extends Event {
+    @Label("Square")
+    public String square;
+
+    @Label("Move Count")
+    public int moveCount;
+}
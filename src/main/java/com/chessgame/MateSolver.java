@@ -0,0 +1,365 @@
+package com.chessgame;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Proves or disproves "side to move mates in at most N moves" with
+// depth-first proof-number search (df-pn). Unlike alpha-beta it spends its
+// effort where the defender has the fewest replies and the attacker the most
+// forcing moves, and it stops as soon as the question is settled. The
+// attacker's remaining moves are part of every node, so the tree is finite
+// and repetitions cannot loop. N is tried from 1 upwards, so the first proof
+// found is the shortest mate.
+//
+//   java -cp chess-game.jar com.chessgame.MateSolver positions.epd [maxMoves] [maxNodes]
+//
+// runs the solver over an EPD file; "dm N" operations are checked against.
+public class MateSolver {
+    public static final int PROVEN = 0;
+    public static final int DISPROVEN = 1;
+    public static final int UNKNOWN = 2;
+    public static final int MAX_MOVES = 30;
+    static final int INFINITY = 100_000_000;
+
+    public static class Result {
+        private final int status;
+        private final int mateIn;
+        private final int[] pv;
+        private final long nodes;
+
+        Result(int status, int mateIn, int[] pv, long nodes) {
+            this.status = status;
+            this.mateIn = mateIn;
+            this.pv = pv;
+            this.nodes = nodes;
+        }
+
+        // PROVEN, DISPROVEN (no mate within the limit) or UNKNOWN (node
+        // limit reached or stopped).
+        public int getStatus() {
+            return status;
+        }
+
+        public int getMateIn() {
+            return mateIn;
+        }
+
+        public int[] getPv() {
+            return pv;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+    }
+
+    private final MateTable table;
+    private final int[][] moveBuffers = new int[2 * MAX_MOVES + 2][256];
+    private final int[][] proofBuffers = new int[2 * MAX_MOVES + 2][256];
+    private final int[][] disproofBuffers = new int[2 * MAX_MOVES + 2][256];
+    private int attacker;
+    private long nodes;
+    private long maxNodes;
+    private volatile boolean stopped;
+
+    public MateSolver() {
+        this(new MateTable(1 << 20));
+    }
+
+    public MateSolver(MateTable table) {
+        this.table = table;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    // The board is left as it was passed in. maxNodes of 0 means no limit.
+    public Result solve(SearchBoard board, int maxMoves, long maxNodes) {
+        stopped = false;
+        nodes = 0;
+        this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        attacker = board.getSideToMove();
+        for (int moves = 1; moves <= Math.min(maxMoves, MAX_MOVES); moves++) {
+            search(board, moves, 0, INFINITY, INFINITY);
+            if (stopped) {
+                return new Result(UNKNOWN, 0, new int[0], nodes);
+            }
+            long entry = table.probe(nodeKey(board), moves);
+            if (entry != -1L && MateTable.proof(entry) == 0) {
+                return new Result(PROVEN, moves, principalVariation(board, moves), nodes);
+            }
+        }
+        return new Result(DISPROVEN, 0, new int[0], nodes);
+    }
+
+    // Expands the node until its proof number reaches proofThreshold or its
+    // disproof number reaches disproofThreshold. Attacker nodes are OR
+    // nodes (one mating move suffices), defender nodes AND nodes.
+    private void search(SearchBoard board, int movesLeft, int ply, int proofThreshold, int disproofThreshold) {
+        if (++nodes > maxNodes) {
+            stopped = true;
+        }
+        if (stopped) {
+            return;
+        }
+        boolean attacking = board.getSideToMove() == attacker;
+        if (!attacking && movesLeft == 0) {
+            // Only reached at the root; below, the parent settles these.
+            boolean mated = board.isInCheck() && !hasLegalMove(board, moveBuffers[ply]);
+            table.store(nodeKey(board), movesLeft, mated ? 0 : INFINITY, mated ? INFINITY : 0);
+            return;
+        }
+        int childMovesLeft = attacking ? movesLeft - 1 : movesLeft;
+
+        // One pass makes each pseudo-legal move once, both to drop the
+        // illegal ones and to look the child up. Afterwards only the child
+        // just searched can have changed.
+        int[] moves = moveBuffers[ply];
+        int[] proofs = proofBuffers[ply];
+        int[] disproofs = disproofBuffers[ply];
+        int pseudoCount = board.generateMoves(moves, false);
+        int count = 0;
+        for (int i = 0; i < pseudoCount; i++) {
+            int move = moves[i];
+            board.makeMove(move);
+            if (board.leftKingInCheck()) {
+                board.unmakeMove(move);
+                continue;
+            }
+            moves[count] = move;
+            long entry = table.probe(nodeKey(board), childMovesLeft);
+            if (entry != -1L) {
+                proofs[count] = MateTable.proof(entry);
+                disproofs[count] = MateTable.disproof(entry);
+            } else if (attacking && childMovesLeft == 0) {
+                // The attacker's last move: only a check can mate, and
+                // whether it does is settled here, without a child search.
+                boolean mates = board.isInCheck() && !hasLegalMove(board, moveBuffers[ply + 1]);
+                proofs[count] = mates ? 0 : INFINITY;
+                disproofs[count] = mates ? INFINITY : 0;
+                table.store(nodeKey(board), 0, proofs[count], disproofs[count]);
+            } else {
+                // Checks are the likeliest way to a forced mate.
+                proofs[count] = attacking && !board.isInCheck() ? 2 : 1;
+                disproofs[count] = 1;
+            }
+            board.unmakeMove(move);
+            count++;
+        }
+        if (count == 0) {
+            boolean mated = !attacking && board.isInCheck();
+            table.store(nodeKey(board), movesLeft, mated ? 0 : INFINITY, mated ? INFINITY : 0);
+            return;
+        }
+
+        while (true) {
+            int proof = attacking ? INFINITY : 0;
+            int disproof = attacking ? 0 : INFINITY;
+            int best = -1;
+            int second = INFINITY;
+            for (int i = 0; i < count; i++) {
+                // The number this node minimises over its children.
+                int selector = attacking ? proofs[i] : disproofs[i];
+                if (best < 0 || selector < (attacking ? proofs[best] : disproofs[best])) {
+                    if (best >= 0) {
+                        second = attacking ? proofs[best] : disproofs[best];
+                    }
+                    best = i;
+                } else if (selector < second) {
+                    second = selector;
+                }
+                if (attacking) {
+                    proof = Math.min(proof, proofs[i]);
+                    disproof = add(disproof, disproofs[i]);
+                } else {
+                    proof = add(proof, proofs[i]);
+                    disproof = Math.min(disproof, disproofs[i]);
+                }
+            }
+            table.store(nodeKey(board), movesLeft, proof, disproof);
+            if (proof >= proofThreshold || disproof >= disproofThreshold) {
+                return;
+            }
+
+            int childProofThreshold;
+            int childDisproofThreshold;
+            if (attacking) {
+                childProofThreshold = Math.min(proofThreshold, add(second, 1));
+                childDisproofThreshold = add(subtract(disproofThreshold, disproof), disproofs[best]);
+            } else {
+                childProofThreshold = add(subtract(proofThreshold, proof), proofs[best]);
+                childDisproofThreshold = Math.min(disproofThreshold, add(second, 1));
+            }
+            board.makeMove(moves[best]);
+            search(board, childMovesLeft, ply + 1, childProofThreshold, childDisproofThreshold);
+            long entry = table.probe(nodeKey(board), childMovesLeft);
+            board.unmakeMove(moves[best]);
+            if (stopped) {
+                return;
+            }
+            if (entry != -1L) {
+                proofs[best] = MateTable.proof(entry);
+                disproofs[best] = MateTable.disproof(entry);
+            }
+        }
+    }
+
+    // Stops at the first legal move instead of generating them all.
+    private static boolean hasLegalMove(SearchBoard board, int[] buffer) {
+        int count = board.generateMoves(buffer, false);
+        for (int i = 0; i < count; i++) {
+            board.makeMove(buffer[i]);
+            boolean legal = !board.leftKingInCheck();
+            board.unmakeMove(buffer[i]);
+            if (legal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Proofs only hold for one attacking side, and a table may be reused
+    // for positions with either side to move.
+    private long nodeKey(SearchBoard board) {
+        return attacker == SearchBoard.WHITE ? board.getKey() : ~board.getKey();
+    }
+
+    private static int add(int a, int b) {
+        return a >= INFINITY || b >= INFINITY ? INFINITY : Math.min(INFINITY, a + b);
+    }
+
+    private static int subtract(int a, int b) {
+        return a >= INFINITY ? INFINITY : a - b;
+    }
+
+    // Follows proven children: any mating choice for the attacker and, for
+    // the defender, the reply that still needs the most attacker moves.
+    private int[] principalVariation(SearchBoard board, int mateIn) {
+        SearchBoard line = new SearchBoard(board);
+        int[] pv = new int[2 * mateIn];
+        int length = 0;
+        int movesLeft = mateIn;
+        int[] moves = new int[256];
+        while (length < pv.length) {
+            boolean attacking = line.getSideToMove() == attacker;
+            int count = line.generateLegalMoves(moves);
+            int chosen = 0;
+            int chosenMovesLeft = attacking ? movesLeft : -1;
+            int chosenRank = -1;
+            for (int i = 0; i < count; i++) {
+                line.makeMove(moves[i]);
+                if (attacking) {
+                    // The fastest proven mate for the attacker.
+                    for (int left = 0; left < chosenMovesLeft; left++) {
+                        long entry = table.probe(nodeKey(line), left);
+                        if (entry != -1L && MateTable.proof(entry) == 0) {
+                            chosen = moves[i];
+                            chosenMovesLeft = left;
+                            break;
+                        }
+                    }
+                } else {
+                    // The slowest defence: the smallest budget it is proven
+                    // against, maximised over replies. Between equal budgets
+                    // a reply disproven with one move less is known to hold
+                    // out, where an unsolved one may just not have been
+                    // searched.
+                    for (int left = 0; left <= movesLeft; left++) {
+                        long entry = table.probe(nodeKey(line), left);
+                        if (entry != -1L && MateTable.proof(entry) == 0) {
+                            long shorter = left > 0 ? table.probe(nodeKey(line), left - 1) : -1L;
+                            int rank = 2 * left + (shorter != -1L && MateTable.disproof(shorter) == 0 ? 1 : 0);
+                            if (rank > chosenRank) {
+                                chosen = moves[i];
+                                chosenMovesLeft = left;
+                                chosenRank = rank;
+                            }
+                            break;
+                        }
+                    }
+                }
+                line.unmakeMove(moves[i]);
+            }
+            if (chosen == 0) {
+                break;
+            }
+            pv[length++] = chosen;
+            line.makeMove(chosen);
+            movesLeft = chosenMovesLeft;
+        }
+        return Arrays.copyOf(pv, length);
+    }
+
+    // The line in SAN, numbered from the given position.
+    public static String formatLine(SearchBoard board, int[] pv) {
+        SearchBoard line = new SearchBoard(board);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pv.length; i++) {
+            boolean white = line.getSideToMove() == SearchBoard.WHITE;
+            if (white || i == 0) {
+                text.append(line.getFullmoveNumber()).append(white ? ". " : "... ");
+            }
+            text.append(line.toSan(pv[i])).append(' ');
+            line.makeMove(pv[i]);
+        }
+        return text.toString().trim();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MateSolver positions.epd [maxMoves] [maxNodes]");
+            return;
+        }
+        int maxMoves = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long maxNodes = args.length > 2 ? Long.parseLong(args[2]) : 10_000_000L;
+        MateSolver solver = new MateSolver();
+        int positions = 0;
+        int proven = 0;
+        int wrong = 0;
+        long totalNodes = 0;
+        long start = System.nanoTime();
+        try (BufferedReader reader = new BufferedReader(new FileReader(args[0]))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length < 4) {
+                    continue;
+                }
+                SearchBoard board = new SearchBoard(String.join(" ", fields[0], fields[1], fields[2], fields[3]));
+                int expected = -1;
+                for (int i = 4; i + 1 < fields.length; i++) {
+                    if (fields[i].equals("dm")) {
+                        expected = Integer.parseInt(fields[i + 1].replace(";", ""));
+                    }
+                }
+                long positionStart = System.nanoTime();
+                Result result = solver.solve(board, expected > 0 ? Math.max(expected, maxMoves) : maxMoves, maxNodes);
+                long millis = (System.nanoTime() - positionStart) / 1_000_000;
+                positions++;
+                totalNodes += result.getNodes();
+                String outcome;
+                if (result.getStatus() == PROVEN) {
+                    proven++;
+                    outcome = "mate in " + result.getMateIn() + ": " + formatLine(board, result.getPv());
+                } else {
+                    outcome = result.getStatus() == DISPROVEN ? "no mate in " + maxMoves : "unknown (node limit)";
+                }
+                if (expected > 0 && (result.getStatus() != PROVEN || result.getMateIn() != expected)) {
+                    wrong++;
+                    outcome += "  [expected dm " + expected + "]";
+                }
+                System.out.printf("%-10s %,10d nodes %6d ms  %s  %s%n", result.getStatus() == PROVEN ? "PROVEN" : "-",
+                        result.getNodes(), millis, outcome, board.toFen());
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d/%d positions proven, %d differ from dm, %,d nodes, %.1fs (%,.0f nodes/s)%n",
+                proven, positions, wrong, totalNodes, elapsedSeconds, totalNodes / Math.max(elapsedSeconds, 1e-9));
+    }
+}
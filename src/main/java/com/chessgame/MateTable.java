@@ -0,0 +1,52 @@
+package com.chessgame;
+
+import java.util.Arrays;
+
+// Proof and disproof numbers for the mate solver. A position with n attacker
+// moves left is a different node from the same position with n - 1, so the
+// remaining move count is folded into the key. Each slot packs both numbers
+// into one long; newer entries always replace older ones.
+public class MateTable {
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+
+    // entries is rounded down to a power of two.
+    public MateTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        this.keys = new long[size];
+        this.entries = new long[size];
+        this.mask = size - 1;
+    }
+
+    private static long nodeKey(long key, int movesLeft) {
+        return key ^ (movesLeft + 1) * 0x9E3779B97F4A7C15L;
+    }
+
+    // Returns the packed entry, or -1 if there is none.
+    public long probe(long key, int movesLeft) {
+        long nodeKey = nodeKey(key, movesLeft);
+        int slot = (int) nodeKey & mask;
+        return keys[slot] == nodeKey ? entries[slot] : -1L;
+    }
+
+    public void store(long key, int movesLeft, int proof, int disproof) {
+        long nodeKey = nodeKey(key, movesLeft);
+        int slot = (int) nodeKey & mask;
+        keys[slot] = nodeKey;
+        entries[slot] = ((long) proof << 32) | (disproof & 0xFFFFFFFFL);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(entries, 0L);
+    }
+
+    public static int proof(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    public static int disproof(long entry) {
+        return (int) entry;
+    }
+}
@@ -0,0 +1,177 @@
+package com.chessgame;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Process-wide latency histograms and counters. They are published as MBeans
+// under the "com.chessgame" domain by start(), and printed every N seconds
+// when the chess.metrics.dumpSeconds system property is set.
+public final class Metrics implements MetricsMXBean {
+    public static final LatencyHistogram ENGINE_REQUEST = new LatencyHistogram("engineRequest");
+    public static final LatencyHistogram ENGINE_READY = new LatencyHistogram("engineReady");
+    public static final LatencyHistogram MOVE_VALIDATION = new LatencyHistogram("moveValidation");
+    public static final LatencyHistogram GAME_STATE_CHECK = new LatencyHistogram("gameStateCheck");
+    public static final LatencyHistogram BOARD_REFRESH = new LatencyHistogram("boardRefresh");
+
+    public static final AtomicLong ENGINE_REQUESTS = new AtomicLong();
+    public static final AtomicLong BYTES_SENT_TO_ENGINE = new AtomicLong();
+    public static final AtomicLong BYTES_RECEIVED_FROM_ENGINE = new AtomicLong();
+    public static final AtomicLong ENGINE_DEADLINE_MISSES = new AtomicLong();
+    public static final AtomicLong ENGINE_RESTARTS = new AtomicLong();
+    public static final AtomicLong ENGINE_FALLBACK_MOVES = new AtomicLong();
+
+    private static final LatencyHistogram[] HISTOGRAMS = {
+        ENGINE_REQUEST, ENGINE_READY, MOVE_VALIDATION, GAME_STATE_CHECK, BOARD_REFRESH
+    };
+    private static final Metrics INSTANCE = new Metrics();
+    private static boolean started = false;
+
+    private Metrics() {
+    }
+
+    public static synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName("com.chessgame:type=Metrics"));
+            for (LatencyHistogram histogram : HISTOGRAMS) {
+                server.registerMBean(histogram, new ObjectName("com.chessgame:type=Latency,name=" + histogram.getName()));
+            }
+        } catch (JMException e) {
+            System.err.println("Failed to register metrics MBeans: " + e.getMessage());
+        }
+
+        long dumpSeconds = Long.getLong("chess.metrics.dumpSeconds", 0);
+        if (dumpSeconds > 0) {
+            ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dumper.scheduleAtFixedRate(() -> System.out.println(INSTANCE.getSnapshot()),
+                    dumpSeconds, dumpSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public long getEngineRequests() {
+        return ENGINE_REQUESTS.get();
+    }
+
+    @Override
+    public long getBytesSentToEngine() {
+        return BYTES_SENT_TO_ENGINE.get();
+    }
+
+    @Override
+    public long getBytesReceivedFromEngine() {
+        return BYTES_RECEIVED_FROM_ENGINE.get();
+    }
+
+    @Override
+    public long getEngineDeadlineMisses() {
+        return ENGINE_DEADLINE_MISSES.get();
+    }
+
+    @Override
+    public long getEngineRestarts() {
+        return ENGINE_RESTARTS.get();
+    }
+
+    @Override
+    public long getEngineFallbackMoves() {
+        return ENGINE_FALLBACK_MOVES.get();
+    }
+
+    @Override
+    public long getMoveAttempts() {
+        return MOVE_VALIDATION.getCount();
+    }
+
+    @Override
+    public long getGameStateChecks() {
+        return GAME_STATE_CHECK.getCount();
+    }
+
+    @Override
+    public long getBoardRefreshes() {
+        return BOARD_REFRESH.getCount();
+    }
+
+    @Override
+    public String getSnapshot() {
+        StringBuilder snapshot = new StringBuilder("[metrics] engineRequests=").append(getEngineRequests())
+                .append(" bytesSent=").append(getBytesSentToEngine())
+                .append(" bytesReceived=").append(getBytesReceivedFromEngine())
+                .append(" deadlineMisses=").append(getEngineDeadlineMisses())
+                .append(" restarts=").append(getEngineRestarts())
+                .append(" fallbackMoves=").append(getEngineFallbackMoves());
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            snapshot.append(System.lineSeparator()).append("[metrics] ").append(histogram);
+        }
+        return snapshot.toString();
+    }
+
+    public static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        public CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                counter.incrementAndGet();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                counter.addAndGet(read);
+            }
+            return read;
+        }
+    }
+
+    public static class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong counter;
+
+        public CountingOutputStream(OutputStream out, AtomicLong counter) {
+            super(out);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            counter.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            counter.addAndGet(length);
+        }
+    }
+}
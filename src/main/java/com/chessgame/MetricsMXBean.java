@@ -0,0 +1,23 @@
+package com.chessgame;
+
+public interface MetricsMXBean {
+    long getEngineRequests();
+
+    long getBytesSentToEngine();
+
+    long getBytesReceivedFromEngine();
+
+    long getEngineDeadlineMisses();
+
+    long getEngineRestarts();
+
+    long getEngineFallbackMoves();
+
+    long getMoveAttempts();
+
+    long getGameStateChecks();
+
+    long getBoardRefreshes();
+
+    String getSnapshot();
+}
@@ -0,0 +1,24 @@
+package com.chessgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.chessgame.MoveAttempt")
+@Label("Move Attempt")
+@Description("A move submitted to ChessGame.makeMove, legal or not")
+@Category({"Chess", "Game"})
+@Enabled(false)
+public class MoveAttemptEvent extends Event {
+    @Label("From")
+    public String from;
+
+    @Label("To")
+    public String to;
+
+    @Label("Accepted")
+    public boolean accepted;
+}
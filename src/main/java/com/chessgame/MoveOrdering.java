@@ -0,0 +1,58 @@
+package com.chessgame;
+
+// Scores moves so the search tries the likeliest cutoffs first: the hash
+// move, then captures that do not lose material by MVV-LVA (most valuable
+// victim, least valuable attacker), killers, quiet moves by history, and
+// finally captures that static exchange evaluation says lose material.
+public final class MoveOrdering {
+    static final int HASH_MOVE = 1_000_000;
+    static final int GOOD_CAPTURE = 500_000;
+    static final int KILLER = 400_000;
+    static final int BAD_CAPTURE = -500_000;
+
+    private MoveOrdering() {
+    }
+
+    public static int mvvLva(SearchBoard board, int move) {
+        int victim = board.getCapturedPiece(move) & 7;
+        int attacker = board.getPiece(SearchBoard.from(move)) & 7;
+        return victim * 10 - attacker + SearchBoard.promotion(move) * 10;
+    }
+
+    public static boolean isTactical(SearchBoard board, int move) {
+        return board.getCapturedPiece(move) != SearchBoard.EMPTY || SearchBoard.promotion(move) != 0;
+    }
+
+    public static void score(SearchBoard board, int[] moves, int[] scores, int count,
+                             int hashMove, int killer1, int killer2, int[] history) {
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (move == hashMove) {
+                scores[i] = HASH_MOVE;
+            } else if (isTactical(board, move)) {
+                scores[i] = (board.see(move) >= 0 ? GOOD_CAPTURE : BAD_CAPTURE) + mvvLva(board, move);
+            } else if (move == killer1 || move == killer2) {
+                scores[i] = KILLER - (move == killer1 ? 0 : 1);
+            } else {
+                scores[i] = history == null ? 0 : history[move & 4095];
+            }
+        }
+    }
+
+    // Selection sort step: moves the best remaining move to index.
+    public static int pickNext(int[] moves, int[] scores, int index, int count) {
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        moves[best] = moves[index];
+        moves[index] = move;
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        return move;
+    }
+}
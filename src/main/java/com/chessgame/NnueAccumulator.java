@@ -0,0 +1,73 @@
+package com.chessgame;
+
+// First-layer sums for both points of view, kept in step with a SearchBoard
+// that it is attached to. Piece moves become a few column adds/subtracts; a
+// king crossing into another bucket only marks that side's half stale, and
+// it is rebuilt from the board when next read.
+public class NnueAccumulator {
+    private final NnueNetwork network;
+    private final NnueKernel kernel;
+    private final short[][] values;
+    private final int[] bucket = new int[2];
+    private final boolean[] stale = {true, true};
+
+    public NnueAccumulator(NnueNetwork network, NnueKernel kernel) {
+        this.network = network;
+        this.kernel = kernel;
+        this.values = new short[2][network.hidden];
+    }
+
+    void invalidate() {
+        stale[0] = true;
+        stale[1] = true;
+    }
+
+    void pieceAdded(int piece, int square) {
+        if ((piece & 7) == SearchBoard.KING) {
+            int color = piece >> 3;
+            if (NnueNetwork.kingBucket(color, square) != bucket[color]) {
+                stale[color] = true;
+            }
+            return;
+        }
+        for (int perspective = 0; perspective < 2; perspective++) {
+            if (!stale[perspective]) {
+                kernel.add(values[perspective], network.featureWeights,
+                        network.featureOffset(perspective, bucket[perspective], piece, square));
+            }
+        }
+    }
+
+    void pieceRemoved(int piece, int square) {
+        if ((piece & 7) == SearchBoard.KING) {
+            return;
+        }
+        for (int perspective = 0; perspective < 2; perspective++) {
+            if (!stale[perspective]) {
+                kernel.subtract(values[perspective], network.featureWeights,
+                        network.featureOffset(perspective, bucket[perspective], piece, square));
+            }
+        }
+    }
+
+    short[] get(SearchBoard board, int perspective) {
+        if (stale[perspective]) {
+            refresh(board, perspective);
+        }
+        return values[perspective];
+    }
+
+    private void refresh(SearchBoard board, int perspective) {
+        short[] accumulator = values[perspective];
+        System.arraycopy(network.featureBias, 0, accumulator, 0, accumulator.length);
+        bucket[perspective] = NnueNetwork.kingBucket(perspective, board.getKingSquare(perspective));
+        for (int square = 0; square < 64; square++) {
+            int piece = board.getPiece(square);
+            if (piece != SearchBoard.EMPTY && (piece & 7) != SearchBoard.KING) {
+                kernel.add(accumulator, network.featureWeights,
+                        network.featureOffset(perspective, bucket[perspective], piece, square));
+            }
+        }
+        stale[perspective] = false;
+    }
+}
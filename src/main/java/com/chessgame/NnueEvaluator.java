@@ -0,0 +1,42 @@
+package com.chessgame;
+
+import java.io.IOException;
+
+// Drop-in replacement for the hand-written Evaluator. Boards must be
+// attached with attach() so their accumulators follow make/unmake.
+public class NnueEvaluator extends Evaluator {
+    private final NnueNetwork network;
+    private final NnueKernel kernel;
+
+    public NnueEvaluator(NnueNetwork network, NnueKernel kernel) {
+        super(new PawnHashTable(1));
+        this.network = network;
+        this.kernel = kernel;
+    }
+
+    public static NnueEvaluator loadDefault() throws IOException {
+        return new NnueEvaluator(NnueNetwork.loadResource(NnueNetwork.DEFAULT_RESOURCE), NnueKernel.best());
+    }
+
+    public NnueKernel getKernel() {
+        return kernel;
+    }
+
+    public void attach(SearchBoard board) {
+        board.setAccumulator(new NnueAccumulator(network, kernel));
+    }
+
+    @Override
+    public int evaluate(SearchBoard board) {
+        NnueAccumulator accumulator = board.getAccumulator();
+        if (accumulator == null) {
+            attach(board);
+            accumulator = board.getAccumulator();
+        }
+        int us = board.getSideToMove();
+        int output = kernel.clippedDot(accumulator.get(board, us), network.clampMax, network.outputWeights, 0)
+                + kernel.clippedDot(accumulator.get(board, us ^ 1), network.clampMax, network.outputWeights, network.hidden)
+                + network.outputBias;
+        return output * network.outputScale / 1024;
+    }
+}
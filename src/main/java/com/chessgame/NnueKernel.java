@@ -0,0 +1,25 @@
+package com.chessgame;
+
+// The int16 arithmetic behind NNUE evaluation. The scalar version is the
+// reference; the vector version is used when jdk.incubator.vector is present.
+public interface NnueKernel {
+    // accumulator[i] += weights[offset + i] for every hidden neuron.
+    void add(short[] accumulator, short[] weights, int offset);
+
+    // accumulator[i] -= weights[offset + i] for every hidden neuron.
+    void subtract(short[] accumulator, short[] weights, int offset);
+
+    // Sum of clamp(input[i], 0, clampMax) * weights[offset + i].
+    int clippedDot(short[] input, short clampMax, short[] weights, int offset);
+
+    static NnueKernel best() {
+        if (!Boolean.getBoolean("chess.nnue.scalar")) {
+            try {
+                return (NnueKernel) Class.forName("com.chessgame.VectorNnueKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Started without --add-modules jdk.incubator.vector.
+            }
+        }
+        return new ScalarNnueKernel();
+    }
+}
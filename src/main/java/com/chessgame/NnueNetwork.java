@@ -0,0 +1,158 @@
+package com.chessgame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Weights of a small HalfKP-style network: for each side's point of view,
+// every non-king piece is a feature indexed by the viewer's king bucket, the
+// piece type and colour relative to the viewer, and the square (flipped for
+// black). The features feed an int16 hidden layer, clipped to [0, clampMax],
+// whose two halves (side to move first) feed a single output neuron.
+public class NnueNetwork {
+    public static final String DEFAULT_RESOURCE = "/nnue/default.nnue.gz";
+    public static final int KING_BUCKETS = 4;
+    public static final int FEATURES_PER_BUCKET = 10 * 64;
+
+    private static final int MAGIC = 0x4E4E5545;
+    private static final int VERSION = 1;
+
+    final int hidden;
+    final short clampMax;
+    // Centipawns per 1024 units of output.
+    final int outputScale;
+    final short[] featureBias;
+    final short[] featureWeights;
+    final short[] outputWeights;
+    final int outputBias;
+
+    NnueNetwork(int hidden, short clampMax, int outputScale, short[] featureBias,
+                short[] featureWeights, short[] outputWeights, int outputBias) {
+        this.hidden = hidden;
+        this.clampMax = clampMax;
+        this.outputScale = outputScale;
+        this.featureBias = featureBias;
+        this.featureWeights = featureWeights;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+        for (short weight : outputWeights) {
+            if (Math.abs(weight) * clampMax > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Output weight " + weight + " overflows int16 products");
+            }
+        }
+    }
+
+    public static NnueNetwork loadResource(String name) throws IOException {
+        InputStream in = NnueNetwork.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Network resource not found: " + name);
+        }
+        try (InputStream stream = name.endsWith(".gz") ? new GZIPInputStream(in) : in) {
+            return load(stream);
+        }
+    }
+
+    public static NnueNetwork load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a version " + VERSION + " network file");
+        }
+        int buckets = data.readInt();
+        int hidden = data.readInt();
+        short clampMax = (short) data.readInt();
+        int outputScale = data.readInt();
+        if (buckets != KING_BUCKETS || hidden <= 0) {
+            throw new IOException("Unsupported network shape: " + buckets + " buckets, " + hidden + " hidden");
+        }
+        short[] featureBias = readShorts(data, hidden);
+        short[] featureWeights = readShorts(data, KING_BUCKETS * FEATURES_PER_BUCKET * hidden);
+        short[] outputWeights = readShorts(data, 2 * hidden);
+        int outputBias = data.readInt();
+        return new NnueNetwork(hidden, clampMax, outputScale, featureBias, featureWeights, outputWeights, outputBias);
+    }
+
+    private static short[] readShorts(DataInputStream data, int count) throws IOException {
+        short[] values = new short[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = data.readShort();
+        }
+        return values;
+    }
+
+    public void save(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(KING_BUCKETS);
+        data.writeInt(hidden);
+        data.writeInt(clampMax);
+        data.writeInt(outputScale);
+        for (short value : featureBias) data.writeShort(value);
+        for (short value : featureWeights) data.writeShort(value);
+        for (short value : outputWeights) data.writeShort(value);
+        data.writeInt(outputBias);
+        data.flush();
+    }
+
+    public int getHidden() {
+        return hidden;
+    }
+
+    // Offset of a feature's weight column in featureWeights.
+    int featureOffset(int perspective, int bucket, int piece, int square) {
+        int relative = (piece >> 3) == perspective ? 0 : 1;
+        int oriented = perspective == SearchBoard.WHITE ? square : square ^ 56;
+        return ((bucket * 10 + ((piece & 7) - 1) * 2 + relative) * 64 + oriented) * hidden;
+    }
+
+    // Kings on the queen or king side, on or off their first two ranks.
+    static int kingBucket(int perspective, int kingSquare) {
+        int oriented = perspective == SearchBoard.WHITE ? kingSquare : kingSquare ^ 56;
+        return ((oriented & 7) >= 4 ? 1 : 0) + ((oriented >> 3) >= 6 ? 0 : 2);
+    }
+
+    // Builds a network that reproduces the averaged middlegame/endgame
+    // material and piece-square values of the Evaluator, in 8 centipawn
+    // steps. It is the default until a trained network replaces it: each
+    // hidden neuron sums one piece type on a pair of files, own pieces in
+    // the first 20 neurons and enemy pieces in the next 20.
+    static NnueNetwork fromEvaluatorTables(int hidden) {
+        short[] featureWeights = new short[KING_BUCKETS * FEATURES_PER_BUCKET * hidden];
+        NnueNetwork network = new NnueNetwork(hidden, (short) 255, 4096, new short[hidden],
+                featureWeights, new short[2 * hidden], 0);
+        for (int bucket = 0; bucket < KING_BUCKETS; bucket++) {
+            for (int type = SearchBoard.PAWN; type <= SearchBoard.QUEEN; type++) {
+                for (int square = 0; square < 64; square++) {
+                    int value = (Evaluator.MG_MATERIAL[type] + Evaluator.MG_PST[type][square]
+                            + Evaluator.EG_MATERIAL[type] + Evaluator.EG_PST[type][square]) / 2;
+                    int group = (type - 1) * 4 + (square & 7) / 2;
+                    // A white piece seen by white, and its mirror seen by black.
+                    int own = network.featureOffset(SearchBoard.WHITE, bucket, type, square);
+                    featureWeights[own + group] = (short) Math.round(value / 8.0);
+                    int enemy = network.featureOffset(SearchBoard.WHITE, bucket, type | SearchBoard.BLACK_FLAG, square ^ 56);
+                    featureWeights[enemy + 20 + group] = (short) Math.round(value / 8.0);
+                }
+            }
+        }
+        for (int neuron = 0; neuron < 40; neuron++) {
+            network.outputWeights[neuron] = (short) (neuron < 20 ? 1 : -1);
+            network.outputWeights[hidden + neuron] = (short) (neuron < 20 ? -1 : 1);
+        }
+        return network;
+    }
+
+    // Writes the default network resource:
+    //   java -cp target/classes com.chessgame.NnueNetwork src/main/resources/nnue/default.nnue.gz
+    public static void main(String[] args) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(args[0]))) {
+            fromEvaluatorTables(64).save(out);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.chessgame;
+
+import java.util.Arrays;
+
+// Fixed-size, always-replace cache of pawn-structure terms keyed by the
+// pawn-only Zobrist key. Each slot holds the middlegame/endgame structure
+// score and, for both colours, the king shield value for each king file, so
+// entries stay valid however the kings move. Not thread-safe: use one table
+// per searching thread.
+public class PawnHashTable {
+    public static final int DEFAULT_ENTRIES = 1 << 14;
+    // mg, eg, then the shields: white in the low half, black in the high half.
+    private static final int STRIDE = 10;
+
+    private final long[] keys;
+    private final boolean[] filled;
+    private final int[] values;
+    private final int mask;
+    private long hits;
+    private long misses;
+    private long overwrites;
+
+    public PawnHashTable() {
+        this(DEFAULT_ENTRIES);
+    }
+
+    // entries is rounded down to a power of two.
+    public PawnHashTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        keys = new long[size];
+        filled = new boolean[size];
+        values = new int[size * STRIDE];
+        mask = size - 1;
+    }
+
+    // Returns the slot holding key, or ~slot (a negative number) for the slot
+    // the caller should fill with store() on a miss.
+    public int probe(long key) {
+        int slot = (int) key & mask;
+        if (filled[slot] && keys[slot] == key) {
+            hits++;
+            return slot;
+        }
+        misses++;
+        return ~slot;
+    }
+
+    public void store(int slot, long key, int mg, int eg) {
+        if (filled[slot] && keys[slot] != key) {
+            overwrites++;
+        }
+        keys[slot] = key;
+        filled[slot] = true;
+        values[slot * STRIDE] = mg;
+        values[slot * STRIDE + 1] = eg;
+    }
+
+    public void storeShield(int slot, int file, int whiteShield, int blackShield) {
+        values[slot * STRIDE + 2 + file] = (whiteShield & 0xFFFF) | (blackShield << 16);
+    }
+
+    public int getMg(int slot) {
+        return values[slot * STRIDE];
+    }
+
+    public int getEg(int slot) {
+        return values[slot * STRIDE + 1];
+    }
+
+    public int getShield(int slot, int color, int kingFile) {
+        int packed = values[slot * STRIDE + 2 + kingFile];
+        return color == SearchBoard.WHITE ? (short) packed : packed >> 16;
+    }
+
+    public int getEntries() {
+        return keys.length;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getOverwrites() {
+        return overwrites;
+    }
+
+    public double getHitRate() {
+        long probes = hits + misses;
+        return probes == 0 ? 0.0 : (double) hits / probes;
+    }
+
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+        overwrites = 0;
+    }
+
+    public void clear() {
+        Arrays.fill(filled, false);
+        resetCounters();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pawnHash entries=%d hits=%d misses=%d overwrites=%d hitRate=%.2f%%",
+                getEntries(), hits, misses, overwrites, getHitRate() * 100);
+    }
+}
@@ -0,0 +1,98 @@
+package com.chessgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class PolyglotBook {
+    private static final int ENTRY_SIZE = 16;
+    private static final String PROMOTION_PIECES = " nbrq";
+
+    private final MappedByteBuffer entries;
+    private final int entryCount;
+
+    public PolyglotBook(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % ENTRY_SIZE != 0) {
+                throw new IOException("Not a Polyglot book (size is not a multiple of 16): " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            this.entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.entryCount = (int) (size / ENTRY_SIZE);
+        }
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    // Returns a book move for the given Polyglot key in coordinate notation
+    // (e.g. "e2e4"), picked at random in proportion to the entry weights.
+    // Castling comes back as the king capturing its own rook ("e1h1"), as
+    // stored in the book; the caller knows which piece is on the from-square.
+    public String findMove(long key) {
+        int first = lowerBound(key);
+        int totalWeight = 0;
+        int last = first;
+        while (last < entryCount && keyAt(last) == key) {
+            totalWeight += weightAt(last);
+            last++;
+        }
+        if (totalWeight == 0) {
+            return null;
+        }
+
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = first; i < last; i++) {
+            pick -= weightAt(i);
+            if (pick < 0) {
+                return decodeMove(moveAt(i));
+            }
+        }
+        return null;
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(index * ENTRY_SIZE);
+    }
+
+    private int moveAt(int index) {
+        return entries.getShort(index * ENTRY_SIZE + 8) & 0xFFFF;
+    }
+
+    private int weightAt(int index) {
+        return entries.getShort(index * ENTRY_SIZE + 10) & 0xFFFF;
+    }
+
+    private static String decodeMove(int move) {
+        int toFile = move & 7;
+        int toRank = (move >> 3) & 7;
+        int fromFile = (move >> 6) & 7;
+        int fromRank = (move >> 9) & 7;
+        int promotion = (move >> 12) & 7;
+
+        String notation = "" + (char) ('a' + fromFile) + (fromRank + 1) + (char) ('a' + toFile) + (toRank + 1);
+        if (promotion > 0 && promotion < PROMOTION_PIECES.length()) {
+            notation += PROMOTION_PIECES.charAt(promotion);
+        }
+        return notation;
+    }
+}
@@ -0,0 +1,27 @@
+package com.chessgame;
+
+public class ScalarNnueKernel implements NnueKernel {
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public int clippedDot(short[] input, short clampMax, short[] weights, int offset) {
+        int sum = 0;
+        for (int i = 0; i < input.length; i++) {
+            int value = Math.max(0, Math.min(clampMax, input[i]));
+            sum += (short) (value * weights[offset + i]);
+        }
+        return sum;
+    }
+}
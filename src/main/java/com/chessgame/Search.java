@@ -0,0 +1,341 @@
+package com.chessgame;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process alpha-beta search: iterative deepening over a principal
+// variation search with a transposition table, null-move pruning, check
+// extensions and a capture-only quiescence search that skips captures losing
+// material by static exchange evaluation. One instance per thread; stop()
+// may be called from any thread and holds until resetStop(), so a stop that
+// arrives before a search starts is not lost.
+public class Search {
+    public static final int INFINITY = 32000;
+    public static final int MATE = 31000;
+    public static final int MAX_PLY = 128;
+
+    public interface Listener {
+        void iterationComplete(int depth, int score, long nodes, long elapsedMillis, int[] pv);
+    }
+
+    public static class Result {
+        private final int move;
+        private final int score;
+        private final int depth;
+        private final long nodes;
+        private final int[] pv;
+
+        Result(int move, int score, int depth, long nodes, int[] pv) {
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.pv = pv;
+        }
+
+        public int getMove() {
+            return move;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public int[] getPv() {
+            return pv;
+        }
+    }
+
+    private final Evaluator evaluator;
+    private final TranspositionTable table;
+    private final int[][] moveBuffers = new int[MAX_PLY][256];
+    private final int[][] scoreBuffers = new int[MAX_PLY][256];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[] history = new int[4096];
+    private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private volatile boolean stopRequested;
+    private boolean stopped;
+    private Listener listener;
+    private long nodes;
+    private long startNanos;
+    private long deadlineNanos;
+    private long nodeLimit = Long.MAX_VALUE;
+    private AtomicLong sharedNodes;
+
+    public Search(Evaluator evaluator) {
+        this(evaluator, new TranspositionTable(1 << 20));
+    }
+
+    public Search(Evaluator evaluator, TranspositionTable table) {
+        this.evaluator = evaluator;
+        this.table = table;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void stop() {
+        stopRequested = true;
+    }
+
+    // Call before handing the search to another thread, never from it.
+    public void resetStop() {
+        stopRequested = false;
+    }
+
+    // Stops later searches after about this many nodes (checked every 2048
+    // nodes); 0 for no limit.
+    public void setNodeLimit(long nodes) {
+        nodeLimit = nodes > 0 ? nodes : Long.MAX_VALUE;
+    }
+
+    // Searches given the same counter count the node limit against their
+    // total; null to count this search's own nodes.
+    public void setSharedNodeCounter(AtomicLong counter) {
+        sharedNodes = counter;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    // Searches until maxDepth is finished or maxMillis have passed (0 for no
+    // limit); the board is left as it was passed in.
+    public Result search(SearchBoard board, int maxDepth, long maxMillis) {
+        stopped = false;
+        nodes = 0;
+        startNanos = System.nanoTime();
+        deadlineNanos = maxMillis > 0 ? startNanos + maxMillis * 1_000_000 : Long.MAX_VALUE;
+        for (int[] pair : killers) {
+            pair[0] = 0;
+            pair[1] = 0;
+        }
+        Arrays.fill(history, 0);
+
+        int bestMove = 0;
+        int bestScore = 0;
+        int completedDepth = 0;
+        int[] bestPv = new int[0];
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY - 1); depth++) {
+            int score = negamax(board, depth, -INFINITY, INFINITY, 0);
+            if (stopped && completedDepth > 0) {
+                break;
+            }
+            if (pvLength[0] > 0) {
+                bestMove = pvTable[0][0];
+                bestPv = Arrays.copyOf(pvTable[0], pvLength[0]);
+            }
+            bestScore = score;
+            completedDepth = depth;
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            if (listener != null) {
+                listener.iterationComplete(depth, score, nodes, elapsedMillis, bestPv);
+            }
+            if (stopped || stopRequested || Math.abs(score) > MATE - MAX_PLY
+                    || (maxMillis > 0 && elapsedMillis * 2 > maxMillis)) {
+                break;
+            }
+        }
+        return new Result(bestMove, bestScore, completedDepth, nodes, bestPv);
+    }
+
+    private int negamax(SearchBoard board, int depth, int alpha, int beta, int ply) {
+        pvLength[ply] = 0;
+        if (ply > 0 && (board.getHalfmoveClock() >= 100 || board.isRepetition())) {
+            return 0;
+        }
+        boolean inCheck = board.isInCheck();
+        if (inCheck) {
+            depth++;
+        }
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            return quiesce(board, alpha, beta, ply);
+        }
+        if ((++nodes & 2047) == 0 && outOfBudget()) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        int hashMove = 0;
+        long entry = table.probe(board.getKey());
+        if (entry != 0L) {
+            hashMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        boolean pvNode = beta - alpha > 1;
+        if (!pvNode && !inCheck && depth >= 3 && ply > 0 && Math.abs(beta) < MATE - MAX_PLY
+                && hasPieces(board, board.getSideToMove())) {
+            board.makeNullMove();
+            int score = -negamax(board, depth - 3, -beta, -beta + 1, ply + 1);
+            board.unmakeNullMove();
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return beta;
+            }
+        }
+
+        int[] moves = moveBuffers[ply];
+        int[] scores = scoreBuffers[ply];
+        int count = board.generateMoves(moves, false);
+        MoveOrdering.score(board, moves, scores, count, hashMove, killers[ply][0], killers[ply][1], history);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = 0;
+        int legalMoves = 0;
+        for (int i = 0; i < count; i++) {
+            int move = MoveOrdering.pickNext(moves, scores, i, count);
+            boolean quiet = !MoveOrdering.isTactical(board, move);
+            board.makeMove(move);
+            if (board.leftKingInCheck()) {
+                board.unmakeMove(move);
+                continue;
+            }
+            legalMoves++;
+            int score;
+            if (legalMoves == 1) {
+                score = -negamax(board, depth - 1, -beta, -alpha, ply + 1);
+            } else {
+                score = -negamax(board, depth - 1, -alpha - 1, -alpha, ply + 1);
+                if (score > alpha && score < beta) {
+                    score = -negamax(board, depth - 1, -beta, -alpha, ply + 1);
+                }
+            }
+            board.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    pvTable[ply][0] = move;
+                    System.arraycopy(pvTable[ply + 1], 0, pvTable[ply], 1, pvLength[ply + 1]);
+                    pvLength[ply] = pvLength[ply + 1] + 1;
+                    if (alpha >= beta) {
+                        if (quiet) {
+                            if (killers[ply][0] != move) {
+                                killers[ply][1] = killers[ply][0];
+                                killers[ply][0] = move;
+                            }
+                            history[move & 4095] += depth * depth;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (legalMoves == 0) {
+            return inCheck ? -MATE + ply : 0;
+        }
+        int bound = bestScore >= beta ? TranspositionTable.LOWER_BOUND
+                : bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+        table.store(board.getKey(), bestMove, toTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    // Polled every 2048 nodes.
+    private boolean outOfBudget() {
+        long counted = sharedNodes != null ? sharedNodes.addAndGet(2048) : nodes;
+        return stopRequested || counted >= nodeLimit || System.nanoTime() > deadlineNanos;
+    }
+
+    private int quiesce(SearchBoard board, int alpha, int beta, int ply) {
+        pvLength[ply] = 0;
+        if ((++nodes & 2047) == 0 && outOfBudget()) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+        int standPat = evaluator.evaluate(board);
+        if (standPat >= beta || ply >= MAX_PLY - 1) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+
+        int[] moves = moveBuffers[ply];
+        int[] scores = scoreBuffers[ply];
+        int count = board.generateMoves(moves, true);
+        for (int i = 0; i < count; i++) {
+            scores[i] = MoveOrdering.mvvLva(board, moves[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            int move = MoveOrdering.pickNext(moves, scores, i, count);
+            if (board.see(move) < 0) {
+                continue;
+            }
+            board.makeMove(move);
+            if (board.leftKingInCheck()) {
+                board.unmakeMove(move);
+                continue;
+            }
+            int score = -quiesce(board, -beta, -alpha, ply + 1);
+            board.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+        return alpha;
+    }
+
+    // Null moves are unsafe with only king and pawns (zugzwang).
+    private static boolean hasPieces(SearchBoard board, int side) {
+        for (int square = 0; square < 64; square++) {
+            int piece = board.getPiece(square);
+            int type = piece & 7;
+            if (piece != SearchBoard.EMPTY && (piece >> 3) == side && type != SearchBoard.PAWN && type != SearchBoard.KING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Mate scores are stored relative to the node so they stay correct when
+    // the same position is reached at another ply.
+    private static int toTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) return score + ply;
+        if (score < -MATE + MAX_PLY) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) return score - ply;
+        if (score < -MATE + MAX_PLY) return score + ply;
+        return score;
+    }
+}
@@ -0,0 +1,1000 @@
+package com.chessgame;
+
+import java.util.Arrays;
+
+// Compact board for searching and evaluation. Unlike ChessBoard it holds no
+// Piece objects: squares are ints (row * 8 + column, row 0 = rank 8, as on
+// ChessBoard), pieces are small codes, and moves are packed ints, so make and
+// unmake allocate nothing. The Zobrist key matches the Polyglot key of the
+// same position, and material plus piece-square scores are kept up to date
+// on every make/unmake for the Evaluator.
+public final class SearchBoard {
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int EMPTY = 0;
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+    // Black pieces are the white code plus BLACK_FLAG.
+    public static final int BLACK_FLAG = 8;
+
+    public static final int FLAG_EN_PASSANT = 1;
+    public static final int FLAG_CASTLE = 2;
+    public static final int FLAG_DOUBLE_PUSH = 4;
+
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    static final int[][] KNIGHT_TARGETS = new int[64][];
+    static final int[][] KING_TARGETS = new int[64][];
+    // RAYS[square][direction] lists the squares outward from square; directions
+    // 0-3 are orthogonal and 4-7 diagonal.
+    static final int[][][] RAYS = new int[64][8][];
+    private static final int[][] DIRECTIONS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+    private static final long[][] PIECE_KEYS = new long[16][64];
+    private static final int[] CASTLE_MASK = new int[64];
+    static final String PIECE_CHARS = " PNBRQK  pnbrqk";
+    // Plies the undo stacks hold before they grow; a whole game is made on
+    // the board that checks ChessGame's moves, so there is no fixed limit.
+    private static final int INITIAL_STACK_SIZE = 1024;
+    public static final int[] SEE_VALUE = {0, 100, 300, 300, 500, 900, 20000};
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            KNIGHT_TARGETS[square] = targets(square, new int[][]{{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}});
+            KING_TARGETS[square] = targets(square, DIRECTIONS);
+            for (int direction = 0; direction < 8; direction++) {
+                int length = 0;
+                int[] ray = new int[7];
+                int row = (square >> 3) + DIRECTIONS[direction][0];
+                int col = (square & 7) + DIRECTIONS[direction][1];
+                while (row >= 0 && row < 8 && col >= 0 && col < 8) {
+                    ray[length++] = row * 8 + col;
+                    row += DIRECTIONS[direction][0];
+                    col += DIRECTIONS[direction][1];
+                }
+                RAYS[square][direction] = Arrays.copyOf(ray, length);
+            }
+            for (int piece = 1; piece < 16; piece++) {
+                int type = piece & 7;
+                if (type >= PAWN && type <= KING) {
+                    int kind = 2 * (type - 1) + (piece < BLACK_FLAG ? 1 : 0);
+                    PIECE_KEYS[piece][square] = Zobrist.random(64 * kind + (square ^ 56));
+                }
+            }
+            CASTLE_MASK[square] = 15;
+        }
+        CASTLE_MASK[60] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLE_MASK[63] &= ~WHITE_KINGSIDE;
+        CASTLE_MASK[56] &= ~WHITE_QUEENSIDE;
+        CASTLE_MASK[4] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLE_MASK[7] &= ~BLACK_KINGSIDE;
+        CASTLE_MASK[0] &= ~BLACK_QUEENSIDE;
+    }
+
+    private static int[] targets(int square, int[][] steps) {
+        int[] result = new int[steps.length];
+        int count = 0;
+        for (int[] step : steps) {
+            int row = (square >> 3) + step[0];
+            int col = (square & 7) + step[1];
+            if (row >= 0 && row < 8 && col >= 0 && col < 8) {
+                result[count++] = row * 8 + col;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private final int[] squares = new int[64];
+    private final int[] kingSquare = new int[2];
+    private final int[] mgScore = new int[2];
+    private final int[] egScore = new int[2];
+    private int phase;
+    private int sideToMove;
+    private int castlingRights;
+    private int enPassantSquare = -1;
+    private int halfmoveClock;
+    private int fullmoveNumber = 1;
+    private long key;
+    private long pawnKey;
+    private int ply;
+    private NnueAccumulator accumulator;
+
+    private long[] keyStack = new long[INITIAL_STACK_SIZE];
+    private int[] stateStack = new int[INITIAL_STACK_SIZE];
+    private int[] capturedStack = new int[INITIAL_STACK_SIZE];
+    private final int[] seeGain = new int[32];
+    private final int[] parseBuffer = new int[256];
+
+    public SearchBoard() {
+        this(START_FEN);
+    }
+
+    public SearchBoard(String fen) {
+        setFen(fen);
+    }
+
+    public SearchBoard(SearchBoard other) {
+        System.arraycopy(other.squares, 0, squares, 0, 64);
+        kingSquare[0] = other.kingSquare[0];
+        kingSquare[1] = other.kingSquare[1];
+        mgScore[0] = other.mgScore[0];
+        mgScore[1] = other.mgScore[1];
+        egScore[0] = other.egScore[0];
+        egScore[1] = other.egScore[1];
+        phase = other.phase;
+        sideToMove = other.sideToMove;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        key = other.key;
+        pawnKey = other.pawnKey;
+    }
+
+    public static SearchBoard fromChessBoard(ChessBoard board, boolean whiteTurn) {
+        SearchBoard result = new SearchBoard("8/8/8/8/8/8/8/8 w - - 0 1");
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board.getPiece(row, col);
+                if (piece != null) {
+                    result.putPiece(row * 8 + col, pieceCode(piece));
+                }
+            }
+        }
+        result.sideToMove = whiteTurn ? WHITE : BLACK;
+        result.castlingRights = 0;
+        if (hasCastlingPair(board, 7, 7)) result.castlingRights |= WHITE_KINGSIDE;
+        if (hasCastlingPair(board, 7, 0)) result.castlingRights |= WHITE_QUEENSIDE;
+        if (hasCastlingPair(board, 0, 7)) result.castlingRights |= BLACK_KINGSIDE;
+        if (hasCastlingPair(board, 0, 0)) result.castlingRights |= BLACK_QUEENSIDE;
+        int epRow = whiteTurn ? 3 : 4;
+        for (int col = 0; col < 8; col++) {
+            Piece piece = board.getPiece(epRow, col);
+            if (piece instanceof Pawn && ((Pawn) piece).hasJustMovedTwoSquares()
+                    && piece.getColor() != (whiteTurn ? PieceColor.WHITE : PieceColor.BLACK)) {
+                result.enPassantSquare = (whiteTurn ? 2 : 5) * 8 + col;
+            }
+        }
+        result.halfmoveClock = board.getHalfmoveClock();
+        result.key = result.computeKey();
+        return result;
+    }
+
+    private static boolean hasCastlingPair(ChessBoard board, int row, int rookCol) {
+        Piece king = board.getPiece(row, 4);
+        Piece rook = board.getPiece(row, rookCol);
+        PieceColor color = row == 7 ? PieceColor.WHITE : PieceColor.BLACK;
+        return king instanceof King && king.getColor() == color && !((King) king).hasMoved()
+                && rook instanceof Rook && rook.getColor() == color && !((Rook) rook).hasMoved();
+    }
+
+    public static int pieceCode(Piece piece) {
+        int type;
+        if (piece instanceof Pawn) {
+            type = PAWN;
+        } else if (piece instanceof Knight) {
+            type = KNIGHT;
+        } else if (piece instanceof Bishop) {
+            type = BISHOP;
+        } else if (piece instanceof Rook) {
+            type = ROOK;
+        } else if (piece instanceof Queen) {
+            type = QUEEN;
+        } else {
+            type = KING;
+        }
+        return piece.getColor() == PieceColor.WHITE ? type : type | BLACK_FLAG;
+    }
+
+    public void setFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        Arrays.fill(squares, EMPTY);
+        mgScore[0] = mgScore[1] = egScore[0] = egScore[1] = 0;
+        phase = 0;
+        pawnKey = 0L;
+        if (accumulator != null) {
+            accumulator.invalidate();
+        }
+        ply = 0;
+        int square = 0;
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                continue;
+            } else if (Character.isDigit(c)) {
+                square += c - '0';
+            } else {
+                putPiece(square++, PIECE_CHARS.indexOf(c));
+            }
+        }
+        sideToMove = fields.length > 1 && fields[1].equals("b") ? BLACK : WHITE;
+        castlingRights = 0;
+        if (fields.length > 2) {
+            for (char c : fields[2].toCharArray()) {
+                if (c == 'K') castlingRights |= WHITE_KINGSIDE;
+                if (c == 'Q') castlingRights |= WHITE_QUEENSIDE;
+                if (c == 'k') castlingRights |= BLACK_KINGSIDE;
+                if (c == 'q') castlingRights |= BLACK_QUEENSIDE;
+            }
+        }
+        enPassantSquare = fields.length > 3 && !fields[3].equals("-") ? parseSquare(fields[3]) : -1;
+        halfmoveClock = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+        fullmoveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        key = computeKey();
+    }
+
+    // Loads a bare position for evaluation: no castling, en passant or
+    // history. The occupied squares are listed in occupancy and their piece
+    // codes are packed four bits each, in square order, into low and then
+    // high, which is how the tuner stores its corpus.
+    void setPieces(long occupancy, long low, long high, int side) {
+        Arrays.fill(squares, EMPTY);
+        mgScore[0] = mgScore[1] = egScore[0] = egScore[1] = 0;
+        phase = 0;
+        pawnKey = 0L;
+        if (accumulator != null) {
+            accumulator.invalidate();
+        }
+        ply = 0;
+        int index = 0;
+        for (long bits = occupancy; bits != 0; bits &= bits - 1, index++) {
+            long packed = index < 16 ? low >>> (index * 4) : high >>> ((index - 16) * 4);
+            putPiece(Long.numberOfTrailingZeros(bits), (int) (packed & 15));
+        }
+        sideToMove = side;
+        castlingRights = 0;
+        enPassantSquare = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        key = computeKey();
+    }
+
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = squares[row * 8 + col];
+                if (piece == EMPTY) {
+                    empty++;
+                } else {
+                    if (empty > 0) {
+                        fen.append(empty);
+                        empty = 0;
+                    }
+                    fen.append(PIECE_CHARS.charAt(piece));
+                }
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+        fen.append(sideToMove == WHITE ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        } else {
+            if ((castlingRights & WHITE_KINGSIDE) != 0) fen.append('K');
+            if ((castlingRights & WHITE_QUEENSIDE) != 0) fen.append('Q');
+            if ((castlingRights & BLACK_KINGSIDE) != 0) fen.append('k');
+            if ((castlingRights & BLACK_QUEENSIDE) != 0) fen.append('q');
+        }
+        fen.append(' ').append(enPassantSquare >= 0 ? squareName(enPassantSquare) : "-");
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
+    }
+
+    public static int parseSquare(String name) {
+        return (8 - (name.charAt(1) - '0')) * 8 + (name.charAt(0) - 'a');
+    }
+
+    public static String squareName(int square) {
+        return "" + (char) ('a' + (square & 7)) + (8 - (square >> 3));
+    }
+
+    // Full recomputation; make/unmake maintain the key incrementally.
+    public long computeKey() {
+        long result = 0L;
+        for (int square = 0; square < 64; square++) {
+            if (squares[square] != EMPTY) {
+                result ^= PIECE_KEYS[squares[square]][square];
+            }
+        }
+        result ^= castlingKey(castlingRights);
+        if (enPassantSquare >= 0 && canCaptureEnPassant(enPassantSquare, sideToMove)) {
+            result ^= Zobrist.random(Zobrist.EN_PASSANT_OFFSET + (enPassantSquare & 7));
+        }
+        if (sideToMove == WHITE) {
+            result ^= Zobrist.random(Zobrist.TURN_OFFSET);
+        }
+        return result;
+    }
+
+    private static long castlingKey(int rights) {
+        long result = 0L;
+        for (int bit = 0; bit < 4; bit++) {
+            if ((rights & (1 << bit)) != 0) {
+                result ^= Zobrist.random(Zobrist.CASTLE_OFFSET + bit);
+            }
+        }
+        return result;
+    }
+
+    // Polyglot only hashes the en passant file when a capture is really possible.
+    private boolean canCaptureEnPassant(int target, int side) {
+        int pawnRow = side == WHITE ? 3 : 4;
+        int pawn = side == WHITE ? PAWN : PAWN | BLACK_FLAG;
+        int col = target & 7;
+        return (col > 0 && squares[pawnRow * 8 + col - 1] == pawn) || (col < 7 && squares[pawnRow * 8 + col + 1] == pawn);
+    }
+
+    private void putPiece(int square, int piece) {
+        squares[square] = piece;
+        int color = piece >> 3;
+        int type = piece & 7;
+        if (type == KING) {
+            kingSquare[color] = square;
+        } else if (type == PAWN) {
+            pawnKey ^= PIECE_KEYS[piece][square];
+        }
+        mgScore[color] += Evaluator.MG_TABLE[piece][square];
+        egScore[color] += Evaluator.EG_TABLE[piece][square];
+        phase += Evaluator.PHASE_WEIGHT[type];
+        if (accumulator != null) {
+            accumulator.pieceAdded(piece, square);
+        }
+    }
+
+    private void removePiece(int square) {
+        int piece = squares[square];
+        int color = piece >> 3;
+        squares[square] = EMPTY;
+        if ((piece & 7) == PAWN) {
+            pawnKey ^= PIECE_KEYS[piece][square];
+        }
+        mgScore[color] -= Evaluator.MG_TABLE[piece][square];
+        egScore[color] -= Evaluator.EG_TABLE[piece][square];
+        phase -= Evaluator.PHASE_WEIGHT[piece & 7];
+        if (accumulator != null) {
+            accumulator.pieceRemoved(piece, square);
+        }
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >> 6) & 63;
+    }
+
+    public static int promotion(int move) {
+        return (move >> 12) & 7;
+    }
+
+    public static int flags(int move) {
+        return move >> 15;
+    }
+
+    public static int encodeMove(int from, int to, int promotion, int flags) {
+        return from | (to << 6) | (promotion << 12) | (flags << 15);
+    }
+
+    public void makeMove(int move) {
+        int from = from(move);
+        int to = to(move);
+        int flags = flags(move);
+        int us = sideToMove;
+        int piece = squares[from];
+
+        if (ply == keyStack.length) {
+            growStacks();
+        }
+        keyStack[ply] = key;
+        stateStack[ply] = castlingRights | ((enPassantSquare + 1) << 4) | (halfmoveClock << 11);
+        long newKey = key ^ castlingKey(castlingRights);
+        if (enPassantSquare >= 0 && canCaptureEnPassant(enPassantSquare, us)) {
+            newKey ^= Zobrist.random(Zobrist.EN_PASSANT_OFFSET + (enPassantSquare & 7));
+        }
+
+        int captureSquare = (flags & FLAG_EN_PASSANT) != 0 ? (us == WHITE ? to + 8 : to - 8) : to;
+        int captured = squares[captureSquare];
+        capturedStack[ply] = captured;
+        if (captured != EMPTY) {
+            newKey ^= PIECE_KEYS[captured][captureSquare];
+            removePiece(captureSquare);
+        }
+
+        newKey ^= PIECE_KEYS[piece][from];
+        removePiece(from);
+        int placed = promotion(move) != 0 ? promotion(move) | (piece & BLACK_FLAG) : piece;
+        putPiece(to, placed);
+        newKey ^= PIECE_KEYS[placed][to];
+
+        if ((flags & FLAG_CASTLE) != 0) {
+            int rookFrom = to > from ? to + 1 : to - 2;
+            int rookTo = to > from ? to - 1 : to + 1;
+            int rook = squares[rookFrom];
+            removePiece(rookFrom);
+            putPiece(rookTo, rook);
+            newKey ^= PIECE_KEYS[rook][rookFrom] ^ PIECE_KEYS[rook][rookTo];
+        }
+
+        castlingRights &= CASTLE_MASK[from] & CASTLE_MASK[to];
+        newKey ^= castlingKey(castlingRights);
+        halfmoveClock = (piece & 7) == PAWN || captured != EMPTY ? 0 : halfmoveClock + 1;
+        if (us == BLACK) {
+            fullmoveNumber++;
+        }
+        sideToMove = us ^ 1;
+        enPassantSquare = (flags & FLAG_DOUBLE_PUSH) != 0 ? (from + to) / 2 : -1;
+        if (enPassantSquare >= 0 && canCaptureEnPassant(enPassantSquare, sideToMove)) {
+            newKey ^= Zobrist.random(Zobrist.EN_PASSANT_OFFSET + (enPassantSquare & 7));
+        }
+        key = newKey ^ Zobrist.random(Zobrist.TURN_OFFSET);
+        ply++;
+    }
+
+    public void unmakeMove(int move) {
+        ply--;
+        int from = from(move);
+        int to = to(move);
+        int flags = flags(move);
+        sideToMove ^= 1;
+        int us = sideToMove;
+        if (us == BLACK) {
+            fullmoveNumber--;
+        }
+
+        if ((flags & FLAG_CASTLE) != 0) {
+            int rookFrom = to > from ? to + 1 : to - 2;
+            int rookTo = to > from ? to - 1 : to + 1;
+            int rook = squares[rookTo];
+            removePiece(rookTo);
+            putPiece(rookFrom, rook);
+        }
+
+        int placed = squares[to];
+        removePiece(to);
+        putPiece(from, promotion(move) != 0 ? PAWN | (placed & BLACK_FLAG) : placed);
+
+        int captured = capturedStack[ply];
+        if (captured != EMPTY) {
+            putPiece((flags & FLAG_EN_PASSANT) != 0 ? (us == WHITE ? to + 8 : to - 8) : to, captured);
+        }
+
+        int state = stateStack[ply];
+        castlingRights = state & 15;
+        enPassantSquare = ((state >> 4) & 127) - 1;
+        halfmoveClock = state >>> 11;
+        key = keyStack[ply];
+    }
+
+    // A null move for search pruning: only the side to move changes.
+    public void makeNullMove() {
+        if (ply == keyStack.length) {
+            growStacks();
+        }
+        keyStack[ply] = key;
+        stateStack[ply] = castlingRights | ((enPassantSquare + 1) << 4) | (halfmoveClock << 11);
+        capturedStack[ply] = EMPTY;
+        if (enPassantSquare >= 0 && canCaptureEnPassant(enPassantSquare, sideToMove)) {
+            key ^= Zobrist.random(Zobrist.EN_PASSANT_OFFSET + (enPassantSquare & 7));
+        }
+        enPassantSquare = -1;
+        sideToMove ^= 1;
+        key ^= Zobrist.random(Zobrist.TURN_OFFSET);
+        ply++;
+    }
+
+    public void unmakeNullMove() {
+        ply--;
+        sideToMove ^= 1;
+        int state = stateStack[ply];
+        enPassantSquare = ((state >> 4) & 127) - 1;
+        key = keyStack[ply];
+    }
+
+    private void growStacks() {
+        keyStack = Arrays.copyOf(keyStack, keyStack.length * 2);
+        stateStack = Arrays.copyOf(stateStack, stateStack.length * 2);
+        capturedStack = Arrays.copyOf(capturedStack, capturedStack.length * 2);
+    }
+
+    public boolean isAttacked(int square, int byColor) {
+        int colorFlag = byColor == WHITE ? 0 : BLACK_FLAG;
+        int col = square & 7;
+        if (byColor == WHITE) {
+            if (col < 7 && square + 9 < 64 && squares[square + 9] == PAWN) return true;
+            if (col > 0 && square + 7 < 64 && squares[square + 7] == PAWN) return true;
+        } else {
+            if (col > 0 && square - 9 >= 0 && squares[square - 9] == (PAWN | BLACK_FLAG)) return true;
+            if (col < 7 && square - 7 >= 0 && squares[square - 7] == (PAWN | BLACK_FLAG)) return true;
+        }
+        for (int target : KNIGHT_TARGETS[square]) {
+            if (squares[target] == (KNIGHT | colorFlag)) return true;
+        }
+        for (int target : KING_TARGETS[square]) {
+            if (squares[target] == (KING | colorFlag)) return true;
+        }
+        for (int direction = 0; direction < 8; direction++) {
+            for (int target : RAYS[square][direction]) {
+                int piece = squares[target];
+                if (piece == EMPTY) {
+                    continue;
+                }
+                if ((piece & BLACK_FLAG) == colorFlag) {
+                    int type = piece & 7;
+                    if (type == QUEEN || (direction < 4 ? type == ROOK : type == BISHOP)) {
+                        return true;
+                    }
+                }
+                break;
+            }
+        }
+        return false;
+    }
+
+    public boolean isInCheck() {
+        return isAttacked(kingSquare[sideToMove], sideToMove ^ 1);
+    }
+
+    // True if the side that just moved left its own king attacked.
+    public boolean leftKingInCheck() {
+        return isAttacked(kingSquare[sideToMove ^ 1], sideToMove);
+    }
+
+    // Pseudo-legal moves; callers make each one and reject it if
+    // leftKingInCheck(). With capturesOnly, quiet moves (except queening)
+    // are skipped for quiescence search.
+    public int generateMoves(int[] moves, boolean capturesOnly) {
+        int count = 0;
+        int us = sideToMove;
+        int ownFlag = us == WHITE ? 0 : BLACK_FLAG;
+        for (int from = 0; from < 64; from++) {
+            int piece = squares[from];
+            if (piece == EMPTY || (piece & BLACK_FLAG) != ownFlag) {
+                continue;
+            }
+            switch (piece & 7) {
+                case PAWN:
+                    count = generatePawnMoves(from, us, moves, count, capturesOnly);
+                    break;
+                case KNIGHT:
+                    count = generateStepMoves(from, KNIGHT_TARGETS[from], ownFlag, moves, count, capturesOnly);
+                    break;
+                case BISHOP:
+                    count = generateSlidingMoves(from, 4, 8, ownFlag, moves, count, capturesOnly);
+                    break;
+                case ROOK:
+                    count = generateSlidingMoves(from, 0, 4, ownFlag, moves, count, capturesOnly);
+                    break;
+                case QUEEN:
+                    count = generateSlidingMoves(from, 0, 8, ownFlag, moves, count, capturesOnly);
+                    break;
+                default:
+                    count = generateStepMoves(from, KING_TARGETS[from], ownFlag, moves, count, capturesOnly);
+                    if (!capturesOnly) {
+                        count = generateCastling(us, moves, count);
+                    }
+            }
+        }
+        return count;
+    }
+
+    public int generateLegalMoves(int[] moves) {
+        int pseudoCount = generateMoves(moves, false);
+        int count = 0;
+        for (int i = 0; i < pseudoCount; i++) {
+            makeMove(moves[i]);
+            if (!leftKingInCheck()) {
+                moves[count++] = moves[i];
+            }
+            unmakeMove(moves[i]);
+        }
+        return count;
+    }
+
+    private int generatePawnMoves(int from, int us, int[] moves, int count, boolean capturesOnly) {
+        int direction = us == WHITE ? -8 : 8;
+        int startRow = us == WHITE ? 6 : 1;
+        int promotionRow = us == WHITE ? 0 : 7;
+        int row = from >> 3;
+        int col = from & 7;
+        int forward = from + direction;
+
+        if (squares[forward] == EMPTY) {
+            if ((forward >> 3) == promotionRow) {
+                count = addPromotions(from, forward, moves, count, capturesOnly);
+            } else if (!capturesOnly) {
+                moves[count++] = encodeMove(from, forward, 0, 0);
+                if (row == startRow && squares[forward + direction] == EMPTY) {
+                    moves[count++] = encodeMove(from, forward + direction, 0, FLAG_DOUBLE_PUSH);
+                }
+            }
+        }
+
+        for (int side = -1; side <= 1; side += 2) {
+            if (col + side < 0 || col + side > 7) {
+                continue;
+            }
+            int target = forward + side;
+            int victim = squares[target];
+            if (victim != EMPTY && (victim >> 3) != us) {
+                if ((target >> 3) == promotionRow) {
+                    count = addPromotions(from, target, moves, count, false);
+                } else {
+                    moves[count++] = encodeMove(from, target, 0, 0);
+                }
+            } else if (target == enPassantSquare) {
+                moves[count++] = encodeMove(from, target, 0, FLAG_EN_PASSANT);
+            }
+        }
+        return count;
+    }
+
+    private static int addPromotions(int from, int to, int[] moves, int count, boolean queenOnly) {
+        moves[count++] = encodeMove(from, to, QUEEN, 0);
+        if (!queenOnly) {
+            moves[count++] = encodeMove(from, to, ROOK, 0);
+            moves[count++] = encodeMove(from, to, BISHOP, 0);
+            moves[count++] = encodeMove(from, to, KNIGHT, 0);
+        }
+        return count;
+    }
+
+    private int generateStepMoves(int from, int[] targets, int ownFlag, int[] moves, int count, boolean capturesOnly) {
+        for (int target : targets) {
+            int victim = squares[target];
+            if (victim == EMPTY ? !capturesOnly : (victim & BLACK_FLAG) != ownFlag) {
+                moves[count++] = encodeMove(from, target, 0, 0);
+            }
+        }
+        return count;
+    }
+
+    private int generateSlidingMoves(int from, int firstDirection, int lastDirection, int ownFlag,
+                                     int[] moves, int count, boolean capturesOnly) {
+        for (int direction = firstDirection; direction < lastDirection; direction++) {
+            for (int target : RAYS[from][direction]) {
+                int victim = squares[target];
+                if (victim == EMPTY) {
+                    if (!capturesOnly) {
+                        moves[count++] = encodeMove(from, target, 0, 0);
+                    }
+                    continue;
+                }
+                if ((victim & BLACK_FLAG) != ownFlag) {
+                    moves[count++] = encodeMove(from, target, 0, 0);
+                }
+                break;
+            }
+        }
+        return count;
+    }
+
+    private int generateCastling(int us, int[] moves, int count) {
+        int them = us ^ 1;
+        int kingFrom = us == WHITE ? 60 : 4;
+        int kingside = us == WHITE ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = us == WHITE ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+        if ((castlingRights & (kingside | queenside)) == 0 || kingSquare[us] != kingFrom || isAttacked(kingFrom, them)) {
+            return count;
+        }
+        if ((castlingRights & kingside) != 0 && squares[kingFrom + 1] == EMPTY && squares[kingFrom + 2] == EMPTY
+                && !isAttacked(kingFrom + 1, them)) {
+            moves[count++] = encodeMove(kingFrom, kingFrom + 2, 0, FLAG_CASTLE);
+        }
+        if ((castlingRights & queenside) != 0 && squares[kingFrom - 1] == EMPTY && squares[kingFrom - 2] == EMPTY
+                && squares[kingFrom - 3] == EMPTY && !isAttacked(kingFrom - 1, them)) {
+            moves[count++] = encodeMove(kingFrom, kingFrom - 2, 0, FLAG_CASTLE);
+        }
+        return count;
+    }
+
+    // Static exchange evaluation: the material the side to move ends up with
+    // after both sides keep recapturing on the move's target square with
+    // their least valuable attacker, each side free to stop when continuing
+    // would lose. Pieces that have already captured are treated as gone, so
+    // sliders lined up behind them (x-rays) join in.
+    public int see(int move) {
+        int from = from(move);
+        int to = to(move);
+        int us = sideToMove;
+        long removed = 1L << from;
+        int captured = squares[to];
+        if ((flags(move) & FLAG_EN_PASSANT) != 0) {
+            captured = PAWN;
+            removed |= 1L << (us == WHITE ? to + 8 : to - 8);
+        }
+        int attackerValue = SEE_VALUE[squares[from] & 7];
+        seeGain[0] = SEE_VALUE[captured & 7];
+        if (promotion(move) != 0) {
+            seeGain[0] += SEE_VALUE[promotion(move)] - SEE_VALUE[PAWN];
+            attackerValue = SEE_VALUE[promotion(move)];
+        }
+
+        int depth = 0;
+        int side = us ^ 1;
+        while (depth < seeGain.length - 1) {
+            int attacker = leastValuableAttacker(to, side, removed);
+            if (attacker < 0) {
+                break;
+            }
+            // The king may only recapture if the other side has nothing left.
+            if ((squares[attacker] & 7) == KING && leastValuableAttacker(to, side ^ 1, removed | (1L << attacker)) >= 0) {
+                break;
+            }
+            depth++;
+            seeGain[depth] = attackerValue - seeGain[depth - 1];
+            removed |= 1L << attacker;
+            attackerValue = SEE_VALUE[squares[attacker] & 7];
+            side ^= 1;
+        }
+        while (depth > 0) {
+            seeGain[depth - 1] = -Math.max(-seeGain[depth - 1], seeGain[depth]);
+            depth--;
+        }
+        return seeGain[0];
+    }
+
+    // Square of side's cheapest piece attacking target, ignoring the squares
+    // in removed, or -1.
+    private int leastValuableAttacker(int target, int side, long removed) {
+        int colorFlag = side == WHITE ? 0 : BLACK_FLAG;
+        int col = target & 7;
+        int pawnRow = (target >> 3) + (side == WHITE ? 1 : -1);
+        if (pawnRow >= 0 && pawnRow < 8) {
+            for (int pawnCol = col - 1; pawnCol <= col + 1; pawnCol += 2) {
+                int square = pawnRow * 8 + pawnCol;
+                if (pawnCol >= 0 && pawnCol < 8 && squares[square] == (PAWN | colorFlag) && (removed & (1L << square)) == 0) {
+                    return square;
+                }
+            }
+        }
+        for (int square : KNIGHT_TARGETS[target]) {
+            if (squares[square] == (KNIGHT | colorFlag) && (removed & (1L << square)) == 0) {
+                return square;
+            }
+        }
+        int best = -1;
+        int bestType = KING + 1;
+        for (int direction = 0; direction < 8; direction++) {
+            for (int square : RAYS[target][direction]) {
+                int piece = squares[square];
+                if (piece == EMPTY || (removed & (1L << square)) != 0) {
+                    continue;
+                }
+                int type = piece & 7;
+                if ((piece & BLACK_FLAG) == colorFlag && type < bestType
+                        && (type == QUEEN || (direction < 4 ? type == ROOK : type == BISHOP))) {
+                    best = square;
+                    bestType = type;
+                }
+                break;
+            }
+        }
+        if (best >= 0) {
+            return best;
+        }
+        for (int square : KING_TARGETS[target]) {
+            if (squares[square] == (KING | colorFlag) && (removed & (1L << square)) == 0) {
+                return square;
+            }
+        }
+        return -1;
+    }
+
+    // True if the current position already occurred since the last capture
+    // or pawn move, counting only positions reached on this board.
+    public boolean isRepetition() {
+        int earliest = Math.max(0, ply - halfmoveClock);
+        for (int i = ply - 4; i >= earliest; i -= 2) {
+            if (keyStack[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // How often the current position occurred before on this board since the
+    // last capture or pawn move; two means a threefold repetition.
+    public int repetitions() {
+        int count = 0;
+        int earliest = Math.max(0, ply - halfmoveClock);
+        for (int i = ply - 4; i >= earliest; i -= 2) {
+            if (keyStack[i] == key) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static String moveToUci(int move) {
+        String notation = squareName(from(move)) + squareName(to(move));
+        int promotion = promotion(move);
+        return promotion == 0 ? notation : notation + " pnbrqk".charAt(promotion);
+    }
+
+    // Coordinate notation packed into 15 bits as from | to << 6 | promotion
+    // << 12 (the move encoding without flags), for compact storage.
+    public static int packUci(String uci) {
+        int from = ('8' - uci.charAt(1)) * 8 + (uci.charAt(0) - 'a');
+        int to = ('8' - uci.charAt(3)) * 8 + (uci.charAt(2) - 'a');
+        int promotion = uci.length() > 4 ? " pnbrqk".indexOf(uci.charAt(4)) : 0;
+        return from | to << 6 | Math.max(0, promotion) << 12;
+    }
+
+    public static String unpackUci(int packed) {
+        return moveToUci(packed & 0x7FFF);
+    }
+
+    // moveToUci without the intermediate strings, for output loops.
+    public static void appendUci(StringBuilder out, int move) {
+        appendSquare(out, from(move));
+        appendSquare(out, to(move));
+        int promotion = promotion(move);
+        if (promotion != 0) {
+            out.append(" pnbrqk".charAt(promotion));
+        }
+    }
+
+    private static void appendSquare(StringBuilder out, int square) {
+        out.append((char) ('a' + (square & 7))).append((char) ('8' - (square >> 3)));
+    }
+
+    // Whether uci is this move in coordinate notation, without building it.
+    private static boolean matchesUci(int move, String uci) {
+        int promotion = promotion(move);
+        return uci.length() == (promotion == 0 ? 4 : 5)
+                && uci.charAt(0) == 'a' + (from(move) & 7) && uci.charAt(1) == '8' - (from(move) >> 3)
+                && uci.charAt(2) == 'a' + (to(move) & 7) && uci.charAt(3) == '8' - (to(move) >> 3)
+                && (promotion == 0 || uci.charAt(4) == " pnbrqk".charAt(promotion));
+    }
+
+    // Standard algebraic notation for a legal move in the current position,
+    // e.g. "Nbd7", "exd6", "e8=Q+" or "O-O#".
+    public String toSan(int move) {
+        int from = from(move);
+        int to = to(move);
+        int type = squares[from] & 7;
+        StringBuilder san = new StringBuilder();
+        if ((flags(move) & FLAG_CASTLE) != 0) {
+            san.append(to > from ? "O-O" : "O-O-O");
+        } else {
+            boolean capture = getCapturedPiece(move) != EMPTY;
+            if (type == PAWN) {
+                if (capture) {
+                    san.append((char) ('a' + (from & 7)));
+                }
+            } else {
+                san.append(" PNBRQK".charAt(type));
+                int[] moves = new int[256];
+                int count = generateLegalMoves(moves);
+                boolean ambiguous = false;
+                boolean sameFile = false;
+                boolean sameRank = false;
+                for (int i = 0; i < count; i++) {
+                    int other = from(moves[i]);
+                    if (other != from && to(moves[i]) == to && (squares[other] & 7) == type) {
+                        ambiguous = true;
+                        sameFile |= (other & 7) == (from & 7);
+                        sameRank |= (other >> 3) == (from >> 3);
+                    }
+                }
+                if (ambiguous) {
+                    if (!sameFile) {
+                        san.append((char) ('a' + (from & 7)));
+                    } else if (!sameRank) {
+                        san.append(8 - (from >> 3));
+                    } else {
+                        san.append(squareName(from));
+                    }
+                }
+            }
+            if (capture) {
+                san.append('x');
+            }
+            san.append(squareName(to));
+            if (promotion(move) != 0) {
+                san.append('=').append(" PNBRQK".charAt(promotion(move)));
+            }
+        }
+        makeMove(move);
+        if (isInCheck()) {
+            san.append(generateLegalMoves(new int[256]) == 0 ? '#' : '+');
+        }
+        unmakeMove(move);
+        return san.toString();
+    }
+
+    // Finds the legal move matching coordinate notation such as "e7e8q", or 0.
+    public int parseUciMove(String uci) {
+        int count = generateLegalMoves(parseBuffer);
+        for (int i = 0; i < count; i++) {
+            if (matchesUci(parseBuffer[i], uci)) {
+                return parseBuffer[i];
+            }
+        }
+        return 0;
+    }
+
+    public int getPiece(int square) {
+        return squares[square];
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    public int getKingSquare(int color) {
+        return kingSquare[color];
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    // Zobrist key of the pawns alone, kept up to date on every make and
+    // unmake; PawnHashTable is indexed by it.
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    public int getMgScore(int color) {
+        return mgScore[color];
+    }
+
+    public int getEgScore(int color) {
+        return egScore[color];
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    public NnueAccumulator getAccumulator() {
+        return accumulator;
+    }
+
+    public void setAccumulator(NnueAccumulator accumulator) {
+        this.accumulator = accumulator;
+        if (accumulator != null) {
+            accumulator.invalidate();
+        }
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public int getCapturedPiece(int move) {
+        return (flags(move) & FLAG_EN_PASSANT) != 0 ? PAWN | (sideToMove == WHITE ? BLACK_FLAG : 0) : squares[to(move)];
+    }
+}
@@ -0,0 +1,530 @@
+package com.chessgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+// Distance-to-mate table for one "strong side has extra pieces, weak side has a
+// bare king" ending. Positions are always stored with the strong side as white;
+// Tablebases takes care of mirroring black-strong positions onto it.
+//
+// Every position is one byte, indexed by side to move and the squares of the
+// white king, black king and extra pieces (square = row * 8 + column, as on
+// ChessBoard). A value v of 0 is a draw, 255 an illegal placement, otherwise
+// v - 1 is the number of plies to mate: odd v means the side to move is lost,
+// even v means the side to move wins.
+public class Tablebase {
+    public enum Material {
+        KQK('Q'), KRK('R'), KPK('P'), KBNK('B', 'N');
+
+        private final char[] pieces;
+
+        Material(char... pieces) {
+            this.pieces = pieces;
+        }
+
+        public char[] getPieces() {
+            return pieces.clone();
+        }
+
+        public int size() {
+            return 2 << (6 * (2 + pieces.length));
+        }
+    }
+
+    public static final int DRAW = 0;
+    public static final int ILLEGAL = 255;
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final char[] PROMOTIONS = {' ', 'Q', 'R', 'B', 'N'};
+    private static final int[][] KING_STEPS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+    private static final int[][] KNIGHT_STEPS = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+    private static final int[][] ROOK_STEPS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    private static final int[][] BISHOP_STEPS = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+
+    private final Material material;
+    private final char[] types;
+    private final int count;
+    private final ByteBuffer values;
+    private final Function<Material, Tablebase> dependencies;
+
+    private Tablebase(Material material, ByteBuffer values, Function<Material, Tablebase> dependencies) {
+        this.material = material;
+        this.types = material.pieces;
+        this.count = material.pieces.length + 2;
+        this.values = values;
+        this.dependencies = dependencies;
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    public int value(int index) {
+        return values.get(index) & 0xFF;
+    }
+
+    // sq[0] is the white king, sq[1] the black king, sq[2..] the extra white pieces.
+    public static int index(int sideToMove, int[] sq, int count) {
+        int index = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            index = (index << 6) | sq[i];
+        }
+        return (index << 1) | sideToMove;
+    }
+
+    private static int decode(int index, int[] sq, int count) {
+        int rest = index >>> 1;
+        for (int i = 0; i < count; i++) {
+            sq[i] = rest & 63;
+            rest >>>= 6;
+        }
+        return index & 1;
+    }
+
+    public static Tablebase generate(Material material, Function<Material, Tablebase> dependencies) {
+        byte[] table = new byte[material.size()];
+        Tablebase tablebase = new Tablebase(material, ByteBuffer.wrap(table), dependencies);
+        tablebase.solve(table);
+        return tablebase;
+    }
+
+    public static Tablebase load(Material material, File file, Function<Material, Tablebase> dependencies) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() != material.size()) {
+                throw new IOException("Unexpected tablebase size for " + material + ": " + channel.size());
+            }
+            return new Tablebase(material, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), dependencies);
+        }
+    }
+
+    public void save(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = values.duplicate();
+            data.clear();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    // Retrograde analysis: mark mates and stalemates, then alternately spread
+    // losses to the positions that can move into them (wins) and wins to the
+    // positions whose every move leads into one (losses), one ply at a time.
+    private void solve(byte[] table) {
+        byte[] exits = hasPawn() ? new byte[table.length] : null;
+        int[] maxExit = new int[1];
+
+        forEachChunk(table.length, (from, to) -> {
+            int[] sq = new int[count];
+            int[] moves = new int[256];
+            int chunkMaxExit = 0;
+            for (int index = from; index < to; index++) {
+                int stm = decode(index, sq, count);
+                if (!isLegal(stm, sq)) {
+                    table[index] = (byte) ILLEGAL;
+                    continue;
+                }
+                int moveCount = generateMoves(stm, sq, moves);
+                if (moveCount == 0) {
+                    table[index] = (byte) (stm == 1 && whiteAttacks(sq[1], sq, -1, -1) ? 1 : DRAW);
+                } else if (exits != null && stm == 0) {
+                    int exit = bestPromotionExit(sq, moves, moveCount);
+                    exits[index] = (byte) exit;
+                    chunkMaxExit = Math.max(chunkMaxExit, exit);
+                }
+            }
+            synchronized (maxExit) {
+                maxExit[0] = Math.max(maxExit[0], chunkMaxExit);
+            }
+        });
+
+        for (int ply = 1; ply < ILLEGAL - 1; ply++) {
+            final int current = ply;
+            AtomicBoolean changed = new AtomicBoolean();
+            forEachChunk(table.length, (from, to) -> {
+                int[] sq = new int[count];
+                int[] scratch = new int[count];
+                int[] moves = new int[256];
+                boolean chunkChanged = false;
+                for (int index = from; index < to; index++) {
+                    int value = table[index] & 0xFF;
+                    if (value == current) {
+                        int stm = decode(index, sq, count);
+                        chunkChanged |= (current & 1) == 1
+                                ? markWinningPredecessors(table, stm, sq, current + 1)
+                                : markLosingPredecessors(table, stm, sq, scratch, moves);
+                    } else if (value == DRAW && exits != null && (exits[index] & 0xFF) == current + 1) {
+                        table[index] = (byte) (current + 1);
+                        chunkChanged = true;
+                    }
+                }
+                if (chunkChanged) {
+                    changed.set(true);
+                }
+            });
+            if (!changed.get() && ply >= maxExit[0]) {
+                break;
+            }
+        }
+    }
+
+    private interface ChunkTask {
+        void run(int from, int to);
+    }
+
+    private static void forEachChunk(int size, ChunkTask task) {
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk ->
+                task.run(chunk * CHUNK_SIZE, Math.min(size, (chunk + 1) * CHUNK_SIZE)));
+    }
+
+    // The position (with the loser to move) was just lost; every position where
+    // white can move into it is a win one ply further from mate.
+    private boolean markWinningPredecessors(byte[] table, int stm, int[] sq, int value) {
+        if (stm != 1) {
+            return false;
+        }
+        boolean changed = false;
+        for (int piece = 0; piece < count; piece++) {
+            if (piece == 1) {
+                continue;
+            }
+            int square = sq[piece];
+            char type = piece == 0 ? 'K' : types[piece - 2];
+            int row = square >> 3;
+            int col = square & 7;
+            if (type == 'P') {
+                if (row + 1 <= 6 && !occupied(sq, square + 8, -1)) {
+                    changed |= markWin(table, sq, piece, square + 8, value);
+                    if (row == 4 && !occupied(sq, square + 16, -1)) {
+                        changed |= markWin(table, sq, piece, square + 16, value);
+                    }
+                }
+            } else if (type == 'K' || type == 'N') {
+                int[][] steps = type == 'K' ? KING_STEPS : KNIGHT_STEPS;
+                for (int[] step : steps) {
+                    int r = row + step[0];
+                    int c = col + step[1];
+                    if (onBoard(r, c) && !occupied(sq, r * 8 + c, -1)
+                            && (type != 'K' || !adjacent(r * 8 + c, sq[1]))) {
+                        changed |= markWin(table, sq, piece, r * 8 + c, value);
+                    }
+                }
+            } else {
+                for (int[] step : slidingSteps(type)) {
+                    for (int r = row + step[0], c = col + step[1]; onBoard(r, c) && !occupied(sq, r * 8 + c, -1);
+                            r += step[0], c += step[1]) {
+                        changed |= markWin(table, sq, piece, r * 8 + c, value);
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    private boolean markWin(byte[] table, int[] sq, int piece, int origin, int value) {
+        int original = sq[piece];
+        sq[piece] = origin;
+        int predecessor = index(0, sq, count);
+        sq[piece] = original;
+        if ((table[predecessor] & 0xFF) == DRAW) {
+            table[predecessor] = (byte) value;
+            return true;
+        }
+        return false;
+    }
+
+    // White to move just won; any black position that can only move into
+    // white wins is lost, one ply further from mate than its longest line.
+    private boolean markLosingPredecessors(byte[] table, int stm, int[] sq, int[] scratch, int[] moves) {
+        if (stm != 0) {
+            return false;
+        }
+        boolean changed = false;
+        int king = sq[1];
+        for (int[] step : KING_STEPS) {
+            int r = (king >> 3) + step[0];
+            int c = (king & 7) + step[1];
+            if (!onBoard(r, c) || occupied(sq, r * 8 + c, -1) || adjacent(r * 8 + c, sq[0])) {
+                continue;
+            }
+            System.arraycopy(sq, 0, scratch, 0, count);
+            scratch[1] = r * 8 + c;
+            int predecessor = index(1, scratch, count);
+            if ((table[predecessor] & 0xFF) != DRAW) {
+                continue;
+            }
+            int longest = longestForcedLoss(table, scratch, moves);
+            if (longest > 0) {
+                table[predecessor] = (byte) (longest + 1);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private int longestForcedLoss(byte[] table, int[] sq, int[] moves) {
+        int moveCount = generateMoves(1, sq, moves);
+        if (moveCount == 0) {
+            return 0;
+        }
+        int longest = 0;
+        for (int i = 0; i < moveCount; i++) {
+            int child = childValue(table, 1, sq, moves[i]);
+            if (child == DRAW || (child & 1) == 1) {
+                return 0;
+            }
+            longest = Math.max(longest, child);
+        }
+        return longest;
+    }
+
+    private int bestPromotionExit(int[] sq, int[] moves, int moveCount) {
+        int best = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if ((moves[i] >> 12) != 0) {
+                int child = childValue(null, 0, sq, moves[i]);
+                if (child != DRAW && (child & 1) == 1 && (best == 0 || child + 1 < best)) {
+                    best = child + 1;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Moves are encoded as promotion << 12 | piece << 6 | destination, where
+    // piece indexes sq[] and promotion indexes PROMOTIONS.
+    int generateMoves(int stm, int[] sq, int[] moves) {
+        int n = 0;
+        if (stm == 1) {
+            int king = sq[1];
+            for (int[] step : KING_STEPS) {
+                int r = (king >> 3) + step[0];
+                int c = (king & 7) + step[1];
+                if (!onBoard(r, c)) {
+                    continue;
+                }
+                int target = r * 8 + c;
+                if (adjacent(target, sq[0])) {
+                    continue;
+                }
+                int captured = pieceAt(sq, target);
+                if (!whiteAttacks(target, sq, 1, captured)) {
+                    moves[n++] = (1 << 6) | target;
+                }
+            }
+            return n;
+        }
+
+        for (int piece = 0; piece < count; piece++) {
+            if (piece == 1) {
+                continue;
+            }
+            int square = sq[piece];
+            char type = piece == 0 ? 'K' : types[piece - 2];
+            int row = square >> 3;
+            int col = square & 7;
+            if (type == 'P') {
+                int target = square - 8;
+                if (!occupied(sq, target, -1)) {
+                    if (row - 1 == 0) {
+                        for (int promotion = 1; promotion < PROMOTIONS.length; promotion++) {
+                            moves[n++] = (promotion << 12) | (piece << 6) | target;
+                        }
+                    } else {
+                        moves[n++] = (piece << 6) | target;
+                        if (row == 6 && !occupied(sq, target - 8, -1)) {
+                            moves[n++] = (piece << 6) | (target - 8);
+                        }
+                    }
+                }
+            } else if (type == 'K' || type == 'N') {
+                int[][] steps = type == 'K' ? KING_STEPS : KNIGHT_STEPS;
+                for (int[] step : steps) {
+                    int r = row + step[0];
+                    int c = col + step[1];
+                    if (onBoard(r, c) && !occupied(sq, r * 8 + c, -1)
+                            && (type != 'K' || !adjacent(r * 8 + c, sq[1]))) {
+                        moves[n++] = (piece << 6) | (r * 8 + c);
+                    }
+                }
+            } else {
+                for (int[] step : slidingSteps(type)) {
+                    for (int r = row + step[0], c = col + step[1]; onBoard(r, c) && !occupied(sq, r * 8 + c, -1);
+                            r += step[0], c += step[1]) {
+                        moves[n++] = (piece << 6) | (r * 8 + c);
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    // Value of the position after the move, looking into the promoted-to table
+    // when a pawn queens or under-promotes. Captures of white pieces always
+    // leave the weak side with a drawn ending.
+    int childValue(byte[] table, int stm, int[] sq, int move) {
+        int piece = (move >> 6) & 63;
+        int target = move & 63;
+        if (stm == 1 && pieceAt(sq, target) >= 0) {
+            return DRAW;
+        }
+        int promotion = move >> 12;
+        int original = sq[piece];
+        sq[piece] = target;
+        int value;
+        if (promotion != 0) {
+            Material promoted = PROMOTIONS[promotion] == 'Q' ? Material.KQK
+                    : PROMOTIONS[promotion] == 'R' ? Material.KRK : null;
+            Tablebase next = promoted == null || count != 3 ? null : dependencies.apply(promoted);
+            value = next == null ? DRAW : next.value(index(1 - stm, sq, count));
+        } else {
+            int child = index(1 - stm, sq, count);
+            value = table != null ? table[child] & 0xFF : value(child);
+        }
+        sq[piece] = original;
+        return value;
+    }
+
+    // Picks the move that wins fastest, loses slowest, or keeps the draw.
+    int bestMove(int stm, int[] sq) {
+        int[] moves = new int[256];
+        int moveCount = generateMoves(stm, sq, moves);
+        int best = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < moveCount; i++) {
+            int child = childValue(null, stm, sq, moves[i]);
+            int score;
+            if (child == DRAW) {
+                score = 0;
+            } else if ((child & 1) == 1) {
+                score = 1000 - child;
+            } else {
+                score = -1000 + child;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+
+    private boolean isLegal(int stm, int[] sq) {
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (sq[i] == sq[j]) {
+                    return false;
+                }
+            }
+            if (i >= 2 && types[i - 2] == 'P' && ((sq[i] >> 3) == 0 || (sq[i] >> 3) == 7)) {
+                return false;
+            }
+        }
+        if (adjacent(sq[0], sq[1])) {
+            return false;
+        }
+        // With white to move the black king must not already be in check.
+        return stm == 1 || !whiteAttacks(sq[1], sq, -1, -1);
+    }
+
+    private boolean whiteAttacks(int target, int[] sq, int ignore, int captured) {
+        if (adjacent(sq[0], target)) {
+            return true;
+        }
+        for (int piece = 2; piece < count; piece++) {
+            if (piece != captured && attacks(types[piece - 2], sq[piece], target, sq, ignore)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean attacks(char type, int from, int target, int[] sq, int ignore) {
+        int rowDiff = (target >> 3) - (from >> 3);
+        int colDiff = (target & 7) - (from & 7);
+        switch (type) {
+            case 'P':
+                return rowDiff == -1 && Math.abs(colDiff) == 1;
+            case 'N':
+                return Math.abs(rowDiff) * Math.abs(colDiff) == 2;
+            case 'B':
+                if (Math.abs(rowDiff) != Math.abs(colDiff) || rowDiff == 0) return false;
+                break;
+            case 'R':
+                if ((rowDiff != 0) == (colDiff != 0)) return false;
+                break;
+            default:
+                if (rowDiff == 0 && colDiff == 0) return false;
+                if (rowDiff != 0 && colDiff != 0 && Math.abs(rowDiff) != Math.abs(colDiff)) return false;
+        }
+        int step = Integer.signum(rowDiff) * 8 + Integer.signum(colDiff);
+        for (int square = from + step; square != target; square += step) {
+            if (occupied(sq, square, ignore)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean occupied(int[] sq, int square, int ignore) {
+        return pieceAt(sq, square) >= 0 && pieceAt(sq, square) != ignore;
+    }
+
+    private int pieceAt(int[] sq, int square) {
+        for (int i = 0; i < count; i++) {
+            if (sq[i] == square) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasPawn() {
+        for (char type : types) {
+            if (type == 'P') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[][] slidingSteps(char type) {
+        if (type == 'R') {
+            return ROOK_STEPS;
+        } else if (type == 'B') {
+            return BISHOP_STEPS;
+        }
+        return KING_STEPS;
+    }
+
+    private static boolean adjacent(int a, int b) {
+        return Math.abs((a >> 3) - (b >> 3)) <= 1 && Math.abs((a & 7) - (b & 7)) <= 1;
+    }
+
+    private static boolean onBoard(int row, int col) {
+        return row >= 0 && row < 8 && col >= 0 && col < 8;
+    }
+
+    static char promotionPiece(int move) {
+        return PROMOTIONS[move >> 12];
+    }
+
+    // Generates every table into the given directory, e.g.
+    // java -cp chess-game.jar com.chessgame.Tablebase tablebases/
+    public static void main(String[] args) throws IOException {
+        Tablebases tablebases = new Tablebases(new File(args.length > 0 ? args[0] : "."));
+        for (Material material : Material.values()) {
+            long start = System.nanoTime();
+            tablebases.getOrGenerate(material);
+            System.out.println(material + " ready in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+}
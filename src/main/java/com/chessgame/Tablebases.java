@@ -0,0 +1,214 @@
+package com.chessgame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Tablebases {
+    private final File directory;
+    private final Map<Tablebase.Material, Tablebase> tables = new ConcurrentHashMap<>();
+    private final Set<Tablebase.Material> building = ConcurrentHashMap.newKeySet();
+
+    // directory may be null, in which case tables only live in memory.
+    public Tablebases(File directory) {
+        this.directory = directory;
+    }
+
+    // Returns the table if it is ready, otherwise starts loading or generating
+    // it on a background thread and returns null so callers never wait.
+    public Tablebase get(Tablebase.Material material) {
+        Tablebase tablebase = tables.get(material);
+        if (tablebase == null && building.add(material)) {
+            Thread worker = new Thread(() -> {
+                try {
+                    getOrGenerate(material);
+                } finally {
+                    building.remove(material);
+                }
+            }, "tablebase-" + material);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        return tablebase;
+    }
+
+    public synchronized Tablebase getOrGenerate(Tablebase.Material material) {
+        Tablebase tablebase = tables.get(material);
+        if (tablebase != null) {
+            return tablebase;
+        }
+        if (material == Tablebase.Material.KPK) {
+            getOrGenerate(Tablebase.Material.KQK);
+            getOrGenerate(Tablebase.Material.KRK);
+        }
+
+        File file = directory != null ? new File(directory, material + ".tbl") : null;
+        if (file != null && file.isFile()) {
+            try {
+                tablebase = Tablebase.load(material, file, tables::get);
+            } catch (IOException e) {
+                System.err.println("Failed to load tablebase " + file + ": " + e.getMessage());
+            }
+        }
+        if (tablebase == null) {
+            tablebase = Tablebase.generate(material, tables::get);
+            if (file != null) {
+                try {
+                    directory.mkdirs();
+                    tablebase.save(file);
+                } catch (IOException e) {
+                    System.err.println("Failed to save tablebase " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        tables.put(material, tablebase);
+        return tablebase;
+    }
+
+    public String bestMove(ChessBoard board, boolean whiteTurn) {
+        Probe probe = probe(board, whiteTurn);
+        if (probe == null) {
+            return null;
+        }
+        int move = probe.tablebase.bestMove(probe.sideToMove, probe.squares);
+        if (move < 0) {
+            return null;
+        }
+        int from = probe.toBoard(probe.squares[(move >> 6) & 63]);
+        int to = probe.toBoard(move & 63);
+        String notation = "" + (char) ('a' + (from & 7)) + (8 - (from >> 3))
+                + (char) ('a' + (to & 7)) + (8 - (to >> 3));
+        char promotion = Tablebase.promotionPiece(move);
+        return promotion == ' ' ? notation : notation + Character.toLowerCase(promotion);
+    }
+
+    public String describe(ChessBoard board, boolean whiteTurn) {
+        Probe probe = probe(board, whiteTurn);
+        if (probe == null) {
+            return null;
+        }
+        int value = probe.tablebase.value(Tablebase.index(probe.sideToMove, probe.squares, probe.squares.length));
+        if (value == Tablebase.DRAW || value == Tablebase.ILLEGAL) {
+            return "Draw";
+        }
+        String winner = probe.strongSide == PieceColor.WHITE ? "White" : "Black";
+        int movesToMate = (value & 1) == 0 ? value / 2 : (value - 1) / 2;
+        return movesToMate == 0 ? winner + " has mated" : winner + " mates in " + movesToMate;
+    }
+
+    private Probe probe(ChessBoard board, boolean whiteTurn) {
+        if (Zobrist.hasCastlingRights(board)) {
+            return null;
+        }
+
+        Position whiteKing = null;
+        Position blackKing = null;
+        PieceColor strongSide = null;
+        Piece[] extras = new Piece[2];
+        int[] extraSquares = new int[2];
+        int extraCount = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board.getPiece(row, col);
+                if (piece == null) {
+                    continue;
+                }
+                if (piece instanceof King) {
+                    if (piece.getColor() == PieceColor.WHITE) {
+                        whiteKing = new Position(row, col);
+                    } else {
+                        blackKing = new Position(row, col);
+                    }
+                    continue;
+                }
+                if (extraCount == extras.length || (strongSide != null && piece.getColor() != strongSide)) {
+                    return null;
+                }
+                strongSide = piece.getColor();
+                extraSquares[extraCount] = row * 8 + col;
+                extras[extraCount++] = piece;
+            }
+        }
+        if (whiteKing == null || blackKing == null || strongSide == null) {
+            return null;
+        }
+
+        Tablebase.Material material = materialFor(extras, extraCount);
+        if (material == null) {
+            return null;
+        }
+        Tablebase tablebase = get(material);
+        if (tablebase == null) {
+            return null;
+        }
+
+        boolean mirrored = strongSide == PieceColor.BLACK;
+        Probe probe = new Probe(tablebase, mirrored, strongSide, extraCount + 2);
+        Position strongKing = mirrored ? blackKing : whiteKing;
+        Position weakKing = mirrored ? whiteKing : blackKing;
+        probe.squares[0] = probe.toTable(strongKing.getRow() * 8 + strongKing.getColumn());
+        probe.squares[1] = probe.toTable(weakKing.getRow() * 8 + weakKing.getColumn());
+        char[] types = material.getPieces();
+        for (int i = 0; i < extraCount; i++) {
+            int slot = types.length == 2 && typeOf(extras[i]) != types[i] ? 1 - i : i;
+            probe.squares[2 + slot] = probe.toTable(extraSquares[i]);
+        }
+        probe.sideToMove = (whiteTurn == (strongSide == PieceColor.WHITE)) ? 0 : 1;
+        return probe;
+    }
+
+    private static Tablebase.Material materialFor(Piece[] extras, int extraCount) {
+        if (extraCount == 1) {
+            switch (typeOf(extras[0])) {
+                case 'Q': return Tablebase.Material.KQK;
+                case 'R': return Tablebase.Material.KRK;
+                case 'P': return Tablebase.Material.KPK;
+                default: return null;
+            }
+        }
+        if (extraCount == 2) {
+            char first = typeOf(extras[0]);
+            char second = typeOf(extras[1]);
+            if ((first == 'B' && second == 'N') || (first == 'N' && second == 'B')) {
+                return Tablebase.Material.KBNK;
+            }
+        }
+        return null;
+    }
+
+    private static char typeOf(Piece piece) {
+        if (piece instanceof Queen) return 'Q';
+        if (piece instanceof Rook) return 'R';
+        if (piece instanceof Bishop) return 'B';
+        if (piece instanceof Knight) return 'N';
+        if (piece instanceof Pawn) return 'P';
+        return 'K';
+    }
+
+    private static class Probe {
+        final Tablebase tablebase;
+        final boolean mirrored;
+        final PieceColor strongSide;
+        final int[] squares;
+        int sideToMove;
+
+        Probe(Tablebase tablebase, boolean mirrored, PieceColor strongSide, int count) {
+            this.tablebase = tablebase;
+            this.mirrored = mirrored;
+            this.strongSide = strongSide;
+            this.squares = new int[count];
+        }
+
+        // Black-strong positions are flipped top to bottom so the strong side
+        // plays "up" the board like white does in the tables.
+        int toTable(int square) {
+            return mirrored ? square ^ 56 : square;
+        }
+
+        int toBoard(int square) {
+            return mirrored ? square ^ 56 : square;
+        }
+    }
+}
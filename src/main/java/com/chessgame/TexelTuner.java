@@ -0,0 +1,335 @@
+package com.chessgame;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Tunes the Evaluator weights against game results with Texel's method:
+// minimise the mean squared difference between each position's result and
+// a sigmoid of its static evaluation, one weight at a time by local search.
+//
+//   java -cp chess-game.jar com.chessgame.TexelTuner quiet-labeled.epd \
+//       [-out src/main/resources/eval/weights.txt] [-limit N] [-iterations N] [-params NAME,NAME]
+//
+// Corpus lines hold a FEN (or EPD) and a result, either "1-0", "0-1",
+// "1/2-1/2" or [1.0], [0.5], [0.0], from white's point of view; positions
+// should be quiet. They are packed into primitive arrays, about 25 bytes a
+// position, and unpacked into one reusable SearchBoard per worker thread
+// when evaluated. Each error pass is split into chunks over the common
+// fork-join pool.
+public final class TexelTuner {
+    public static final String DEFAULT_OUTPUT = "src/main/resources/eval/weights.txt";
+    private static final int CHUNK = 4096;
+
+    private final long[] occupancy;
+    private final long[] lowPieces;
+    private final long[] highPieces;
+    private final byte[] sides;
+    // Result in half points for white: 0, 1 or 2.
+    private final byte[] results;
+    private final int count;
+    private double k = 1.0;
+    // Bumped whenever weights change so workers drop cached pawn scores.
+    private volatile long generation;
+
+    private final List<int[]> parameterArrays = new ArrayList<>();
+    private final List<Integer> parameterIndices = new ArrayList<>();
+    private final List<String> parameterNames = new ArrayList<>();
+
+    private static class Worker {
+        final SearchBoard board = new SearchBoard();
+        final Evaluator evaluator = new Evaluator(new PawnHashTable(1 << 12));
+        long generation = -1;
+    }
+
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    public TexelTuner(File corpus, int limit) throws IOException {
+        int capacity = 1 << 16;
+        long[] occupancy = new long[capacity];
+        long[] low = new long[capacity];
+        long[] high = new long[capacity];
+        byte[] sides = new byte[capacity];
+        byte[] results = new byte[capacity];
+        int count = 0;
+        int skipped = 0;
+        int[] squares = new int[64];
+        try (BufferedReader reader = new BufferedReader(new FileReader(corpus))) {
+            String line;
+            while (count < limit && (line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.trim().split("\\s+", 5);
+                int result = fields.length < 5 ? -1 : parseResult(fields[4]);
+                if (result < 0 || !parsePlacement(fields[0], squares)) {
+                    skipped++;
+                    continue;
+                }
+                if (count == occupancy.length) {
+                    capacity *= 2;
+                    occupancy = Arrays.copyOf(occupancy, capacity);
+                    low = Arrays.copyOf(low, capacity);
+                    high = Arrays.copyOf(high, capacity);
+                    sides = Arrays.copyOf(sides, capacity);
+                    results = Arrays.copyOf(results, capacity);
+                }
+                int index = 0;
+                for (int square = 0; square < 64; square++) {
+                    if (squares[square] == SearchBoard.EMPTY) {
+                        continue;
+                    }
+                    occupancy[count] |= 1L << square;
+                    if (index < 16) {
+                        low[count] |= (long) squares[square] << (index * 4);
+                    } else {
+                        high[count] |= (long) squares[square] << ((index - 16) * 4);
+                    }
+                    index++;
+                }
+                sides[count] = (byte) (fields[1].equals("b") ? SearchBoard.BLACK : SearchBoard.WHITE);
+                results[count] = (byte) result;
+                count++;
+            }
+        }
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " corpus lines without a position and result");
+        }
+        this.occupancy = Arrays.copyOf(occupancy, count);
+        this.lowPieces = Arrays.copyOf(low, count);
+        this.highPieces = Arrays.copyOf(high, count);
+        this.sides = Arrays.copyOf(sides, count);
+        this.results = Arrays.copyOf(results, count);
+        this.count = count;
+        selectParameters(null);
+    }
+
+    // Half points for white, or -1 if the text holds no result.
+    private static int parseResult(String text) {
+        if (text.contains("1/2-1/2") || text.contains("[0.5]")) return 1;
+        if (text.contains("1-0") || text.contains("[1.0]") || text.contains("[1]")) return 2;
+        if (text.contains("0-1") || text.contains("[0.0]") || text.contains("[0]")) return 0;
+        return -1;
+    }
+
+    // At most 32 pieces, both kings present.
+    private static boolean parsePlacement(String placement, int[] squares) {
+        Arrays.fill(squares, SearchBoard.EMPTY);
+        int square = 0;
+        int pieces = 0;
+        int kings = 0;
+        for (int i = 0; i < placement.length(); i++) {
+            char c = placement.charAt(i);
+            if (c == '/') {
+                continue;
+            } else if (c >= '1' && c <= '8') {
+                square += c - '0';
+            } else {
+                int piece = SearchBoard.PIECE_CHARS.indexOf(c);
+                if (piece <= 0 || square > 63) {
+                    return false;
+                }
+                if ((piece & 7) == SearchBoard.KING) {
+                    kings++;
+                }
+                squares[square++] = piece;
+                pieces++;
+            }
+        }
+        return square == 64 && pieces <= 32 && kings == 2;
+    }
+
+    // Restricts tuning to the named weight arrays, or all of them for null.
+    // Entries the evaluator never reads are left out.
+    public void selectParameters(List<String> names) {
+        parameterArrays.clear();
+        parameterIndices.clear();
+        parameterNames.clear();
+        for (Map.Entry<String, int[]> entry : Evaluator.WEIGHTS.entrySet()) {
+            if (names != null && !names.contains(entry.getKey())) {
+                continue;
+            }
+            for (int index = 0; index < entry.getValue().length; index++) {
+                if (isUsed(entry.getKey(), index)) {
+                    parameterArrays.add(entry.getValue());
+                    parameterIndices.add(index);
+                    parameterNames.add(entry.getKey() + "[" + index + "]");
+                }
+            }
+        }
+    }
+
+    private static boolean isUsed(String name, int index) {
+        if (name.endsWith("_MATERIAL")) {
+            return index >= SearchBoard.PAWN && index <= SearchBoard.QUEEN;
+        }
+        if (name.endsWith("_PST_PAWN")) {
+            return index >= 8 && index < 56;
+        }
+        if (name.endsWith("_MOBILITY") || name.equals("KING_ATTACK_UNITS")) {
+            return index >= SearchBoard.KNIGHT && index <= SearchBoard.QUEEN;
+        }
+        if (name.startsWith("PASSED_")) {
+            return index > 0 && index < 7;
+        }
+        return true;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getParameterCount() {
+        return parameterArrays.size();
+    }
+
+    // Mean squared error of the predicted results over the whole corpus.
+    public double error() {
+        generation++;
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel().mapToDouble(this::chunkError).sum() / count;
+    }
+
+    private double chunkError(int chunk) {
+        Worker worker = workers.get();
+        if (worker.generation != generation) {
+            worker.evaluator.getPawnTable().clear();
+            worker.generation = generation;
+        }
+        double sum = 0;
+        int end = Math.min(count, (chunk + 1) * CHUNK);
+        for (int i = chunk * CHUNK; i < end; i++) {
+            worker.board.setPieces(occupancy[i], lowPieces[i], highPieces[i], sides[i]);
+            int score = worker.evaluator.evaluate(worker.board);
+            if (sides[i] == SearchBoard.BLACK) {
+                score = -score;
+            }
+            double error = results[i] / 2.0 - 1 / (1 + Math.pow(10, -k * score / 400));
+            sum += error * error;
+        }
+        return sum;
+    }
+
+    // Picks the sigmoid scale that best fits the current weights, so tuning
+    // moves the weights rather than their overall scale.
+    public double fitScale() {
+        double lowK = 0.1;
+        double highK = 3.0;
+        for (int i = 0; i < 30; i++) {
+            double left = lowK + (highK - lowK) / 3;
+            double right = highK - (highK - lowK) / 3;
+            k = left;
+            double leftError = error();
+            k = right;
+            if (leftError < error()) {
+                highK = right;
+            } else {
+                lowK = left;
+            }
+        }
+        k = (lowK + highK) / 2;
+        return k;
+    }
+
+    // One local-search pass: each weight moves a step up, else a step down,
+    // and keeps whichever lowers the error. Returns the error afterwards.
+    public double tuneIteration(int iteration, double bestError) {
+        long start = System.nanoTime();
+        long evaluated = 0;
+        int changed = 0;
+        for (int p = 0; p < parameterArrays.size(); p++) {
+            int[] array = parameterArrays.get(p);
+            int index = parameterIndices.get(p);
+            int original = array[index];
+            boolean improved = false;
+            for (int delta : new int[]{1, -1}) {
+                array[index] = original + delta;
+                Evaluator.buildTables();
+                double error = error();
+                evaluated += count;
+                if (error < bestError) {
+                    bestError = error;
+                    improved = true;
+                    changed++;
+                    break;
+                }
+            }
+            if (!improved) {
+                array[index] = original;
+                Evaluator.buildTables();
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("iteration %d: error %.6f, %d/%d weights changed, %,.0f positions/s (%.1fs)%n",
+                iteration, bestError, changed, parameterArrays.size(), evaluated / elapsedSeconds, elapsedSeconds);
+        return bestError;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TexelTuner corpus.epd [-out FILE] [-limit N] [-iterations N] [-params NAME,NAME]");
+            return;
+        }
+        String output = DEFAULT_OUTPUT;
+        int limit = Integer.MAX_VALUE;
+        int iterations = 100;
+        List<String> names = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-out":
+                    output = args[++i];
+                    break;
+                case "-limit":
+                    limit = Integer.parseInt(args[++i]);
+                    break;
+                case "-iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-params":
+                    names = Arrays.asList(args[++i].split(","));
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        long start = System.nanoTime();
+        TexelTuner tuner = new TexelTuner(new File(args[0]), limit);
+        if (tuner.getCount() == 0) {
+            System.err.println("No positions loaded from " + args[0]);
+            return;
+        }
+        tuner.selectParameters(names);
+        System.out.printf("Loaded %,d positions in %.1fs; tuning %d weights on %d threads%n", tuner.getCount(),
+                (System.nanoTime() - start) / 1e9, tuner.getParameterCount(), Runtime.getRuntime().availableProcessors());
+
+        start = System.nanoTime();
+        double error = tuner.error();
+        System.out.printf("initial error %.6f, %,.0f positions/s%n", error, tuner.getCount() / ((System.nanoTime() - start) / 1e9));
+        System.out.printf("sigmoid scale K = %.3f%n", tuner.fitScale());
+        error = tuner.error();
+        for (int iteration = 1; iteration <= iterations; iteration++) {
+            double tuned = tuner.tuneIteration(iteration, error);
+            // Written after every pass so a long run can be stopped at any time.
+            try (Writer out = new FileWriter(output)) {
+                out.write("# Evaluator weights tuned by TexelTuner on " + tuner.getCount() + " positions, error "
+                        + String.format("%.6f", tuned) + "\n");
+                Evaluator.saveWeights(out);
+            }
+            if (tuned >= error) {
+                break;
+            }
+            error = tuned;
+        }
+        System.out.println("Weights written to " + output);
+    }
+}
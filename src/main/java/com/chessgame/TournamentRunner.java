@@ -0,0 +1,730 @@
+package com.chessgame;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Headless engine-vs-engine matches between two engine configurations:
+//
+//   java -cp chess-game.jar com.chessgame.TournamentRunner \
+//       -engine "stockfish skill=8" -engine "stockfish skill=5" \
+//       -games 2000 -movetime 100 -openings openings.txt -pgn match.pgn -sprt 0 50
+//
+// Engines are "stockfish", "uci path=/path/to/engine" or "internal" (the
+// in-process Search), each optionally followed by skill=, threads=, hash=,
+// depth= or name=. Every opening is played twice with colours swapped.
+//
+// Each worker owns one instance of each engine for the whole match, so at
+// most two engine processes run per worker, and a game keeps only its own
+// move list; finished games go straight to the PGN file and into the score
+// counters. The match stops at the game limit or when the sequential
+// probability ratio test accepts either hypothesis.
+public class TournamentRunner {
+    // Adjudicate a win once both engines agree on at least this many
+    // centipawns for several moves in a row.
+    private static final int RESIGN_SCORE = 1000;
+    private static final int RESIGN_PLIES = 6;
+    // Adjudicate a draw when both engines see a dead level position.
+    private static final int DRAW_SCORE = 10;
+    private static final int DRAW_PLIES = 12;
+    private static final int DRAW_MIN_PLY = 80;
+    // Engines may overrun their clock by this much before losing on time.
+    private static final long TIME_MARGIN_MILLIS = 100;
+    // A depth-limited search has no clock; this only catches a hung engine.
+    private static final long DEPTH_DEADLINE_MILLIS = 60_000;
+    // How long an engine past its deadline gets to answer "stop", and to
+    // acknowledge isready, before it is killed.
+    private static final long STOP_GRACE_MILLIS = 500;
+    private static final long READY_TIMEOUT_MILLIS = 5000;
+    private static final int UNKNOWN_SCORE = Integer.MIN_VALUE;
+
+    private static final String[] DEFAULT_OPENINGS = {
+        "e2e4 e7e5 g1f3 b8c6",
+        "e2e4 c7c5 g1f3 d7d6",
+        "e2e4 e7e6 d2d4 d7d5",
+        "e2e4 c7c6 d2d4 d7d5",
+        "d2d4 d7d5 c2c4 e7e6",
+        "d2d4 g8f6 c2c4 g7g6",
+        "d2d4 g8f6 c2c4 e7e6",
+        "c2c4 e7e5 b1c3 g8f6",
+        "g1f3 d7d5 g2g3 g8f6",
+        "e2e4 d7d5 e4d5 d8d5"
+    };
+
+    // One side of the match. Scores are from the side to move, in
+    // centipawns, with mates on GameAnalyzer's scale.
+    interface Player {
+        void newGame() throws IOException;
+
+        String bestMove(String startFen, List<String> moves, Clock clock) throws IOException;
+
+        int getLastScore();
+
+        void close();
+    }
+
+    // Either a fixed time per move or a clock with increment for both sides.
+    static class Clock {
+        final long moveTimeMillis;
+        final long incrementMillis;
+        final long[] remainingMillis = new long[2];
+
+        Clock(long moveTimeMillis, long baseMillis, long incrementMillis) {
+            this.moveTimeMillis = moveTimeMillis;
+            this.incrementMillis = incrementMillis;
+            remainingMillis[0] = baseMillis;
+            remainingMillis[1] = baseMillis;
+        }
+
+        Clock copy() {
+            return new Clock(moveTimeMillis, remainingMillis[0], incrementMillis);
+        }
+
+        boolean isTimed() {
+            return moveTimeMillis == 0;
+        }
+
+        String goCommand() {
+            if (!isTimed()) {
+                return "go movetime " + moveTimeMillis;
+            }
+            return "go wtime " + remainingMillis[SearchBoard.WHITE] + " btime " + remainingMillis[SearchBoard.BLACK]
+                    + " winc " + incrementMillis + " binc " + incrementMillis;
+        }
+
+        long budgetMillis(int side) {
+            return isTimed() ? remainingMillis[side] / 30 + incrementMillis : moveTimeMillis;
+        }
+
+        // The most a move may take before it loses on time.
+        long deadlineMillis(int side) {
+            return (isTimed() ? Math.max(0, remainingMillis[side]) : moveTimeMillis) + TIME_MARGIN_MILLIS;
+        }
+    }
+
+    static class UciPlayer implements Player {
+        private final File binary;
+        private final Map<String, String> options;
+        private final InfoLineParser parser = new InfoLineParser();
+        private UciEngine engine;
+        private boolean killed;
+        private int lastScore = UNKNOWN_SCORE;
+
+        UciPlayer(File binary, Map<String, String> options) throws IOException {
+            this.binary = binary;
+            this.options = options;
+            start();
+        }
+
+        // Matches run one search thread per engine so games don't compete
+        // for cores; skill levels are set the way ChessGame sets them.
+        private void start() throws IOException {
+            engine = new UciEngine(binary);
+            engine.setOption("Threads", options.getOrDefault("threads", "1"));
+            engine.setOption("Hash", options.getOrDefault("hash", "16"));
+            if (options.containsKey("skill")) {
+                engine.setOption("Skill Level", options.get("skill"));
+                engine.setOption("UCI_LimitStrength", true);
+            }
+            engine.waitReady(UciEngine.deadlineAfter(READY_TIMEOUT_MILLIS));
+        }
+
+        @Override
+        public void newGame() throws IOException {
+            if (killed || !engine.isAlive()) {
+                if (!killed) {
+                    engine.close();
+                }
+                killed = false;
+                start();
+            }
+            engine.send("ucinewgame");
+            try {
+                engine.waitReady(UciEngine.deadlineAfter(READY_TIMEOUT_MILLIS));
+            } catch (UciEngine.DeadlineExceededException e) {
+                kill();
+                throw e;
+            }
+        }
+
+        // Restarted at the next game.
+        private void kill() {
+            engine.kill();
+            killed = true;
+        }
+
+        @Override
+        public String bestMove(String startFen, List<String> moves, Clock clock) throws IOException {
+            StringBuilder position = new StringBuilder(startFen == null ? "position startpos" : "position fen " + startFen);
+            if (!moves.isEmpty()) {
+                position.append(" moves ").append(String.join(" ", moves));
+            }
+            engine.send(position.toString());
+            boolean depthLimited = options.containsKey("depth");
+            engine.send(depthLimited ? "go depth " + options.get("depth") : clock.goCommand());
+            long deadline = UciEngine.deadlineAfter(depthLimited ? DEPTH_DEADLINE_MILLIS
+                    : clock.deadlineMillis(sideToMove(startFen, moves)));
+            lastScore = UNKNOWN_SCORE;
+            String line;
+            while ((line = readLine(deadline)) != null) {
+                if (line.startsWith("info")) {
+                    if (parser.parse(line) && !parser.isBound() && parser.getMultipv() == 1) {
+                        lastScore = parser.getScore();
+                    }
+                } else if (line.startsWith("bestmove")) {
+                    int end = line.indexOf(' ', 9);
+                    return line.substring(9, end < 0 ? line.length() : end);
+                }
+            }
+            throw new IOException("Engine exited");
+        }
+
+        // Past the deadline the move is lost on time either way; the engine
+        // is stopped so the next game starts clean, or killed if it does
+        // not answer.
+        private String readLine(long deadline) throws IOException {
+            try {
+                return engine.readLine(deadline);
+            } catch (UciEngine.DeadlineExceededException e) {
+                engine.send("stop");
+                long grace = UciEngine.deadlineAfter(STOP_GRACE_MILLIS);
+                try {
+                    String line;
+                    while ((line = engine.readLine(grace)) != null && !line.startsWith("bestmove")) {
+                        // Output of the search that ran out of time.
+                    }
+                } catch (IOException stopFailed) {
+                    kill();
+                }
+                throw e;
+            }
+        }
+
+        private static int sideToMove(String startFen, List<String> moves) {
+            boolean blackStarts = startFen != null && startFen.split(" ")[1].equals("b");
+            return blackStarts == (moves.size() % 2 == 0) ? SearchBoard.BLACK : SearchBoard.WHITE;
+        }
+
+        @Override
+        public int getLastScore() {
+            return lastScore;
+        }
+
+        @Override
+        public void close() {
+            engine.close();
+        }
+    }
+
+    static class SearchPlayer implements Player {
+        private final Search search;
+        private final int depth;
+        private int lastScore = UNKNOWN_SCORE;
+
+        // A small table keeps each in-process player at a few megabytes.
+        SearchPlayer(Map<String, String> options) {
+            search = new Search(new Evaluator(), new TranspositionTable(1 << 18));
+            depth = Integer.parseInt(options.getOrDefault("depth", String.valueOf(Search.MAX_PLY)));
+        }
+
+        @Override
+        public void newGame() {
+            search.getTable().clear();
+        }
+
+        @Override
+        public String bestMove(String startFen, List<String> moves, Clock clock) {
+            SearchBoard board = startFen == null ? new SearchBoard() : new SearchBoard(startFen);
+            for (String move : moves) {
+                board.makeMove(board.parseUciMove(move));
+            }
+            Search.Result result = search.search(board, depth, clock.budgetMillis(board.getSideToMove()));
+            int score = result.getScore();
+            lastScore = Math.abs(score) > Search.MATE - Search.MAX_PLY
+                    ? Integer.signum(score) * (GameAnalyzer.MATE_SCORE - (Search.MATE - Math.abs(score) + 1) / 2)
+                    : score;
+            return result.getMove() == 0 ? null : SearchBoard.moveToUci(result.getMove());
+        }
+
+        @Override
+        public int getLastScore() {
+            return lastScore;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Wins, draws and losses from the first engine's point of view, and the
+    // sequential probability ratio test on them.
+    static class Score {
+        private final double elo0;
+        private final double elo1;
+        private final double lowerBound;
+        private final double upperBound;
+        private final boolean sprt;
+        int wins;
+        int draws;
+        int losses;
+
+        Score(double elo0, double elo1, double alpha, double beta, boolean sprt) {
+            this.elo0 = elo0;
+            this.elo1 = elo1;
+            this.sprt = sprt;
+            lowerBound = Math.log(beta / (1 - alpha));
+            upperBound = Math.log((1 - beta) / alpha);
+        }
+
+        int games() {
+            return wins + draws + losses;
+        }
+
+        double mean() {
+            return (wins + draws * 0.5) / games();
+        }
+
+        double variance() {
+            double mean = mean();
+            return (wins * Math.pow(1 - mean, 2) + draws * Math.pow(0.5 - mean, 2) + losses * Math.pow(mean, 2)) / games();
+        }
+
+        static double elo(double score) {
+            score = Math.max(1e-6, Math.min(1 - 1e-6, score));
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        static double expectedScore(double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+
+        // Log-likelihood ratio of elo1 against elo0 in the normal
+        // approximation of the trinomial model.
+        double llr() {
+            // Like cutechess, wait until every result has occurred once; the
+            // variance estimate means little before that.
+            if (wins == 0 || draws == 0 || losses == 0) {
+                return 0;
+            }
+            double variance = variance();
+            double s0 = expectedScore(elo0);
+            double s1 = expectedScore(elo1);
+            return games() * (s1 - s0) * (2 * mean() - s0 - s1) / (2 * variance);
+        }
+
+        boolean isDecided() {
+            if (!sprt) {
+                return false;
+            }
+            double llr = llr();
+            return llr <= lowerBound || llr >= upperBound;
+        }
+
+        @Override
+        public String toString() {
+            double margin = 1.96 * Math.sqrt(variance() / games());
+            String text = String.format("%d games  +%d =%d -%d  %.1f%%  Elo %+.1f +/- %.1f", games(), wins, draws, losses,
+                    mean() * 100, elo(mean()), (elo(mean() + margin) - elo(mean() - margin)) / 2);
+            if (sprt) {
+                text += String.format("  LLR %.2f [%.2f, %.2f]", llr(), lowerBound, upperBound);
+                if (llr() >= upperBound) {
+                    text += " H1 accepted";
+                } else if (llr() <= lowerBound) {
+                    text += " H0 accepted";
+                }
+            }
+            return text;
+        }
+    }
+
+    private final String[] specs;
+    private final String[] names = new String[2];
+    private final List<String> openings;
+    private final int maxGames;
+    private final int concurrency;
+    private final Clock clock;
+    private final int maxPlies;
+    private final Writer pgn;
+    private final Score score;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private volatile boolean stopped;
+
+    public TournamentRunner(String[] specs, List<String> openings, int maxGames, int concurrency, Clock clock,
+                            int maxPlies, Writer pgn, Score score) {
+        this.specs = specs;
+        this.openings = openings;
+        this.maxGames = maxGames;
+        this.concurrency = concurrency;
+        this.clock = clock;
+        this.maxPlies = maxPlies;
+        this.pgn = pgn;
+        this.score = score;
+        for (int i = 0; i < 2; i++) {
+            names[i] = parseOptions(specs[i]).getOrDefault("name", specs[i]);
+        }
+        if (names[0].equals(names[1])) {
+            names[0] += " #1";
+            names[1] += " #2";
+        }
+    }
+
+    private static Map<String, String> parseOptions(String spec) {
+        Map<String, String> options = new HashMap<>();
+        String[] tokens = spec.trim().split("\\s+");
+        options.put("kind", tokens[0]);
+        for (int i = 1; i < tokens.length; i++) {
+            int equals = tokens[i].indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value in engine spec: " + tokens[i]);
+            }
+            options.put(tokens[i].substring(0, equals), tokens[i].substring(equals + 1));
+        }
+        return options;
+    }
+
+    static Player createPlayer(String spec) throws IOException {
+        Map<String, String> options = parseOptions(spec);
+        switch (options.get("kind")) {
+            case "stockfish":
+                return new UciPlayer(UciEngine.extractStockfish(), options);
+            case "uci":
+                if (!options.containsKey("path")) {
+                    throw new IllegalArgumentException("uci engines need path=");
+                }
+                return new UciPlayer(new File(options.get("path")), options);
+            case "internal":
+                return new SearchPlayer(options);
+            default:
+                throw new IllegalArgumentException("Unknown engine kind: " + options.get("kind"));
+        }
+    }
+
+    public Score run() throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(workers.submit(() -> {
+                    Player[] players = {createPlayer(specs[0]), createPlayer(specs[1])};
+                    try {
+                        int game;
+                        while (!stopped && (game = nextGame.getAndIncrement()) < maxGames) {
+                            playGame(game, players);
+                        }
+                    } finally {
+                        players[0].close();
+                        players[1].close();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            stopped = true;
+            throw new IOException("Match failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        return score;
+    }
+
+    // Game pairs share an opening; the first engine has white in even games.
+    private void playGame(int game, Player[] players) throws IOException {
+        String opening = openings.get((game / 2) % openings.size());
+        int firstEngineSide = game % 2 == 0 ? SearchBoard.WHITE : SearchBoard.BLACK;
+        String startFen = null;
+        String openingMoves = opening;
+        if (opening.contains("/")) {
+            // An EPD/FEN line, optionally followed by "moves ...".
+            int split = opening.indexOf(" moves ");
+            startFen = split < 0 ? opening : opening.substring(0, split);
+            openingMoves = split < 0 ? "" : opening.substring(split + 7);
+            // EPD has no move counters and may carry operations after the
+            // four position fields.
+            String[] fields = startFen.trim().split("\\s+");
+            if (fields.length >= 4 && (fields.length < 6 || !fields[4].matches("\\d+"))) {
+                startFen = String.join(" ", Arrays.copyOf(fields, 4)) + " 0 1";
+            }
+        }
+
+        SearchBoard board = startFen == null ? new SearchBoard() : new SearchBoard(startFen);
+        String initialFen = board.toFen();
+        List<String> moves = new ArrayList<>();
+        for (String move : openingMoves.trim().split("\\s+")) {
+            if (move.isEmpty()) {
+                continue;
+            }
+            int parsed = board.parseUciMove(move);
+            if (parsed == 0) {
+                throw new IllegalArgumentException("Illegal move " + move + " in opening: " + opening);
+            }
+            board.makeMove(parsed);
+            moves.add(move);
+        }
+        int openingLength = moves.size();
+        players[0].newGame();
+        players[1].newGame();
+
+        Clock gameClock = clock.copy();
+        StringBuilder movetext = new StringBuilder();
+        SearchBoard replay = new SearchBoard(initialFen);
+        for (String move : moves) {
+            int parsed = replay.parseUciMove(move);
+            appendSan(movetext, replay, parsed);
+            replay.makeMove(parsed);
+        }
+        int[] legalMoves = new int[256];
+        int resignCount = 0;
+        int drawCount = 0;
+        String result = null;
+        String termination = null;
+        while (result == null) {
+            int side = board.getSideToMove();
+            if (board.generateLegalMoves(legalMoves) == 0) {
+                result = !board.isInCheck() ? "1/2-1/2" : side == SearchBoard.WHITE ? "0-1" : "1-0";
+                termination = board.isInCheck() ? "checkmate" : "stalemate";
+                break;
+            }
+            if (board.getHalfmoveClock() >= 100 || board.repetitions() >= 2 || isInsufficientMaterial(board)) {
+                result = "1/2-1/2";
+                termination = board.getHalfmoveClock() >= 100 ? "fifty-move rule"
+                        : board.repetitions() >= 2 ? "threefold repetition" : "insufficient material";
+                break;
+            }
+            if (moves.size() - openingLength >= maxPlies) {
+                result = "1/2-1/2";
+                termination = "adjudication: move limit";
+                break;
+            }
+
+            Player player = players[side == firstEngineSide ? 0 : 1];
+            long startNanos = System.nanoTime();
+            String move;
+            try {
+                move = player.bestMove(startFen == null ? null : initialFen, moves, gameClock);
+            } catch (UciEngine.DeadlineExceededException e) {
+                result = side == SearchBoard.WHITE ? "0-1" : "1-0";
+                termination = "time forfeit";
+                break;
+            } catch (IOException e) {
+                result = side == SearchBoard.WHITE ? "0-1" : "1-0";
+                termination = "engine failure: " + e.getMessage();
+                break;
+            }
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            if (gameClock.isTimed()) {
+                gameClock.remainingMillis[side] -= elapsedMillis;
+                if (gameClock.remainingMillis[side] < -TIME_MARGIN_MILLIS) {
+                    result = side == SearchBoard.WHITE ? "0-1" : "1-0";
+                    termination = "time forfeit";
+                    break;
+                }
+                gameClock.remainingMillis[side] = Math.max(0, gameClock.remainingMillis[side]) + gameClock.incrementMillis;
+            }
+            int parsed = move == null ? 0 : board.parseUciMove(move);
+            if (parsed == 0) {
+                result = side == SearchBoard.WHITE ? "0-1" : "1-0";
+                termination = "illegal move " + move;
+                break;
+            }
+            appendSan(movetext, board, parsed);
+            board.makeMove(parsed);
+            moves.add(move);
+
+            // Scores alternate sides, so agreement shows up as alternating signs
+            // from the movers' points of view; track them from white's.
+            int moverScore = player.getLastScore();
+            int whiteScore = moverScore == UNKNOWN_SCORE ? UNKNOWN_SCORE
+                    : side == SearchBoard.WHITE ? moverScore : -moverScore;
+            if (whiteScore != UNKNOWN_SCORE && Math.abs(whiteScore) >= RESIGN_SCORE) {
+                int sign = Integer.signum(whiteScore);
+                resignCount = Integer.signum(resignCount) == sign ? resignCount + sign : sign;
+            } else {
+                resignCount = 0;
+            }
+            if (Math.abs(resignCount) >= RESIGN_PLIES) {
+                result = resignCount > 0 ? "1-0" : "0-1";
+                termination = "adjudication: decisive score";
+            }
+            drawCount = whiteScore != UNKNOWN_SCORE && Math.abs(whiteScore) <= DRAW_SCORE ? drawCount + 1 : 0;
+            if (result == null && drawCount >= DRAW_PLIES && moves.size() >= DRAW_MIN_PLY) {
+                result = "1/2-1/2";
+                termination = "adjudication: drawn score";
+            }
+        }
+        gameFinished(game, firstEngineSide, initialFen, startFen != null, movetext, result, termination, moves.size());
+    }
+
+    private static void appendSan(StringBuilder movetext, SearchBoard board, int move) {
+        if (board.getSideToMove() == SearchBoard.WHITE) {
+            movetext.append(board.getFullmoveNumber()).append(". ");
+        } else if (movetext.length() == 0) {
+            movetext.append(board.getFullmoveNumber()).append("... ");
+        }
+        movetext.append(board.toSan(move)).append(' ');
+    }
+
+    // Bare kings, or a single knight or bishop against a bare king.
+    private static boolean isInsufficientMaterial(SearchBoard board) {
+        int minors = 0;
+        for (int square = 0; square < 64; square++) {
+            int type = board.getPiece(square) & 7;
+            if (type == SearchBoard.PAWN || type == SearchBoard.ROOK || type == SearchBoard.QUEEN) {
+                return false;
+            }
+            if (type == SearchBoard.KNIGHT || type == SearchBoard.BISHOP) {
+                minors++;
+            }
+        }
+        return minors <= 1;
+    }
+
+    private synchronized void gameFinished(int game, int firstEngineSide, String initialFen, boolean customStart,
+                                           StringBuilder movetext, String result, String termination, int plies) throws IOException {
+        if (result.equals("1/2-1/2")) {
+            score.draws++;
+        } else if (result.equals("1-0") == (firstEngineSide == SearchBoard.WHITE)) {
+            score.wins++;
+        } else {
+            score.losses++;
+        }
+
+        String white = names[firstEngineSide == SearchBoard.WHITE ? 0 : 1];
+        String black = names[firstEngineSide == SearchBoard.WHITE ? 1 : 0];
+        pgn.write("[Event \"" + names[0] + " vs " + names[1] + "\"]\n");
+        pgn.write("[Site \"Chess.java\"]\n");
+        pgn.write("[Date \"" + LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")) + "\"]\n");
+        pgn.write("[Round \"" + (game + 1) + "\"]\n");
+        pgn.write("[White \"" + white + "\"]\n");
+        pgn.write("[Black \"" + black + "\"]\n");
+        pgn.write("[Result \"" + result + "\"]\n");
+        if (customStart) {
+            pgn.write("[SetUp \"1\"]\n");
+            pgn.write("[FEN \"" + initialFen + "\"]\n");
+        }
+        pgn.write("[PlyCount \"" + plies + "\"]\n");
+        pgn.write("[Termination \"" + termination + "\"]\n\n");
+        movetext.append(result);
+        int column = 0;
+        for (String token : movetext.toString().split(" ")) {
+            if (column > 0 && column + token.length() + 1 > 79) {
+                pgn.write("\n");
+                column = 0;
+            } else if (column > 0) {
+                pgn.write(" ");
+                column++;
+            }
+            pgn.write(token);
+            column += token.length();
+        }
+        pgn.write("\n\n");
+        pgn.flush();
+
+        System.out.println(names[0] + " vs " + names[1] + ": " + score);
+        if (score.isDecided()) {
+            stopped = true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> specs = new ArrayList<>();
+        List<String> openings = Arrays.asList(DEFAULT_OPENINGS);
+        int games = 1000;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        long moveTime = 100;
+        long base = 0;
+        long increment = 0;
+        int maxPlies = 400;
+        String pgnFile = "tournament.pgn";
+        boolean sprt = false;
+        double elo0 = 0;
+        double elo1 = 5;
+        double alpha = 0.05;
+        double beta = 0.05;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-engine":
+                    specs.add(args[++i]);
+                    break;
+                case "-games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "-concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "-movetime":
+                    moveTime = Long.parseLong(args[++i]);
+                    break;
+                case "-tc": {
+                    // base+increment in seconds, e.g. 10+0.1
+                    String[] parts = args[++i].split("\\+");
+                    base = Math.round(Double.parseDouble(parts[0]) * 1000);
+                    increment = parts.length > 1 ? Math.round(Double.parseDouble(parts[1]) * 1000) : 0;
+                    moveTime = 0;
+                    break;
+                }
+                case "-openings":
+                    openings = new ArrayList<>();
+                    for (String line : Files.readAllLines(new File(args[++i]).toPath())) {
+                        if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                            openings.add(line.trim());
+                        }
+                    }
+                    break;
+                case "-maxplies":
+                    maxPlies = Math.min(600, Integer.parseInt(args[++i]));
+                    break;
+                case "-pgn":
+                    pgnFile = args[++i];
+                    break;
+                case "-sprt":
+                    sprt = true;
+                    elo0 = Double.parseDouble(args[++i]);
+                    elo1 = Double.parseDouble(args[++i]);
+                    break;
+                case "-alpha":
+                    alpha = Double.parseDouble(args[++i]);
+                    break;
+                case "-beta":
+                    beta = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        if (specs.size() != 2 || openings.isEmpty()) {
+            System.err.println("Usage: TournamentRunner -engine SPEC -engine SPEC [-games N] [-concurrency N]"
+                    + " [-movetime MS | -tc BASE+INC] [-openings FILE] [-maxplies N] [-pgn FILE]"
+                    + " [-sprt ELO0 ELO1 [-alpha A] [-beta B]]");
+            return;
+        }
+
+        Score score = new Score(elo0, elo1, alpha, beta, sprt);
+        long start = System.nanoTime();
+        try (Writer pgn = new BufferedWriter(new FileWriter(pgnFile))) {
+            TournamentRunner runner = new TournamentRunner(specs.toArray(new String[0]), openings, games,
+                    Math.max(1, concurrency), new Clock(moveTime, base, increment), maxPlies, pgn, score);
+            runner.run();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Finished: %s%n%.1f games/min over %.0fs%n", score, score.games() * 60 / elapsedSeconds, elapsedSeconds);
+    }
+}
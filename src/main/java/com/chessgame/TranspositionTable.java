@@ -0,0 +1,66 @@
+package com.chessgame;
+
+import java.util.Arrays;
+
+// Depth-preferred hash of search results keyed by the full Zobrist key.
+// Each slot packs move, score, depth and bound type into one long. The key
+// is stored XORed with the entry, so searches on several threads can share
+// one table without locks: a slot torn by two racing stores fails the key
+// check instead of returning another position's data.
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+
+    // entries is rounded down to a power of two.
+    public TranspositionTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        this.keys = new long[size];
+        this.entries = new long[size];
+        this.mask = size - 1;
+    }
+
+    // Returns the packed entry for key, or 0 if there is none.
+    public long probe(long key) {
+        int slot = (int) key & mask;
+        long entry = entries[slot];
+        return (keys[slot] ^ entry) == key ? entry : 0L;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        int slot = (int) key & mask;
+        long old = entries[slot];
+        if ((keys[slot] ^ old) != key && old != 0L && depth(old) > depth + 2) {
+            return;
+        }
+        long entry = (move & 0xFFFFFFL) | ((long) (score & 0xFFFF) << 24) | ((long) (depth & 0xFF) << 40)
+                | ((long) bound << 48) | (1L << 50);
+        keys[slot] = key ^ entry;
+        entries[slot] = entry;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(entries, 0L);
+    }
+
+    public static int move(long entry) {
+        return (int) (entry & 0xFFFFFF);
+    }
+
+    public static int score(long entry) {
+        return (short) (entry >>> 24);
+    }
+
+    public static int depth(long entry) {
+        return (int) ((entry >>> 40) & 0xFF);
+    }
+
+    public static int bound(long entry) {
+        return (int) ((entry >>> 48) & 3);
+    }
+}
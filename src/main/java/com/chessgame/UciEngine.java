@@ -0,0 +1,212 @@
+package com.chessgame;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// One UCI engine process. Traffic is counted in Metrics and traced with the
+// engine JFR events. Not thread-safe: each instance belongs to one thread at
+// a time.
+//
+// A daemon thread reads the engine's output into a queue, so a read can give
+// up at a deadline even when a hung engine never writes another line.
+public final class UciEngine {
+    private static final String STOCKFISH_RESOURCE = "/stockfish/stockfish-macos";
+    private static final long HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    // Compared by identity; queued once the engine's output ends.
+    private static final String END_OF_OUTPUT = new String("");
+    private static File stockfishBinary;
+
+    // Thrown when the engine does not answer before a deadline.
+    public static class DeadlineExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final Process process;
+    private final PrintWriter output;
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+    public UciEngine(File binary) throws IOException {
+        process = new ProcessBuilder(binary.getAbsolutePath()).start();
+        BufferedReader input = new BufferedReader(new InputStreamReader(new Metrics.CountingInputStream(
+                process.getInputStream(), Metrics.BYTES_RECEIVED_FROM_ENGINE)));
+        output = new PrintWriter(new OutputStreamWriter(new Metrics.CountingOutputStream(
+                process.getOutputStream(), Metrics.BYTES_SENT_TO_ENGINE)), true);
+        Thread reader = new Thread(() -> {
+            try {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    lines.add(line);
+                }
+            } catch (IOException e) {
+                // The process went away; readers see the end of output.
+            } finally {
+                lines.add(END_OF_OUTPUT);
+            }
+        }, "uci-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            long deadline = deadlineAfter(HANDSHAKE_TIMEOUT_MILLIS);
+            send("uci");
+            waitFor("uciok", deadline);
+            waitReady(deadline);
+        } catch (IOException e) {
+            kill();
+            throw e;
+        }
+    }
+
+    // A System.nanoTime() deadline for the deadline-bounded calls.
+    public static long deadlineAfter(long millis) {
+        return System.nanoTime() + millis * 1_000_000L;
+    }
+
+    // The bundled Stockfish is copied out of the jar once per run and shared
+    // by every engine instance. -Dchess.stockfish=/path/to/engine uses an
+    // installed engine instead.
+    public static synchronized File extractStockfish() throws IOException {
+        if (stockfishBinary != null) {
+            return stockfishBinary;
+        }
+        if (System.getProperty("chess.stockfish") != null) {
+            stockfishBinary = new File(System.getProperty("chess.stockfish"));
+            return stockfishBinary;
+        }
+        File tempStockfish = File.createTempFile("stockfish", null);
+        tempStockfish.deleteOnExit();
+
+        try (
+            InputStream is = UciEngine.class.getResourceAsStream(STOCKFISH_RESOURCE);
+            FileOutputStream os = new FileOutputStream(tempStockfish)
+        ) {
+            if (is == null) {
+                throw new FileNotFoundException("Could not find Stockfish binary in resources: " + STOCKFISH_RESOURCE);
+            }
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                os.write(buffer, 0, bytesRead);
+            }
+        }
+
+        if (!tempStockfish.setExecutable(true)) {
+            throw new IOException("Failed to make Stockfish executable");
+        }
+        stockfishBinary = tempStockfish;
+        return stockfishBinary;
+    }
+
+    public void send(String command) {
+        EngineCommandEvent event = new EngineCommandEvent();
+        event.begin();
+        output.println(command);
+        if (event.shouldCommit()) {
+            event.command = command;
+            event.commit();
+        }
+    }
+
+    // Returns null once the engine has exited.
+    public String readLine() throws IOException {
+        return readLine(Long.MAX_VALUE);
+    }
+
+    // Like readLine(), but throws DeadlineExceededException if no line
+    // arrives before the System.nanoTime() deadline.
+    public String readLine(long deadline) throws IOException {
+        EngineResponseEvent event = new EngineResponseEvent();
+        event.begin();
+        String line;
+        try {
+            if (deadline == Long.MAX_VALUE) {
+                line = lines.take();
+            } else {
+                line = lines.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (line == null) {
+                    throw new DeadlineExceededException("no answer from the engine in time");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the engine");
+        }
+        if (line == END_OF_OUTPUT) {
+            // Later reads see the end too.
+            lines.add(END_OF_OUTPUT);
+            line = null;
+        }
+        if (event.shouldCommit()) {
+            event.line = line;
+            event.commit();
+        }
+        return line;
+    }
+
+    public void waitFor(String expected) throws IOException {
+        waitFor(expected, Long.MAX_VALUE);
+    }
+
+    public void waitFor(String expected, long deadline) throws IOException {
+        String line;
+        while ((line = readLine(deadline)) != null) {
+            if (line.trim().equals(expected)) {
+                return;
+            }
+        }
+        throw new IOException("engine exited while waiting for " + expected);
+    }
+
+    public void waitReady() throws IOException {
+        waitReady(Long.MAX_VALUE);
+    }
+
+    public void waitReady(long deadline) throws IOException {
+        long readyStart = System.nanoTime();
+        try {
+            send("isready");
+            waitFor("readyok", deadline);
+        } finally {
+            Metrics.ENGINE_READY.record(System.nanoTime() - readyStart);
+        }
+    }
+
+    public void setOption(String name, Object value) {
+        send("setoption name " + name + " value " + value);
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    // For an engine that no longer answers: no quit, just the process gone.
+    public void kill() {
+        process.destroyForcibly();
+    }
+
+    public void close() {
+        if (process.isAlive()) {
+            send("quit");
+        }
+        try {
+            process.destroy();
+        } catch (Exception e) {
+            System.err.println("Error closing engine: " + e.getMessage());
+        }
+    }
+}
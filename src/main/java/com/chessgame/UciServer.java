@@ -0,0 +1,495 @@
+package com.chessgame;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The in-process engine as a UCI engine on stdin/stdout, so it can play in
+// cutechess-cli, fastchess or any GUI:
+//
+//   java -cp chess-game.jar com.chessgame.UciServer
+//
+// Commands are read on the main thread while the search runs on a pool
+// thread, so "stop", "ponderhit" and "isready" are answered during a search.
+// With Threads > 1 the extra threads search the same position on their own
+// boards and share the hash table (lazy SMP); the main thread's result is
+// played. Output goes through one buffered writer and is flushed once per
+// message, and info lines are built in a reused buffer and sent at most
+// every chess.uci.infoMillis (default 100) ms, plus the last one before
+// "bestmove".
+public class UciServer {
+    private static final String NAME = "Chess.java";
+    private static final int DEFAULT_HASH_MB = 16;
+    private static final int MAX_HASH_MB = 1024;
+    private static final int MAX_THREADS = 64;
+    private static final long INFO_INTERVAL_MILLIS = Long.getLong("chess.uci.infoMillis", 100);
+    // Kept back from the clock for process and pipe latency.
+    private static final long MOVE_OVERHEAD_MILLIS = 30;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final BufferedReader input;
+    private final Writer output;
+    // Info and bestmove lines, built on the search thread.
+    private final StringBuilder line = new StringBuilder(256);
+    private char[] lineChars = new char[256];
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            runnable -> daemon(runnable, "uci-timer"));
+
+    private int hashMegabytes = DEFAULT_HASH_MB;
+    private int threads = 1;
+    private ExecutorService searchPool;
+    private Search[] searches;
+    // "go nodes" limits the nodes of all threads together.
+    private final AtomicLong searchedNodes = new AtomicLong();
+
+    // The position from the last "position" command: where it started and
+    // the moves after it, replayed onto each thread's board.
+    private String startFen = SearchBoard.START_FEN;
+    private int[] moves = new int[256];
+    private int moveCount;
+
+    // State of the running search, shared with the reader thread.
+    private Future<?> searchTask;
+    private ScheduledFuture<?> stopTimer;
+    private volatile boolean infinite;
+    private volatile boolean pondering;
+    private volatile boolean stopRequested;
+    private volatile long budgetMillis;
+    private volatile long budgetStartNanos;
+    private final Object stopLock = new Object();
+
+    // Only touched by the search thread.
+    private long lastInfoMillis;
+    private int lastDepth;
+    private int lastScore;
+    private long lastNodes;
+    private long lastElapsedMillis;
+    private int[] lastPv = new int[0];
+    private boolean lastInfoSent;
+
+    public UciServer(BufferedReader input, Writer output) {
+        this.input = input;
+        this.output = output;
+        createSearches();
+    }
+
+    public static void main(String[] args) throws IOException {
+        BufferedReader input = new BufferedReader(new InputStreamReader(
+                new FileInputStream(FileDescriptor.in), StandardCharsets.US_ASCII), 1 << 16);
+        Writer output = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.US_ASCII), 1 << 16);
+        new UciServer(input, output).run();
+    }
+
+    public void run() throws IOException {
+        String command;
+        while ((command = input.readLine()) != null) {
+            command = command.trim();
+            if (command.equals("quit")) {
+                break;
+            }
+            if (!command.isEmpty()) {
+                handle(command);
+            }
+        }
+        stopSearch();
+        searchPool.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private void handle(String command) throws IOException {
+        String[] tokens = command.split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                send("id name " + NAME);
+                send("id author Chess.java contributors");
+                send("option name Hash type spin default " + DEFAULT_HASH_MB + " min 1 max " + MAX_HASH_MB);
+                send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                send("option name Ponder type check default false");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "ucinewgame":
+                stopSearch();
+                for (Search search : searches) {
+                    search.getTable().clear();
+                }
+                break;
+            case "setoption":
+                stopSearch();
+                setOption(tokens);
+                break;
+            case "position":
+                stopSearch();
+                setPosition(tokens);
+                break;
+            case "go":
+                stopSearch();
+                go(tokens);
+                break;
+            case "stop":
+                stopRequested = true;
+                searches[0].stop();
+                releaseWait();
+                break;
+            case "ponderhit":
+                // The opponent played the expected move: the search becomes
+                // a normal one, timed from now.
+                pondering = false;
+                startTimer();
+                releaseWait();
+                break;
+            default:
+                System.err.println("Unknown UCI command: " + command);
+        }
+    }
+
+    private void setOption(String[] tokens) {
+        StringBuilder name = new StringBuilder();
+        String value = null;
+        for (int i = 1; i < tokens.length; i++) {
+            if (tokens[i].equals("name")) {
+                continue;
+            }
+            if (tokens[i].equals("value")) {
+                value = i + 1 < tokens.length ? tokens[i + 1] : null;
+                break;
+            }
+            if (name.length() > 0) {
+                name.append(' ');
+            }
+            name.append(tokens[i]);
+        }
+        try {
+            switch (name.toString().toLowerCase()) {
+                case "hash":
+                    hashMegabytes = Math.max(1, Math.min(MAX_HASH_MB, Integer.parseInt(value)));
+                    createSearches();
+                    break;
+                case "threads":
+                    threads = Math.max(1, Math.min(MAX_THREADS, Integer.parseInt(value)));
+                    createSearches();
+                    break;
+                case "ponder":
+                    // Pondering is driven by "go ponder"; nothing to set.
+                    break;
+                default:
+                    System.err.println("Unknown UCI option: " + name);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for UCI option " + name + ": " + value);
+        }
+    }
+
+    // One Search per thread over a shared table; a key and an entry per
+    // slot make 16 bytes.
+    private void createSearches() {
+        if (searchPool != null) {
+            searchPool.shutdownNow();
+        }
+        TranspositionTable table = new TranspositionTable((int) Math.min(1 << 30, ((long) hashMegabytes << 20) / 16));
+        searches = new Search[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(new Evaluator(), table);
+            searches[i].setSharedNodeCounter(searchedNodes);
+        }
+        searches[0].setListener(this::iterationComplete);
+        searchPool = Executors.newFixedThreadPool(threads, runnable -> daemon(runnable, "uci-search-" + THREAD_COUNT.incrementAndGet()));
+    }
+
+    private void setPosition(String[] tokens) {
+        int index = 1;
+        String fen = SearchBoard.START_FEN;
+        if (index < tokens.length && tokens[index].equals("fen")) {
+            StringBuilder fenText = new StringBuilder();
+            for (index++; index < tokens.length && !tokens[index].equals("moves"); index++) {
+                if (fenText.length() > 0) {
+                    fenText.append(' ');
+                }
+                fenText.append(tokens[index]);
+            }
+            fen = fenText.toString();
+        } else if (index < tokens.length && tokens[index].equals("startpos")) {
+            index++;
+        }
+        SearchBoard board;
+        try {
+            board = new SearchBoard(fen);
+        } catch (RuntimeException e) {
+            System.err.println("Invalid FEN in position command: " + fen);
+            return;
+        }
+        startFen = fen;
+        moveCount = 0;
+        if (index < tokens.length && tokens[index].equals("moves")) {
+            for (index++; index < tokens.length; index++) {
+                int move = board.parseUciMove(tokens[index]);
+                if (move == 0) {
+                    System.err.println("Illegal move in position command: " + tokens[index]);
+                    break;
+                }
+                if (moveCount == moves.length) {
+                    moves = Arrays.copyOf(moves, moveCount * 2);
+                }
+                moves[moveCount++] = move;
+                board.makeMove(move);
+            }
+        }
+    }
+
+    private SearchBoard currentBoard() {
+        SearchBoard board = new SearchBoard(startFen);
+        for (int i = 0; i < moveCount; i++) {
+            board.makeMove(moves[i]);
+        }
+        return board;
+    }
+
+    private void go(String[] tokens) {
+        int depth = Search.MAX_PLY;
+        long nodes = 0;
+        long moveTime = 0;
+        long[] time = {0, 0};
+        long[] increment = {0, 0};
+        int movesToGo = 0;
+        boolean ponder = false;
+        boolean noLimit = false;
+        for (int i = 1; i < tokens.length; i++) {
+            String value = i + 1 < tokens.length ? tokens[i + 1] : "0";
+            try {
+                switch (tokens[i]) {
+                    case "depth": depth = Integer.parseInt(value); i++; break;
+                    case "nodes": nodes = Long.parseLong(value); i++; break;
+                    case "movetime": moveTime = Long.parseLong(value); i++; break;
+                    case "wtime": time[SearchBoard.WHITE] = Long.parseLong(value); i++; break;
+                    case "btime": time[SearchBoard.BLACK] = Long.parseLong(value); i++; break;
+                    case "winc": increment[SearchBoard.WHITE] = Long.parseLong(value); i++; break;
+                    case "binc": increment[SearchBoard.BLACK] = Long.parseLong(value); i++; break;
+                    case "movestogo": movesToGo = Integer.parseInt(value); i++; break;
+                    case "ponder": ponder = true; break;
+                    case "infinite": noLimit = true; break;
+                    default: break;
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid value for go " + tokens[i] + ": " + value);
+            }
+        }
+
+        SearchBoard board = currentBoard();
+        int side = board.getSideToMove();
+        if (moveTime > 0) {
+            budgetMillis = Math.max(1, moveTime - MOVE_OVERHEAD_MILLIS);
+        } else if (time[side] > 0) {
+            // The same split as the tournament runner's in-process player,
+            // never more than the clock holds.
+            long share = time[side] / (movesToGo > 0 ? movesToGo : 30) + increment[side];
+            budgetMillis = Math.max(1, Math.min(share, time[side] - MOVE_OVERHEAD_MILLIS));
+        } else {
+            budgetMillis = 0;
+        }
+        infinite = noLimit;
+        pondering = ponder;
+        stopRequested = false;
+        lastInfoMillis = -INFO_INTERVAL_MILLIS;
+        lastPv = new int[0];
+        lastInfoSent = true;
+        // Armed here, before any thread starts, so a stop can never be
+        // cleared by a search that starts after it.
+        searchedNodes.set(0);
+        for (Search search : searches) {
+            search.setNodeLimit(nodes);
+            search.resetStop();
+        }
+        if (!ponder) {
+            startTimer();
+        }
+
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < searches.length; i++) {
+            Search helper = searches[i];
+            SearchBoard helperBoard = currentBoard();
+            helpers.add(searchPool.submit(() -> helper.search(helperBoard, Search.MAX_PLY, 0)));
+        }
+        int maxDepth = depth;
+        searchTask = searchPool.submit(() -> {
+            Search.Result result = searches[0].search(board, maxDepth, 0);
+            // UCI does not allow a bestmove during "infinite" or pondering
+            // before the GUI asks for it, even if the search has run out.
+            awaitRelease();
+            for (int i = 1; i < searches.length; i++) {
+                searches[i].stop();
+            }
+            for (Future<?> helper : helpers) {
+                try {
+                    helper.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    System.err.println("Helper search failed: " + e);
+                }
+            }
+            if (!lastInfoSent) {
+                sendInfo();
+            }
+            line.setLength(0);
+            int[] pv = result.getPv();
+            if (result.getMove() == 0) {
+                line.append("bestmove 0000");
+            } else {
+                line.append("bestmove ");
+                SearchBoard.appendUci(line, result.getMove());
+                if (pv.length > 1 && pv[0] == result.getMove()) {
+                    line.append(" ponder ");
+                    SearchBoard.appendUci(line, pv[1]);
+                }
+            }
+            send(line);
+        });
+    }
+
+    // Arms the hard stop for the time budget, counted from now.
+    private void startTimer() {
+        budgetStartNanos = System.nanoTime();
+        if (stopTimer != null) {
+            stopTimer.cancel(false);
+        }
+        long budget = budgetMillis;
+        if (budget > 0 && !infinite) {
+            stopTimer = timer.schedule(() -> searches[0].stop(), budget, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Called by the main search after every completed depth.
+    private void iterationComplete(int depth, int score, long nodes, long elapsedMillis, int[] pv) {
+        lastDepth = depth;
+        lastScore = score;
+        lastNodes = nodes;
+        lastElapsedMillis = elapsedMillis;
+        lastPv = pv;
+        lastInfoSent = false;
+        if (elapsedMillis - lastInfoMillis >= INFO_INTERVAL_MILLIS) {
+            sendInfo();
+        }
+        // Another depth would likely not finish in the time left.
+        long budget = budgetMillis;
+        boolean timed = budget > 0 && !infinite && !pondering;
+        if (stopRequested || (timed && (System.nanoTime() - budgetStartNanos) / 1_000_000 * 2 > budget)) {
+            searches[0].stop();
+        }
+    }
+
+    private void sendInfo() {
+        lastInfoMillis = lastElapsedMillis;
+        lastInfoSent = true;
+        line.setLength(0);
+        line.append("info depth ").append(lastDepth).append(" score ");
+        if (lastScore > Search.MATE - Search.MAX_PLY) {
+            line.append("mate ").append((Search.MATE - lastScore + 1) / 2);
+        } else if (lastScore < -Search.MATE + Search.MAX_PLY) {
+            line.append("mate ").append(-(Search.MATE + lastScore) / 2);
+        } else {
+            line.append("cp ").append(lastScore);
+        }
+        line.append(" nodes ").append(lastNodes)
+                .append(" nps ").append(lastNodes * 1000 / Math.max(1, lastElapsedMillis))
+                .append(" time ").append(lastElapsedMillis)
+                .append(" pv");
+        for (int move : lastPv) {
+            line.append(' ');
+            SearchBoard.appendUci(line, move);
+        }
+        send(line);
+    }
+
+    private void awaitRelease() {
+        synchronized (stopLock) {
+            while ((infinite || pondering) && !stopRequested) {
+                try {
+                    stopLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void releaseWait() {
+        synchronized (stopLock) {
+            stopLock.notifyAll();
+        }
+    }
+
+    // Ends the running search, if any, and waits for its bestmove.
+    private void stopSearch() {
+        if (searchTask == null) {
+            return;
+        }
+        stopRequested = true;
+        searches[0].stop();
+        releaseWait();
+        try {
+            searchTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Search failed: " + e.getCause());
+        }
+        searchTask = null;
+        if (stopTimer != null) {
+            stopTimer.cancel(false);
+            stopTimer = null;
+        }
+    }
+
+    private synchronized void send(String message) {
+        try {
+            output.write(message);
+            output.write('\n');
+            output.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing UCI output: " + e.getMessage());
+        }
+    }
+
+    // Copies through a reused char array so no String is built per line.
+    private synchronized void send(StringBuilder message) {
+        int length = message.length();
+        if (lineChars.length < length + 1) {
+            lineChars = new char[Math.max(length + 1, lineChars.length * 2)];
+        }
+        message.getChars(0, length, lineChars, 0);
+        lineChars[length] = '\n';
+        try {
+            output.write(lineChars, 0, length + 1);
+            output.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing UCI output: " + e.getMessage());
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
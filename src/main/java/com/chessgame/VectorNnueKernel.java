@@ -0,0 +1,60 @@
+package com.chessgame;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD kernel on the platform's preferred vector width. Only loaded through
+// NnueKernel.best(), so the rest of the code runs without the incubator module.
+public class VectorNnueKernel implements NnueKernel {
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = SHORTS.withLanes(int.class);
+
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    // The int16 products are widened to int32 lanes before summing, so only
+    // the products themselves need to fit in a short (NnueNetwork checks this).
+    @Override
+    public int clippedDot(short[] input, short clampMax, short[] weights, int offset) {
+        IntVector sum = IntVector.zero(INTS);
+        int i = 0;
+        for (int bound = SHORTS.loopBound(input.length); i < bound; i += SHORTS.length()) {
+            ShortVector products = ShortVector.fromArray(SHORTS, input, i)
+                    .max((short) 0)
+                    .min(clampMax)
+                    .mul(ShortVector.fromArray(SHORTS, weights, offset + i));
+            sum = sum.add((IntVector) products.convert(VectorOperators.S2I, 0))
+                    .add((IntVector) products.convert(VectorOperators.S2I, 1));
+        }
+        int result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < input.length; i++) {
+            result += (short) (Math.max(0, Math.min(clampMax, input[i])) * weights[offset + i]);
+        }
+        return result;
+    }
+}